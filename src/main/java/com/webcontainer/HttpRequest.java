@@ -3,6 +3,8 @@ package com.webcontainer;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.webcontainer.http.HttpRequestHead;
+
 /**
  * HTTP请求封装类
  * 用于存储解析后的HTTP请求信息
@@ -12,12 +14,23 @@ public class HttpRequest {
     private final String uri;
     private final String protocol;
     private final Map<String, String> headers;
+    // 解析器生成的请求头，头部直接从中按需读取
+    private final HttpRequestHead head;
 
     public HttpRequest(String method, String uri, String protocol) {
         this.method = method;
         this.uri = uri;
         this.protocol = protocol;
         this.headers = new HashMap<>();
+        this.head = null;
+    }
+
+    public HttpRequest(HttpRequestHead head) {
+        this.method = head.getMethod();
+        this.uri = head.getUri();
+        this.protocol = head.getProtocol();
+        this.headers = new HashMap<>();
+        this.head = head;
     }
 
     public String getMethod() {
@@ -37,11 +50,24 @@ public class HttpRequest {
     }
 
     public String getHeader(String name) {
-        return headers.get(name.toLowerCase());
+        if (!headers.isEmpty()) {
+            String value = headers.get(name.toLowerCase());
+            if (value != null) {
+                return value;
+            }
+        }
+        return head != null ? head.getHeader(name) : null;
     }
 
     public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+        Map<String, String> all = new HashMap<>();
+        if (head != null) {
+            for (int i = head.getHeaderCount() - 1; i >= 0; i--) {
+                all.put(head.getHeaderName(i).toLowerCase(), head.getHeaderValue(i));
+            }
+        }
+        all.putAll(headers);
+        return all;
     }
 
     @Override
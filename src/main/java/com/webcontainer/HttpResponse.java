@@ -3,6 +3,8 @@ package com.webcontainer;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.webcontainer.http.FileRegion;
+
 /**
  * HTTP响应封装类
  * 用于构建标准的HTTP响应
@@ -13,6 +15,7 @@ public class HttpResponse {
     private final List<String> headers;
     private String body;
     private byte[] binaryBody;
+    private FileRegion fileBody;
 
     public HttpResponse() {
         this.headers = new ArrayList<>();
@@ -38,6 +41,15 @@ public class HttpResponse {
         this.body = null; // 清除文本内容
     }
 
+    /**
+     * 设置直接从文件发送的响应体（大文件不读入内存）
+     */
+    public void setFileBody(FileRegion fileBody) {
+        this.fileBody = fileBody;
+        this.body = null;
+        this.binaryBody = null;
+    }
+
     public String getStatusLine() {
         return "HTTP/1.1 " + statusCode + " " + reasonPhrase;
     }
@@ -54,6 +66,10 @@ public class HttpResponse {
         return binaryBody;
     }
 
+    public FileRegion getFileBody() {
+        return fileBody;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -1,10 +1,17 @@
 package com.webcontainer;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
+import com.webcontainer.http.ResponseSerializer;
 
 /**
  * 请求处理器 - 处理每个客户端连接
@@ -12,25 +19,55 @@ import java.net.Socket;
  */
 public class RequestHandler implements Runnable {
     private final Socket clientSocket;
+    private final KeepAlivePolicy keepAlivePolicy;
 
     public RequestHandler(Socket clientSocket) {
+        this(clientSocket, KeepAlivePolicy.fromSystemProperties());
+    }
+
+    public RequestHandler(Socket clientSocket, KeepAlivePolicy keepAlivePolicy) {
         this.clientSocket = clientSocket;
+        this.keepAlivePolicy = keepAlivePolicy;
     }
 
     @Override
     public void run() {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter writer = new PrintWriter(clientSocket.getOutputStream())) {
-
-            // 解析HTTP请求
-            HttpRequest request = parseRequest(reader);
-
-            // 构建HTTP响应
-            HttpResponse response = buildResponse(request);
-
-            // 发送响应
-            sendResponse(writer, response);
+        try (OutputStream outputStream = new BufferedOutputStream(clientSocket.getOutputStream())) {
+
+            // 空闲超时：持久连接上超过该时间没有新请求则关闭
+            clientSocket.setSoTimeout(keepAlivePolicy.getBlockingIdleTimeoutMillis());
+
+            HttpInputBuffer input = new HttpInputBuffer(clientSocket.getInputStream());
+            int requestCount = 0;
+            while (true) {
+                // 解析HTTP请求（客户端关闭连接时返回null）
+                HttpRequest request = parseRequest(input);
+                if (request == null) {
+                    break;
+                }
+                requestCount++;
+
+                boolean keepAlive = keepAlivePolicy.shouldKeepAlive(request.getProtocol(),
+                        request.getHeader("Connection"), requestCount);
+
+                // 构建HTTP响应
+                HttpResponse response = buildResponse(request);
+
+                // 发送响应（只写入缓冲区）
+                sendResponse(outputStream, response, keepAlive);
+
+                // 流水线请求：客户端已发来后续请求时暂不刷新，相邻响应合并为一次写出
+                if (!input.hasBufferedInput()) {
+                    outputStream.flush();
+                }
+
+                if (!keepAlive) {
+                    break;
+                }
+            }
 
+        } catch (SocketTimeoutException e) {
+            // 持久连接空闲超时，正常关闭
         } catch (IOException e) {
             System.err.println("处理请求时发生错误: " + e.getMessage());
         } finally {
@@ -45,37 +82,14 @@ public class RequestHandler implements Runnable {
     /**
      * 解析HTTP请求
      */
-    private HttpRequest parseRequest(BufferedReader reader) throws IOException {
-        // 读取请求行 (Request Line)
-        String requestLine = reader.readLine();
-        if (requestLine == null || requestLine.trim().isEmpty()) {
-            throw new IOException("无效的HTTP请求");
-        }
-
-        // 解析请求行: GET /path HTTP/1.1
-        String[] requestParts = requestLine.split(" ");
-        if (requestParts.length != 3) {
-            throw new IOException("无效的请求行格式: " + requestLine);
-        }
-
-        String method = requestParts[0];
-        String uri = requestParts[1];
-        String protocol = requestParts[2];
-
-        HttpRequest request = new HttpRequest(method, uri, protocol);
-
-        // 读取请求头
-        String headerLine;
-        while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
-            int colonIndex = headerLine.indexOf(':');
-            if (colonIndex > 0) {
-                String headerName = headerLine.substring(0, colonIndex).trim();
-                String headerValue = headerLine.substring(colonIndex + 1).trim();
-                request.addHeader(headerName, headerValue);
-            }
+    private HttpRequest parseRequest(HttpInputBuffer input) throws IOException {
+        HttpRequestHead head = input.readRequestHead();
+        if (head == null) {
+            return null; // 客户端已关闭连接
         }
 
-        System.out.println("收到请求: " + method + " " + uri + " " + protocol);
+        HttpRequest request = new HttpRequest(head);
+        System.out.println("收到请求: " + request);
         return request;
     }
 
@@ -106,33 +120,32 @@ public class RequestHandler implements Runnable {
         HttpResponse response = new HttpResponse();
         response.setStatus(200, "OK");
         response.addHeader("Content-Type", "text/html; charset=UTF-8");
-        response.addHeader("Content-Length", String.valueOf(htmlContent.getBytes().length));
-        response.addHeader("Connection", "close");
-        response.setBody(htmlContent);
+        // 按声明的字符集编码，Content-Length由发送时按实际字节数生成
+        response.setBinaryBody(htmlContent.getBytes(StandardCharsets.UTF_8));
 
         return response;
     }
 
     /**
      * 发送HTTP响应
+     * 响应头经ResponseSerializer统一生成（CRLF行尾、Date、Content-Length和Connection），与响应体一起写出
      */
-    private void sendResponse(PrintWriter writer, HttpResponse response) {
-        // 发送状态行
-        writer.println(response.getStatusLine());
-
-        // 发送响应头
-        for (String header : response.getHeaders()) {
-            writer.println(header);
+    private void sendResponse(OutputStream out, HttpResponse response, boolean keepAlive) throws IOException {
+        byte[] body = response.getBinaryBody();
+        if (body == null) {
+            body = response.getBody() != null ? response.getBody().getBytes(StandardCharsets.UTF_8) : new byte[0];
         }
 
-        // 发送空行（头部结束标志）
-        writer.println();
-
-        // 发送响应体
-        if (response.getBody() != null) {
-            writer.print(response.getBody());
+        ResponseSerializer head = ResponseSerializer.begin(response.getStatusCode(), response.getReasonPhrase())
+                .date();
+        for (String header : response.getHeaders()) {
+            if (!header.regionMatches(true, 0, "Content-Length:", 0, 15)
+                    && !header.regionMatches(true, 0, "Connection:", 0, 11)) {
+                head.headerLine(header);
+            }
         }
-
-        writer.flush();
+        head.contentLength(body.length)
+                .connection(keepAlive)
+                .writeTo(out, ByteBuffer.wrap(body));
     }
 }
@@ -0,0 +1,110 @@
+package com.webcontainer.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+import com.webcontainer.http.HttpBodyDecoder;
+
+/**
+ * 请求体管道：事件循环解码写入，工作线程阻塞读取
+ * 容量固定的环形缓冲区，写满后连接暂停读取，工作线程读出一半后通过回调恢复，
+ * 因此一个正在接收的请求体最多占用这么多内存，不随请求体长度增长
+ */
+class NioBodyPipe extends InputStream {
+    private final byte[] buffer;
+    // 缓冲区从满变为半空时调用（在工作线程上），由连接切回事件循环恢复读取
+    private final Runnable resumeReading;
+    private int readIndex;
+    private int count;
+    private boolean finished;
+    private boolean paused;
+    private IOException error;
+
+    NioBodyPipe(int capacity, Runnable resumeReading) {
+        this.buffer = new byte[capacity];
+        this.resumeReading = resumeReading;
+    }
+
+    /**
+     * 把src中的请求体数据解码写入缓冲区（在事件循环上调用）
+     * 缓冲区写满时src中可能还有未解码的数据，调用方应暂停读取，等待resumeReading回调
+     *
+     * @return 缓冲区是否已满
+     */
+    synchronized boolean fill(HttpBodyDecoder decoder, ByteBuffer src) throws IOException {
+        int produced = 0;
+        while (!decoder.isComplete() && src.hasRemaining() && count < buffer.length) {
+            int writeIndex = (readIndex + count) % buffer.length;
+            int n = decoder.decode(src, buffer, writeIndex,
+                    Math.min(buffer.length - count, buffer.length - writeIndex));
+            count += n;
+            produced += n;
+        }
+        finished = decoder.isComplete();
+        paused = !finished && src.hasRemaining();
+        if (produced > 0 || finished) {
+            notifyAll();
+        }
+        return paused;
+    }
+
+    /**
+     * 请求体没有收完就中断（连接关闭或请求体格式错误），正在等待的读取抛出该异常
+     */
+    synchronized void fail(IOException cause) {
+        if (error == null && !finished) {
+            error = cause;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        boolean resume = false;
+        int n;
+        synchronized (this) {
+            while (count == 0 && !finished && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待请求体时被中断");
+                }
+            }
+            if (count == 0 && error != null) {
+                throw error;
+            }
+            if (count == 0) {
+                return -1;
+            }
+            n = Math.min(len, Math.min(count, buffer.length - readIndex));
+            System.arraycopy(buffer, readIndex, b, off, n);
+            readIndex = (readIndex + n) % buffer.length;
+            count -= n;
+            if (paused && count <= buffer.length / 2) {
+                paused = false;
+                resume = true;
+            }
+        }
+        if (resume) {
+            resumeReading.run();
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return count;
+    }
+}
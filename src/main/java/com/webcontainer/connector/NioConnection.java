@@ -0,0 +1,612 @@
+package com.webcontainer.connector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.HttpBodyDecoder;
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpParseException;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.HttpRequestParser;
+import com.webcontainer.http.ResponseSerializer;
+
+/**
+ * NIO连接状态
+ * 读写操作只在所属事件循环线程上执行，工作线程通过事件循环投递响应
+ */
+class NioConnection {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    // 一次批量处理的流水线请求上限
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+    // 每个正在接收的请求体最多缓冲的解码后字节数，超过后暂停读取，直到工作线程读出
+    private static final String BODY_BUFFER_SIZE_PROPERTY = "webcontainer.nio.bodyBufferSize";
+    private static final int BODY_BUFFER_SIZE = Math.max(1024,
+            Integer.getInteger(BODY_BUFFER_SIZE_PROPERTY, 64 * 1024));
+    // 请求头之后剩余的空间小于该值时换一个读缓冲区接收请求体
+    private static final int MIN_BODY_READ_SIZE = 1024;
+    // 每个连接上流式响应已提交、还没写出的复制字节数上限
+    private static final long MAX_QUEUED_BYTES = 256 * 1024;
+    private static final long MAX_BODY_SIZE = Long.getLong(HttpBodyDecoder.MAX_BODY_SIZE_PROPERTY,
+            HttpBodyDecoder.DEFAULT_MAX_BODY_SIZE);
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final NioConnector connector;
+    private SelectionKey key;
+
+    private final HttpRequestParser parser = new HttpRequestParser();
+    private final int maxHeaderSize = Integer.getInteger(HttpRequestParser.MAX_HEADER_SIZE_PROPERTY,
+            HttpRequestParser.DEFAULT_MAX_HEADER_SIZE);
+    private final long maxSwallowSize = Long.getLong(HttpInputBuffer.MAX_SWALLOW_SIZE_PROPERTY,
+            HttpInputBuffer.DEFAULT_MAX_SWALLOW_SIZE);
+
+    // 写模式：position为已读入数据的末尾。请求头直接引用其中的字节，
+    // 因此一批请求处理完之前不会移动缓冲区中的数据
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    // 下一次解析的起始位置
+    private int parseIndex = 0;
+    // 已解析完成的请求头末尾，之前的数据在本批请求处理完后丢弃
+    private int consumedIndex = 0;
+    // 正在接收的请求体：请求已交给工作线程，请求体还没有收齐
+    private HttpBodyDecoder bodyDecoder;
+    // 请求体写入的管道；为null时工作线程已写完响应，剩余的请求体直接丢弃
+    private NioBodyPipe bodyPipe;
+    // 管道已满，暂停读取
+    private boolean bodyPaused;
+    // 丢弃请求体时还允许读取的字节数
+    private long swallowRemaining;
+    // 请求头之后的位置，接收请求体期间新读入的数据从这里开始写入
+    private int bodyStart;
+    // 待写出的响应分段（ByteBuffer、FileRegion或缓冲区归还回调），为null表示没有待写出的数据
+    private Deque<Object> pendingWrites;
+    // gathering write一次最多写出的分段数
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[16];
+    // 本批请求的响应已全部交给事件循环（此前交来的都是流式响应已提交的部分）
+    private boolean responseComplete = false;
+    private boolean keepAliveAfterWrite = false;
+    // 流式响应已交给事件循环但还没写出的复制字节数，工作线程写入、事件循环扣除
+    private final Object writeLock = new Object();
+    private long queuedBytes;
+    private boolean busy = false;
+    private int requestCount = 0;
+    private long lastActivityMillis = System.currentTimeMillis();
+    // 工作线程在writePartial中持有writeLock读取
+    private boolean closed = false;
+
+    NioConnection(SocketChannel channel, NioEventLoop eventLoop, NioConnector connector) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.connector = connector;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * 可读事件：读取数据，检测到完整请求头后解析并交给工作线程
+     */
+    void handleRead() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            if (read > 0) {
+                lastActivityMillis = System.currentTimeMillis();
+            }
+            processBufferedRequest();
+        } catch (IOException e) {
+            System.err.println("读取请求时发生错误: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 增量解析缓冲区中的数据，得到的所有完整（流水线）请求作为一批提交给工作线程
+     * 请求体已在缓冲区中的请求随本批一起处理；请求体没有收齐的请求在请求头到达时单独提交，
+     * 之后读到的请求体数据经过容量有限的管道交给工作线程
+     */
+    private void processBufferedRequest() throws IOException {
+        if (bodyDecoder != null) {
+            readBody();
+            return;
+        }
+        ByteBuffer data = readBuffer.duplicate();
+        data.flip();
+        data.position(parseIndex);
+
+        List<NioRequestHandler.RequestTask> batch = null;
+        try {
+            while (batch == null || batch.size() < MAX_PIPELINED_REQUESTS) {
+                HttpRequestHead head = parser.parse(data);
+                if (head == null) {
+                    break;
+                }
+                int headEnd = data.position();
+                HttpBodyDecoder decoder = HttpBodyDecoder.forRequest(head, MAX_BODY_SIZE);
+                if (decoder.isComplete()) {
+                    consumedIndex = headEnd;
+                    batch = addTask(batch, head, InputStream.nullInputStream());
+                    continue;
+                }
+
+                NioBodyPipe pipe = createBodyPipe(decoder);
+                boolean full = pipe.fill(decoder, data);
+                if (decoder.isComplete()) {
+                    consumedIndex = data.position();
+                    batch = addTask(batch, head, pipe);
+                    continue;
+                }
+                if (batch != null) {
+                    // 先处理本批已完整的请求；这个请求在恢复读取后从请求头开始重新解析，请求体字节仍在缓冲区中
+                    data.position(consumedIndex);
+                    break;
+                }
+                batch = addTask(null, head, pipe);
+                bodyDecoder = decoder;
+                bodyPipe = pipe;
+                bodyStart = headEnd;
+                bodyPaused = full;
+                sendContinue(head);
+                break;
+            }
+        } catch (HttpParseException e) {
+            System.err.println("无效的HTTP请求（" + e.getStatusCode() + "）: " + e.getMessage());
+            close();
+            return;
+        }
+        parseIndex = data.position();
+
+        if (batch == null) {
+            if (!readBuffer.hasRemaining() && !growReadBuffer()) {
+                System.err.println("请求头过大，关闭连接: " + channel.getRemoteAddress());
+                close();
+            }
+            return;
+        }
+
+        if (bodyDecoder != null) {
+            reuseBodySpace(data);
+        }
+        // 请求体还在接收时继续读取，否则停止关注读事件，等待这一批请求的响应
+        busy = true;
+        responseComplete = false;
+        updateInterest();
+        connector.dispatch(this, batch);
+    }
+
+    private List<NioRequestHandler.RequestTask> addTask(List<NioRequestHandler.RequestTask> batch,
+            HttpRequestHead head, InputStream body) {
+        if (batch == null) {
+            batch = new ArrayList<>();
+        }
+        batch.add(connector.getHandler().createTask(head, body));
+        return batch;
+    }
+
+    /**
+     * 定长请求体按声明的长度分配，不超过管道容量；分块请求体长度未知，直接分配管道容量
+     */
+    private NioBodyPipe createBodyPipe(HttpBodyDecoder decoder) {
+        long remaining = decoder.getRemaining();
+        int capacity = remaining > 0 ? (int) Math.min(remaining, BODY_BUFFER_SIZE) : BODY_BUFFER_SIZE;
+        return new NioBodyPipe(capacity, () -> eventLoop.execute(this::resumeBody));
+    }
+
+    /**
+     * 把新读到的请求体数据解码进管道；工作线程已经写完响应时直接丢弃。
+     * 请求体收齐后，后续的流水线请求等响应写出后再处理
+     */
+    private void readBody() throws IOException {
+        ByteBuffer data = readBuffer.duplicate();
+        data.flip();
+        data.position(parseIndex);
+        try {
+            if (bodyPipe != null) {
+                bodyPaused = bodyPipe.fill(bodyDecoder, data);
+            } else {
+                int start = data.position();
+                bodyDecoder.decode(data, null, 0, Integer.MAX_VALUE);
+                swallowRemaining -= data.position() - start;
+                if (swallowRemaining < 0) {
+                    close();
+                    return;
+                }
+            }
+        } catch (HttpParseException e) {
+            System.err.println("无效的请求体（" + e.getStatusCode() + "）: " + e.getMessage());
+            if (bodyPipe != null) {
+                bodyPipe.fail(e);
+            }
+            close();
+            return;
+        }
+
+        if (!bodyDecoder.isComplete()) {
+            reuseBodySpace(data);
+            updateInterest();
+            return;
+        }
+        consumedIndex = data.position();
+        parseIndex = consumedIndex;
+        boolean responded = bodyPipe == null;
+        bodyDecoder = null;
+        bodyPipe = null;
+        bodyPaused = false;
+        if (responded) {
+            resumeRequests();
+        } else {
+            updateInterest();
+        }
+    }
+
+    /**
+     * 管道从满变为半空（工作线程读出了数据）：继续解码缓冲区中剩余的数据，恢复读取
+     */
+    private void resumeBody() {
+        if (closed || bodyPipe == null) {
+            return;
+        }
+        try {
+            readBody();
+        } catch (IOException e) {
+            System.err.println("读取请求体时发生错误: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 缓冲区中的请求体数据已全部解码时，之后读入的数据从请求头之后写入，请求头引用的字节保持不动；
+     * 管道已满时剩余的数据留在缓冲区中，等工作线程读出后再解码
+     */
+    private void reuseBodySpace(ByteBuffer data) {
+        if (data.hasRemaining()) {
+            parseIndex = data.position();
+            return;
+        }
+        if (readBuffer.capacity() - bodyStart < MIN_BODY_READ_SIZE) {
+            // 请求头之后的空间太小，换一个缓冲区接收请求体，请求头仍引用原来的数组
+            readBuffer = ByteBuffer.allocate(readBuffer.capacity());
+            bodyStart = 0;
+        }
+        readBuffer.position(bodyStart);
+        parseIndex = bodyStart;
+    }
+
+    /**
+     * 客户端在等待100 Continue：连接空闲（没有待写出的响应）时直接写出这个很短的临时响应
+     */
+    private void sendContinue(HttpRequestHead head) throws IOException {
+        if (!head.expectsContinue()) {
+            return;
+        }
+        ByteBuffer response = ByteBuffer.wrap(ResponseSerializer.continueResponse());
+        channel.write(response);
+        if (response.hasRemaining()) {
+            // 套接字发送缓冲区连几十个字节都放不下，说明连接已经不可用
+            close();
+        }
+    }
+
+    /**
+     * 在工作线程上按顺序执行一批请求，所有响应写入同一个缓冲区，交回事件循环一次写出；
+     * 流式响应提交的部分由缓冲区提前交给事件循环（writePartial）
+     */
+    void service(List<NioRequestHandler.RequestTask> batch) {
+        NioResponseBuffer out = new NioResponseBuffer(this);
+        boolean keepAlive = true;
+        try {
+            for (NioRequestHandler.RequestTask task : batch) {
+                requestCount++;
+                keepAlive = task.service(out, connector.getKeepAlivePolicy().allowsMoreRequests(requestCount));
+                if (!keepAlive) {
+                    // 后续流水线请求不再处理
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("处理请求时发生错误: " + e.getMessage());
+            e.printStackTrace();
+            keepAlive = false;
+        }
+
+        Deque<Object> response = out.toSegments();
+        boolean empty = response.isEmpty() && !out.isPartiallyWritten();
+        boolean keepAliveAfterResponse = keepAlive;
+        eventLoop.execute(() -> {
+            if (empty || closed) {
+                closeSegments(response);
+                close();
+                return;
+            }
+            appendWrites(response);
+            responseComplete = true;
+            keepAliveAfterWrite = keepAliveAfterResponse;
+            handleWrite();
+        });
+    }
+
+    /**
+     * 流式响应已提交的部分（在工作线程上调用）：交给事件循环立即写出。
+     * 已交出但还没写出的复制字节超过上限时阻塞，直到事件循环写出一部分，一个慢客户端占用的内存因此有上限
+     *
+     * @param copiedBytes 这些分段中复制出来的字节数，写出后从待写出字节数中扣除
+     */
+    void writePartial(Deque<Object> segments, long copiedBytes) throws IOException {
+        synchronized (writeLock) {
+            while (queuedBytes >= MAX_QUEUED_BYTES && !closed) {
+                try {
+                    writeLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待写出响应时被中断");
+                }
+            }
+            if (closed) {
+                closeSegments(segments);
+                throw new IOException("连接已关闭");
+            }
+            queuedBytes += copiedBytes;
+        }
+        segments.add((Runnable) () -> releaseQueued(copiedBytes));
+        eventLoop.execute(() -> {
+            if (closed) {
+                closeSegments(segments);
+                return;
+            }
+            appendWrites(segments);
+            handleWrite();
+        });
+    }
+
+    /**
+     * 一部分流式响应已写出（在事件循环上调用）：降到上限一半以下时唤醒等待的工作线程
+     */
+    private void releaseQueued(long copiedBytes) {
+        synchronized (writeLock) {
+            queuedBytes -= copiedBytes;
+            if (queuedBytes <= MAX_QUEUED_BYTES / 2) {
+                writeLock.notifyAll();
+            }
+        }
+    }
+
+    private void appendWrites(Deque<Object> segments) {
+        if (pendingWrites == null) {
+            pendingWrites = segments;
+        } else {
+            pendingWrites.addAll(segments);
+        }
+    }
+
+    /**
+     * 工作线程池拒绝或丢弃了本批请求（可能在工作线程上调用）：在事件循环上写出503后关闭连接
+     */
+    void rejectOverloaded() {
+        eventLoop.execute(() -> {
+            if (closed) {
+                return;
+            }
+            pendingWrites = new ArrayDeque<>();
+            pendingWrites.add(connector.getAdmissionController().serviceUnavailableResponse());
+            responseComplete = true;
+            keepAliveAfterWrite = false;
+            handleWrite();
+        });
+    }
+
+    /**
+     * 可写事件：按顺序写出待发送的响应分段；写完后保持连接则继续读取下一个请求，否则关闭
+     */
+    void handleWrite() {
+        if (closed || pendingWrites == null) {
+            return;
+        }
+        try {
+            while (!pendingWrites.isEmpty()) {
+                Object segment = pendingWrites.peek();
+                if (segment instanceof Runnable) {
+                    // 前面引用的响应体缓冲区已经写出，归还给所有者
+                    pendingWrites.poll();
+                    ((Runnable) segment).run();
+                    continue;
+                }
+                boolean written = segment instanceof FileRegion ? writeFileRegion((FileRegion) segment)
+                        : writeBuffers();
+                if (!written) {
+                    // 套接字发送缓冲区已满，等待下一次可写事件
+                    updateInterest();
+                    return;
+                }
+            }
+            pendingWrites = null;
+            lastActivityMillis = System.currentTimeMillis();
+            if (!responseComplete) {
+                // 流式响应已提交的部分写完，工作线程还在处理
+                updateInterest();
+                return;
+            }
+
+            if (!keepAliveAfterWrite) {
+                close();
+                return;
+            }
+            busy = false;
+            if (bodyDecoder != null) {
+                // 工作线程没有读完请求体：丢弃剩余部分后再处理下一个请求，剩余太多时直接关闭
+                if (bodyDecoder.getRemaining() > maxSwallowSize) {
+                    close();
+                    return;
+                }
+                bodyPipe = null;
+                bodyPaused = false;
+                swallowRemaining = maxSwallowSize;
+                readBody();
+                return;
+            }
+            resumeRequests();
+        } catch (IOException e) {
+            System.err.println("发送响应时发生错误: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 持久连接：丢弃已处理的请求后恢复读取，缓冲区中可能已有后续的流水线请求
+     */
+    private void resumeRequests() throws IOException {
+        discardConsumed();
+        updateInterest();
+        processBufferedRequest();
+    }
+
+    /**
+     * 工作线程处理请求期间只在请求体还没收齐且管道未满时读取；有未写完的响应时关注可写事件
+     */
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        int ops = 0;
+        if (bodyDecoder != null ? !bodyPaused : !busy) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (pendingWrites != null) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * 写出队首的文件区间，通过transferTo由内核直接发送到套接字，写完后出队
+     *
+     * @return 文件区间是否已全部写出
+     */
+    private boolean writeFileRegion(FileRegion region) throws IOException {
+        region.transferTo(channel);
+        if (!region.isComplete()) {
+            return false;
+        }
+        region.close();
+        pendingWrites.poll();
+        return true;
+    }
+
+    /**
+     * 队首连续的字节分段（响应头和单独成段的响应体）以一次gathering write写出，写完的分段出队
+     *
+     * @return 这些分段是否已全部写出
+     */
+    private boolean writeBuffers() throws IOException {
+        int count = 0;
+        for (Object segment : pendingWrites) {
+            if (!(segment instanceof ByteBuffer) || count == gatherBuffers.length) {
+                break;
+            }
+            gatherBuffers[count++] = (ByteBuffer) segment;
+        }
+        channel.write(gatherBuffers, 0, count);
+
+        boolean complete = true;
+        for (int i = 0; i < count; i++) {
+            if (gatherBuffers[i].hasRemaining()) {
+                complete = false;
+                break;
+            }
+            pendingWrites.poll();
+        }
+        Arrays.fill(gatherBuffers, 0, count, null);
+        return complete;
+    }
+
+    /**
+     * 空闲超时检查：没有正在处理的请求，或者在等待客户端发送请求体，且超过空闲时间则关闭连接
+     */
+    void closeIfIdle(long now, long idleTimeoutMillis) {
+        boolean waitingForClient = bodyDecoder != null ? !bodyPaused : !busy && pendingWrites == null;
+        if (waitingForClient && now - lastActivityMillis > idleTimeoutMillis) {
+            close();
+        }
+    }
+
+    /**
+     * 丢弃本批已处理的请求头字节，未解析完的数据移到缓冲区开头并重新解析
+     */
+    private void discardConsumed() {
+        if (consumedIndex == 0) {
+            return;
+        }
+        readBuffer.flip();
+        readBuffer.position(consumedIndex);
+        readBuffer.compact();
+        consumedIndex = 0;
+        parseIndex = 0;
+        parser.reset();
+    }
+
+    /**
+     * 扩容时数据保持在原来的下标，未完成请求头的解析状态仍然有效
+     */
+    private boolean growReadBuffer() {
+        if (readBuffer.capacity() >= maxHeaderSize) {
+            return false;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, maxHeaderSize));
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+        return true;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        synchronized (writeLock) {
+            // 唤醒等待写出的工作线程
+            closed = true;
+            writeLock.notifyAll();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        NioEventLoop.closeQuietly(channel);
+        if (bodyPipe != null) {
+            bodyPipe.fail(new EOFException("请求体没有收完，连接已关闭"));
+        }
+        if (pendingWrites != null) {
+            closeSegments(pendingWrites);
+            pendingWrites = null;
+        }
+    }
+
+    /**
+     * 关闭未发送完的文件区间，归还未写出的响应体缓冲区
+     */
+    private static void closeSegments(Deque<Object> segments) {
+        for (Object segment : segments) {
+            if (segment instanceof Runnable) {
+                ((Runnable) segment).run();
+            } else if (segment instanceof FileRegion) {
+                try {
+                    ((FileRegion) segment).close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+            }
+        }
+    }
+}
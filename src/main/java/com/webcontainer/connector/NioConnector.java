@@ -0,0 +1,142 @@
+package com.webcontainer.connector;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.webcontainer.http.KeepAlivePolicy;
+import com.webcontainer.stage4.AdmissionController;
+
+/**
+ * 基于Selector的非阻塞连接器
+ * 由少量事件循环线程负责读取和解析请求，只有完整的请求才会提交到Servlet工作线程池，
+ * 慢客户端不会再占用工作线程
+ */
+public class NioConnector {
+    // accept失败后暂停的时间
+    private static final long ACCEPT_FAILURE_PAUSE_MILLIS = 50;
+
+    private final int port;
+    private final int eventLoopCount;
+    private final NioRequestHandler handler;
+    private final AdmissionController admissionController;
+    private final KeepAlivePolicy keepAlivePolicy;
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
+    private volatile boolean running = false;
+
+    public NioConnector(int port, int eventLoopCount, NioRequestHandler handler,
+            AdmissionController admissionController, KeepAlivePolicy keepAlivePolicy) {
+        this.port = port;
+        this.eventLoopCount = Math.max(1, eventLoopCount);
+        this.handler = handler;
+        this.admissionController = admissionController;
+        this.keepAlivePolicy = keepAlivePolicy;
+    }
+
+    /**
+     * 启动事件循环，并在当前线程上循环接收连接（阻塞直到stop被调用）
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("WebServer-NioLoop-" + (i + 1), this);
+            eventLoops[i].start();
+        }
+        running = true;
+
+        System.out.println("NIO连接器启动成功，端口: " + port + "，事件循环线程数: " + eventLoopCount);
+
+        // 接收线程只负责accept，然后轮询分配给事件循环
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (running) {
+                    // 例如文件描述符耗尽（EMFILE）：短暂等待后再试，避免空转占满CPU
+                    System.err.println("接收连接时发生错误: " + e.getMessage());
+                    pauseAfterAcceptFailure();
+                }
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                nextEventLoop().register(channel);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("初始化连接时发生错误: " + e.getMessage());
+                NioEventLoop.closeQuietly(channel);
+            }
+        }
+    }
+
+    private static void pauseAfterAcceptFailure() {
+        try {
+            Thread.sleep(ACCEPT_FAILURE_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 停止连接器
+     */
+    public void stop() throws IOException {
+        running = false;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (eventLoops != null) {
+            for (NioEventLoop eventLoop : eventLoops) {
+                eventLoop.shutdown();
+            }
+        }
+        System.out.println("NIO连接器已停止");
+    }
+
+    /**
+     * 将一批完整解析的请求提交到工作线程池（同一连接上的请求按顺序处理）；
+     * 线程池饱和时直接在事件循环上返回503并关闭连接
+     */
+    void dispatch(NioConnection connection, List<NioRequestHandler.RequestTask> batch) {
+        admissionController.admit(() -> connection.service(batch), connection::rejectOverloaded);
+    }
+
+    NioRequestHandler getHandler() {
+        return handler;
+    }
+
+    AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    KeepAlivePolicy getKeepAlivePolicy() {
+        return keepAlivePolicy;
+    }
+
+    private NioEventLoop nextEventLoop() {
+        return eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+    }
+
+    /**
+     * 获取当前所有事件循环上的连接数
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        if (eventLoops != null) {
+            for (NioEventLoop eventLoop : eventLoops) {
+                count += eventLoop.getConnectionCount();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,165 @@
+package com.webcontainer.connector;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NIO事件循环
+ * 每个事件循环拥有一个Selector，负责若干连接的非阻塞读写
+ */
+class NioEventLoop implements Runnable {
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private final String name;
+    private final NioConnector connector;
+    private final Selector selector;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private long lastIdleCheckMillis = System.currentTimeMillis();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    NioEventLoop(String name, NioConnector connector) throws IOException {
+        this.name = name;
+        this.connector = connector;
+        this.selector = Selector.open();
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    /**
+     * 将新接受的连接注册到本事件循环
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                NioConnection connection = new NioConnection(channel, this, connector);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.attach(key);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("注册连接时发生错误: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * 在事件循环线程上执行任务（线程安全，可由工作线程调用）
+     */
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                runPendingTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+
+                closeIdleConnections();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[" + name + "] 事件循环发生错误: " + e.getMessage());
+                }
+            }
+        }
+
+        // 关闭所有连接
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("[" + name + "] 关闭Selector时发生错误: " + e.getMessage());
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (!key.isValid()) {
+            connection.close();
+            return;
+        }
+        if (key.isReadable()) {
+            connection.handleRead();
+        }
+        if (key.isValid() && key.isWritable()) {
+            connection.handleWrite();
+        }
+    }
+
+    /**
+     * 每秒检查一次持久连接的空闲超时
+     */
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheckMillis < SELECT_TIMEOUT_MILLIS) {
+            return;
+        }
+        lastIdleCheckMillis = now;
+
+        long idleTimeout = connector.getKeepAlivePolicy().getIdleTimeoutMillis();
+        for (SelectionKey key : selector.keys()) {
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection != null) {
+                connection.closeIfIdle(now, idleTimeout);
+            }
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("[" + name + "] 执行事件循环任务时发生错误: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 停止事件循环
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int getConnectionCount() {
+        return selector.keys().size();
+    }
+
+    static void closeQuietly(java.nio.channels.Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.webcontainer.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.webcontainer.http.HttpRequestHead;
+
+/**
+ * NIO连接器的请求处理回调
+ * 解析在事件循环线程上完成，Servlet处理在工作线程池中完成
+ */
+public interface NioRequestHandler {
+
+    /**
+     * 为一个已解析的请求创建处理任务（在事件循环线程上调用，不能阻塞）
+     *
+     * @param requestHead 引用连接读缓冲区的请求头，在任务执行完毕前有效
+     * @param body 解码后的请求体流，数据未到达时读取会阻塞，由事件循环在收到数据后唤醒；没有请求体时为空流
+     * @return 交给工作线程执行的请求任务
+     */
+    RequestTask createTask(HttpRequestHead requestHead, InputStream body);
+
+    /**
+     * 已解析的请求任务（在工作线程上执行）
+     */
+    interface RequestTask {
+
+        /**
+         * 处理请求并将完整的HTTP响应写入输出流
+         *
+         * @param keepAliveAllowed 连接器是否允许在响应后保持连接（未超过单连接最大请求数）
+         * @return 响应后是否保持连接
+         */
+        boolean service(OutputStream out, boolean keepAliveAllowed) throws IOException;
+    }
+}
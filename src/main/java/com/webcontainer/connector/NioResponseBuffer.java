@@ -0,0 +1,156 @@
+package com.webcontainer.connector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.ResponseSerializer;
+
+/**
+ * 一批响应的输出缓冲区（在工作线程上写入）
+ * 普通字节先累积在内存中，遇到文件区间时截断成一段，文件内容不复制，由事件循环按顺序直接从文件传输到套接字；
+ * 所有权交给连接的响应体（writeRetained）只保留引用单独成段，后面跟着它的归还回调，写出后由事件循环执行。
+ * 流式响应显式flush或复制的字节积累到一定长度时，已有的分段先交给连接写出，不等整批请求处理完
+ */
+class NioResponseBuffer extends OutputStream implements FileRegion.Sink, ResponseSerializer.GatheringSink {
+    private static final int INITIAL_SIZE = 1024;
+    // 调用方仍持有的缓冲区超过该长度时单独复制成一段，不再并入累积字节
+    private static final int SEPARATE_SEGMENT_THRESHOLD = 8 * 1024;
+    // 复制的字节超过该长度时先交给连接写出
+    private static final int PARTIAL_WRITE_THRESHOLD = 64 * 1024;
+
+    private final NioConnection connection;
+    // 累积的字节，截断成段时数组直接交给该段，不再复制
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int count;
+    // 元素为ByteBuffer、FileRegion或归还回调（Runnable）
+    private Deque<Object> segments = new ArrayDeque<>();
+    // segments中复制出来的字节数（不含文件区间和调用方交出所有权的缓冲区）
+    private long copiedBytes;
+    private boolean partiallyWritten;
+
+    NioResponseBuffer(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        bytes[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        System.arraycopy(b, off, bytes, count, len);
+        count += len;
+        writePartialIfFull();
+    }
+
+    /**
+     * 调用返回后缓冲区可能被调用方复用（例如线程复用的响应头缓冲区），因此都要复制一次
+     */
+    @Override
+    public void write(ByteBuffer[] buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            int length = buffer.remaining();
+            if (length >= SEPARATE_SEGMENT_THRESHOLD) {
+                flushBytes();
+                ByteBuffer copy = ByteBuffer.allocate(length);
+                copy.put(buffer.duplicate());
+                copy.flip();
+                segments.add(copy);
+                copiedBytes += length;
+            } else {
+                ensureCapacity(length);
+                buffer.duplicate().get(bytes, count, length);
+                count += length;
+            }
+        }
+        writePartialIfFull();
+    }
+
+    @Override
+    public void writeRetained(ByteBuffer buffer, Runnable release) throws IOException {
+        if (buffer.remaining() < SEPARATE_SEGMENT_THRESHOLD) {
+            // 小响应体并入累积字节更省系统调用，复制后立即归还
+            try {
+                write(new ByteBuffer[] { buffer });
+            } finally {
+                release.run();
+            }
+            return;
+        }
+        flushBytes();
+        segments.add(buffer.duplicate());
+        segments.add(release);
+    }
+
+    @Override
+    public void writeFileRegion(FileRegion region) {
+        flushBytes();
+        segments.add(region);
+    }
+
+    /**
+     * Servlet提交了一部分流式响应：已有的分段先交给连接写出
+     */
+    @Override
+    public void flush() throws IOException {
+        writePartial();
+    }
+
+    /**
+     * 取出剩余待写出的分段，缓冲区为空时返回空队列
+     */
+    Deque<Object> toSegments() {
+        flushBytes();
+        return segments;
+    }
+
+    /**
+     * 是否已有部分分段交给连接写出
+     */
+    boolean isPartiallyWritten() {
+        return partiallyWritten;
+    }
+
+    private void writePartialIfFull() throws IOException {
+        if (copiedBytes + count >= PARTIAL_WRITE_THRESHOLD) {
+            writePartial();
+        }
+    }
+
+    private void writePartial() throws IOException {
+        flushBytes();
+        if (segments.isEmpty()) {
+            return;
+        }
+        Deque<Object> ready = segments;
+        long readyBytes = copiedBytes;
+        segments = new ArrayDeque<>();
+        copiedBytes = 0;
+        partiallyWritten = true;
+        connection.writePartial(ready, readyBytes);
+    }
+
+    private void flushBytes() {
+        if (count > 0) {
+            segments.add(ByteBuffer.wrap(bytes, 0, count));
+            copiedBytes += count;
+            bytes = new byte[INITIAL_SIZE];
+            count = 0;
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (count + additional > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, count + additional)];
+            System.arraycopy(bytes, 0, grown, 0, count);
+            bytes = grown;
+        }
+    }
+}
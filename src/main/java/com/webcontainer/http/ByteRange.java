@@ -0,0 +1,98 @@
+package com.webcontainer.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Range请求中的一个字节区间（RFC 7233），起止位置都包含在内
+ */
+public final class ByteRange {
+    // 单个请求允许的最大区间数量，超过时忽略Range返回完整内容
+    public static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 按资源长度解析Range请求头
+     *
+     * @return 可满足的区间列表；没有可满足的区间时返回空列表（416）；
+     *         不是bytes单位、格式错误或区间过多时返回null，此时应忽略Range发送完整内容
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                String trimmed = spec.trim();
+                int dash = trimmed.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                String first = trimmed.substring(0, dash).trim();
+                String last = trimmed.substring(dash + 1).trim();
+
+                if (first.isEmpty()) {
+                    // 后缀区间：最后N个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    }
+                    continue;
+                }
+
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < length) {
+                    ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges.isEmpty() ? Collections.emptyList() : ranges;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @return Content-Range头的值，例如 bytes 0-499/1234
+     */
+    public String toContentRange(long completeLength) {
+        return "bytes " + start + "-" + end + "/" + completeLength;
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+}
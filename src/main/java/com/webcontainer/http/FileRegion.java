@@ -0,0 +1,101 @@
+package com.webcontainer.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件区间响应体
+ * 通过FileChannel.transferTo把文件内容直接发送到目标通道，目标是SocketChannel时由内核完成拷贝（sendfile），
+ * 文件内容不经过堆内存。每个响应一个实例，发送完毕或放弃发送时必须关闭
+ */
+public class FileRegion implements Closeable {
+    private final Path path;
+    private final long start;
+    private final long count;
+    private long position;
+    private FileChannel channel;
+
+    public FileRegion(Path path, long start, long count) {
+        this.path = path;
+        this.start = start;
+        this.count = count;
+        this.position = start;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isComplete() {
+        return position >= start + count;
+    }
+
+    /**
+     * 尽可能多地发送剩余内容，非阻塞通道可能只发送一部分
+     *
+     * @return 本次发送的字节数
+     * @throws IOException 文件在发送过程中被截断等
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        long remaining = start + count - position;
+        long transferred = channel.transferTo(position, remaining, target);
+        if (transferred == 0 && remaining > 0 && channel.size() < start + count) {
+            // 响应头中的Content-Length已经发出，只能中断连接
+            throw new IOException("文件在发送过程中被截断: " + path);
+        }
+        position += transferred;
+        return transferred;
+    }
+
+    /**
+     * 写入输出流
+     * 输出流实现了Sink时交给它延后发送（由它负责关闭），否则阻塞发送完毕并关闭
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (out instanceof Sink) {
+            ((Sink) out).writeFileRegion(this);
+            return;
+        }
+        try {
+            // 普通输出流没有对应的SocketChannel，transferTo以固定大小的临时缓冲区分段拷贝
+            WritableByteChannel target = Channels.newChannel(out);
+            while (!isComplete()) {
+                transferTo(target);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 能够直接接收文件区间的输出（例如NIO连接的响应缓冲区）
+     */
+    public interface Sink {
+
+        /**
+         * 在已写入的字节之后追加文件区间，区间的所有权交给实现方
+         */
+        void writeFileRegion(FileRegion region) throws IOException;
+    }
+}
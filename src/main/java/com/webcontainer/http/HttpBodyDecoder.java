@@ -0,0 +1,266 @@
+package com.webcontainer.http;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 增量式请求体解码器（RFC 7230 3.3）
+ * 按请求头确定请求体长度：Transfer-Encoding: chunked 按分块解码，否则按Content-Length，都没有时请求体为空。
+ * 与HttpRequestParser一样直接在连接的字节缓冲区上工作，数据不完整时保存状态，追加数据后继续；
+ * 输出数组为null时只跳过请求体（丢弃未读的请求体时不复制数据）
+ */
+public class HttpBodyDecoder {
+    public static final String MAX_BODY_SIZE_PROPERTY = "webcontainer.http.maxBodySize";
+    public static final long DEFAULT_MAX_BODY_SIZE = 10L * 1024 * 1024;
+
+    // 分块大小行（含扩展）和尾部字段的长度上限
+    private static final int MAX_CHUNK_LINE = 4096;
+    private static final int MAX_TRAILER_SIZE = 8 * 1024;
+    private static final int MAX_CHUNK_SIZE_DIGITS = 15;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private enum State {
+        SIZE, SIZE_EXTENSION, SIZE_LF, DATA, DATA_CR, DATA_LF,
+        TRAILER_START, TRAILER_LINE, TRAILER_LF, END_LF, DONE
+    }
+
+    private final boolean chunked;
+    private final long maxBodySize;
+    // 定长请求体剩余的字节数；分块请求体为当前分块剩余的字节数
+    private long remaining;
+    private long total;
+    private State state;
+    private int sizeDigits;
+    private int lineLength;
+    private HttpParseException error;
+
+    private HttpBodyDecoder(boolean chunked, long contentLength, long maxBodySize) {
+        this.chunked = chunked;
+        this.remaining = contentLength;
+        this.maxBodySize = maxBodySize;
+        this.state = chunked ? State.SIZE : contentLength == 0 ? State.DONE : State.DATA;
+    }
+
+    /**
+     * 按请求头创建解码器
+     *
+     * @throws HttpParseException 长度声明无效或冲突（400）、超过大小上限（413）、不支持的传输编码（501）
+     */
+    public static HttpBodyDecoder forRequest(HttpRequestHead head, long maxBodySize) throws HttpParseException {
+        List<String> transferEncodings = head.getHeaders("Transfer-Encoding");
+        List<String> contentLengths = head.getHeaders("Content-Length");
+
+        if (!transferEncodings.isEmpty()) {
+            // 两者同时出现是请求走私的典型手法，直接拒绝
+            if (!contentLengths.isEmpty()) {
+                throw new HttpParseException(400, "请求同时包含Transfer-Encoding和Content-Length");
+            }
+            if (transferEncodings.size() != 1 || !"chunked".equalsIgnoreCase(transferEncodings.get(0))) {
+                throw new HttpParseException(501, "不支持的传输编码: " + String.join(", ", transferEncodings));
+            }
+            return new HttpBodyDecoder(true, 0, maxBodySize);
+        }
+
+        if (contentLengths.isEmpty()) {
+            return new HttpBodyDecoder(false, 0, maxBodySize);
+        }
+        long contentLength = -1;
+        for (String value : contentLengths) {
+            // 重复的Content-Length（包括逗号分隔的列表）必须完全一致
+            for (String part : value.split(",")) {
+                long length = parseContentLength(part.trim());
+                if (contentLength >= 0 && length != contentLength) {
+                    throw new HttpParseException(400, "Content-Length不一致");
+                }
+                contentLength = length;
+            }
+        }
+        if (contentLength > maxBodySize) {
+            throw new HttpParseException(413, "请求体超过 " + maxBodySize + " 字节");
+        }
+        return new HttpBodyDecoder(false, contentLength, maxBodySize);
+    }
+
+    private static long parseContentLength(String value) throws HttpParseException {
+        if (value.isEmpty() || value.length() > 18) {
+            throw new HttpParseException(400, "无效的Content-Length: " + value);
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new HttpParseException(400, "无效的Content-Length: " + value);
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length;
+    }
+
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * 请求体是否已经全部解码
+     */
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * @return 定长请求体剩余的字节数；分块请求体长度未知，返回-1
+     */
+    public long getRemaining() {
+        return chunked ? (state == State.DONE ? 0 : -1) : remaining;
+    }
+
+    /**
+     * 从src的position开始解码，最多输出len个字节到dst；src的position前移到已消费数据之后。
+     * 除非请求体已结束或输出已满，src中的数据总会被全部消费，属于下一个请求的数据保持不动
+     *
+     * @param dst 为null时丢弃解码出的字节
+     * @return 输出的字节数
+     * @throws HttpParseException 分块格式错误（400）或请求体超过大小上限（413）
+     */
+    public int decode(ByteBuffer src, byte[] dst, int off, int len) throws HttpParseException {
+        if (error != null) {
+            throw error;
+        }
+        if (!chunked) {
+            int n = (int) Math.min(Math.min(remaining, src.remaining()), len);
+            if (dst != null) {
+                src.get(dst, off, n);
+            } else {
+                src.position(src.position() + n);
+            }
+            remaining -= n;
+            if (remaining == 0) {
+                state = State.DONE;
+            }
+            return n;
+        }
+        try {
+            return decodeChunked(src, dst, off, len);
+        } catch (HttpParseException e) {
+            error = e;
+            throw e;
+        }
+    }
+
+    private int decodeChunked(ByteBuffer src, byte[] dst, int off, int len) throws HttpParseException {
+        byte[] data = src.array();
+        int offset = src.arrayOffset();
+        int pos = offset + src.position();
+        int limit = offset + src.limit();
+        int produced = 0;
+
+        try {
+            while (pos < limit && state != State.DONE) {
+                if (state == State.DATA) {
+                    int n = (int) Math.min(Math.min(remaining, limit - pos), len - produced);
+                    if (n == 0) {
+                        break;
+                    }
+                    if (dst != null) {
+                        System.arraycopy(data, pos, dst, off + produced, n);
+                    }
+                    pos += n;
+                    produced += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = State.DATA_CR;
+                    }
+                    continue;
+                }
+
+                byte b = data[pos++];
+                switch (state) {
+                    case SIZE:
+                        int digit = Character.digit(b, 16);
+                        if (digit >= 0) {
+                            if (++sizeDigits > MAX_CHUNK_SIZE_DIGITS) {
+                                throw new HttpParseException(400, "分块大小超出范围");
+                            }
+                            remaining = (remaining << 4) | digit;
+                        } else if (sizeDigits == 0) {
+                            throw new HttpParseException(400, "无效的分块大小");
+                        } else if (b == ';' || b == ' ' || b == '\t') {
+                            state = State.SIZE_EXTENSION;
+                        } else if (b == CR) {
+                            state = State.SIZE_LF;
+                        } else {
+                            throw new HttpParseException(400, "无效的分块大小");
+                        }
+                        break;
+                    case SIZE_EXTENSION:
+                        // 分块扩展没有定义任何语义，直接跳过
+                        if (b == CR) {
+                            state = State.SIZE_LF;
+                        } else if (b == LF) {
+                            throw new HttpParseException(400, "行结束符必须是CRLF");
+                        } else if (++lineLength > MAX_CHUNK_LINE) {
+                            throw new HttpParseException(400, "分块扩展超过 " + MAX_CHUNK_LINE + " 字节");
+                        }
+                        break;
+                    case SIZE_LF:
+                        expectLf(b);
+                        total += remaining;
+                        if (total > maxBodySize) {
+                            throw new HttpParseException(413, "请求体超过 " + maxBodySize + " 字节");
+                        }
+                        state = remaining == 0 ? State.TRAILER_START : State.DATA;
+                        sizeDigits = 0;
+                        lineLength = 0;
+                        break;
+                    case DATA_CR:
+                        if (b != CR) {
+                            throw new HttpParseException(400, "分块数据之后缺少CRLF");
+                        }
+                        state = State.DATA_LF;
+                        break;
+                    case DATA_LF:
+                        expectLf(b);
+                        state = State.SIZE;
+                        break;
+                    case TRAILER_START:
+                        // 尾部字段不合并到请求头，只检查长度后丢弃
+                        if (b == CR) {
+                            state = State.END_LF;
+                        } else {
+                            state = State.TRAILER_LINE;
+                            lineLength++;
+                        }
+                        break;
+                    case TRAILER_LINE:
+                        if (b == CR) {
+                            state = State.TRAILER_LF;
+                        } else if (++lineLength > MAX_TRAILER_SIZE) {
+                            throw new HttpParseException(400, "尾部字段超过 " + MAX_TRAILER_SIZE + " 字节");
+                        }
+                        break;
+                    case TRAILER_LF:
+                        expectLf(b);
+                        state = State.TRAILER_START;
+                        break;
+                    case END_LF:
+                        expectLf(b);
+                        state = State.DONE;
+                        break;
+                    default:
+                        throw new IllegalStateException("未知的解码状态: " + state);
+                }
+            }
+        } finally {
+            src.position(pos - offset);
+        }
+        return produced;
+    }
+
+    private static void expectLf(byte b) throws HttpParseException {
+        if (b != LF) {
+            throw new HttpParseException(400, "行结束符必须是CRLF");
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.webcontainer.http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.util.Locale;
+
+/**
+ * HTTP日期（RFC 7231 7.1.1.1）的格式化和解析
+ * 输出固定使用IMF-fixdate格式，按公历直接计算各字段，不经过java.time；
+ * 解析时IMF-fixdate走同样的快速路径，RFC 850和asctime两种旧格式交给DateTimeFormatter。
+ * 另外维护当前时间的Date响应头，由后台线程每秒更新一次，响应直接复用预先编码的字节
+ */
+public final class HttpDates {
+
+    private static final String[] DAY_NAMES = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+    private static final String[] MONTH_NAMES = { "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+            "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+    private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    // "Sun, 06 Nov 1994 08:49:37 GMT"
+    private static final int IMF_FIXDATE_LENGTH = 29;
+    private static final long SECONDS_PER_DAY = 86400L;
+    // 0001-01-01和9999-12-31 23:59:59
+    private static final long MIN_EPOCH_SECOND = -62135596800L;
+    private static final long MAX_EPOCH_SECOND = 253402300799L;
+
+    // 仅用于四位年份之外的时间
+    private static final DateTimeFormatter IMF_FIXDATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    // Sunday, 06-Nov-94 08:49:37 GMT
+    private static final DateTimeFormatter RFC_850 = new DateTimeFormatterBuilder()
+            .appendPattern("EEEE, dd-MMM-")
+            .appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+            .appendPattern(" HH:mm:ss 'GMT'")
+            .toFormatter(Locale.US);
+
+    // Sun Nov  6 08:49:37 1994
+    private static final DateTimeFormatter ASCTIME = new DateTimeFormatterBuilder()
+            .appendPattern("EEE MMM ")
+            .padNext(2)
+            .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendPattern(" HH:mm:ss yyyy")
+            .toFormatter(Locale.US);
+
+    // 最近一次格式化的结果，同一秒内重复格式化（Last-Modified、Expires等）直接返回
+    private static volatile Formatted lastFormatted = new Formatted(Long.MIN_VALUE, null);
+    private static volatile CurrentDate currentDate = CurrentDate.of(System.currentTimeMillis());
+
+    static {
+        Thread ticker = new Thread(HttpDates::tick, "Http-Date-Ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private HttpDates() {
+    }
+
+    /**
+     * 格式化为IMF-fixdate，精度为秒
+     */
+    public static String format(long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        Formatted last = lastFormatted;
+        if (last.epochSecond == epochSecond) {
+            return last.text;
+        }
+        String text = formatSeconds(epochSecond);
+        lastFormatted = new Formatted(epochSecond, text);
+        return text;
+    }
+
+    /**
+     * 当前时间的IMF-fixdate，最多滞后一秒
+     */
+    public static String currentDate() {
+        return currentDate.text;
+    }
+
+    /**
+     * 预先编码的"Date: ...\r\n"响应头，调用方不得修改返回的数组
+     */
+    static byte[] currentDateHeader() {
+        return currentDate.header;
+    }
+
+    /**
+     * 解析HTTP日期
+     *
+     * @return 毫秒时间戳；值为null或格式无法识别时返回-1
+     */
+    public static long parse(String value) {
+        if (value == null) {
+            return -1L;
+        }
+        String text = value.trim();
+        if (text.length() == IMF_FIXDATE_LENGTH && text.charAt(3) == ',') {
+            return parseImfFixdate(text);
+        }
+        try {
+            return LocalDateTime.parse(text, RFC_850).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // 尝试旧格式
+        }
+        try {
+            return LocalDateTime.parse(text, ASCTIME).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    private static String formatSeconds(long epochSecond) {
+        if (epochSecond < MIN_EPOCH_SECOND || epochSecond > MAX_EPOCH_SECOND) {
+            return IMF_FIXDATE.format(Instant.ofEpochSecond(epochSecond));
+        }
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // 公历日期换算（Howard Hinnant civil_from_days），纪元按400年周期对齐到03-01
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+        char[] chars = new char[IMF_FIXDATE_LENGTH];
+        String dayName = DAY_NAMES[(int) Math.floorMod(epochDay, 7L)];
+        String monthName = MONTH_NAMES[month - 1];
+        dayName.getChars(0, 3, chars, 0);
+        chars[3] = ',';
+        chars[4] = ' ';
+        twoDigits(chars, 5, day);
+        chars[7] = ' ';
+        monthName.getChars(0, 3, chars, 8);
+        chars[11] = ' ';
+        twoDigits(chars, 12, year / 100);
+        twoDigits(chars, 14, year % 100);
+        chars[16] = ' ';
+        twoDigits(chars, 17, secondOfDay / 3600);
+        chars[19] = ':';
+        twoDigits(chars, 20, secondOfDay / 60 % 60);
+        chars[22] = ':';
+        twoDigits(chars, 23, secondOfDay % 60);
+        chars[25] = ' ';
+        chars[26] = 'G';
+        chars[27] = 'M';
+        chars[28] = 'T';
+        return new String(chars);
+    }
+
+    private static void twoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * 按固定位置解析"Sun, 06 Nov 1994 08:49:37 GMT"，星期必须与日期一致
+     */
+    private static long parseImfFixdate(String text) {
+        if (text.charAt(4) != ' ' || text.charAt(7) != ' ' || text.charAt(11) != ' ' || text.charAt(16) != ' '
+                || text.charAt(19) != ':' || text.charAt(22) != ':' || !text.startsWith(" GMT", 25)) {
+            return -1L;
+        }
+        int month = indexOf(MONTH_NAMES, text, 8) + 1;
+        int day = digits(text, 5, 2);
+        int year = digits(text, 12, 4);
+        int hour = digits(text, 17, 2);
+        int minute = digits(text, 20, 2);
+        int second = digits(text, 23, 2);
+        if (month == 0 || year < 1 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+                || (hour | minute | second) < 0 || hour > 23 || minute > 59 || second > 59) {
+            return -1L;
+        }
+        if (month == 2 && day == 29 && !isLeapYear(year)) {
+            return -1L;
+        }
+
+        // days_from_civil，formatSeconds的逆运算
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long epochDay = era * 146097L + dayOfEra - 719468;
+
+        if (indexOf(DAY_NAMES, text, 0) != Math.floorMod(epochDay, 7L)) {
+            return -1L;
+        }
+        return (epochDay * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second) * 1000L;
+    }
+
+    private static int indexOf(String[] names, String text, int offset) {
+        for (int i = 0; i < names.length; i++) {
+            if (text.startsWith(names[i], offset)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 非负整数；含非数字字符时返回-1
+     */
+    private static int digits(String text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * 每到下一秒开始时刷新当前日期
+     */
+    private static void tick() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            try {
+                Thread.sleep(1000L - Math.floorMod(now, 1000L));
+            } catch (InterruptedException e) {
+                return;
+            }
+            currentDate = CurrentDate.of(System.currentTimeMillis());
+        }
+    }
+
+    private static final class Formatted {
+        final long epochSecond;
+        final String text;
+
+        Formatted(long epochSecond, String text) {
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+
+    private static final class CurrentDate {
+        final String text;
+        final byte[] header;
+
+        private CurrentDate(String text) {
+            this.text = text;
+            this.header = ("Date: " + text + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        static CurrentDate of(long epochMillis) {
+            return new CurrentDate(formatSeconds(Math.floorDiv(epochMillis, 1000L)));
+        }
+    }
+}
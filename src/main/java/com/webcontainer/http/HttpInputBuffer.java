@@ -0,0 +1,266 @@
+package com.webcontainer.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * 阻塞连接的请求读取缓冲区
+ * 每个连接一个实例，从套接字输入流读取字节并交给HttpRequestParser解析，
+ * 流水线请求中已读入的后续字节保留在缓冲区中供下一次解析。
+ * 请求体通过getBody按需从同一缓冲区流式解码，读取下一个请求头之前自动丢弃没有读完的请求体
+ */
+public class HttpInputBuffer {
+    public static final String MAX_SWALLOW_SIZE_PROPERTY = "webcontainer.http.maxSwallowSize";
+    public static final long DEFAULT_MAX_SWALLOW_SIZE = 2L * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // 请求头之后剩余的空间小于该值时，读取请求体改用新的缓冲区
+    private static final int MIN_BODY_READ = 1024;
+
+    private final InputStream in;
+    // 发送"100 Continue"的输出，为null时不发送（客户端等待超时后仍会发送请求体）
+    private final OutputStream interimOut;
+    private final HttpRequestParser parser;
+    private final int maxBufferSize;
+    private final long maxBodySize = Long.getLong(HttpBodyDecoder.MAX_BODY_SIZE_PROPERTY,
+            HttpBodyDecoder.DEFAULT_MAX_BODY_SIZE);
+    private final long maxSwallowSize = Long.getLong(MAX_SWALLOW_SIZE_PROPERTY, DEFAULT_MAX_SWALLOW_SIZE);
+    // 读模式：position为下一个未解析字节，limit为已读入数据的末尾
+    private ByteBuffer buffer;
+
+    // 当前请求的请求体
+    private HttpBodyDecoder body;
+    private BodyInputStream bodyStream;
+    // 请求头之后的位置：请求头的字节在请求处理完之前不能覆盖，请求体只在这之后读入
+    private int bodyStart;
+    private boolean expectContinue;
+
+    public HttpInputBuffer(InputStream in) {
+        this(in, null);
+    }
+
+    public HttpInputBuffer(InputStream in, OutputStream interimOut) {
+        this(in, interimOut, new HttpRequestParser(),
+                Integer.getInteger(HttpRequestParser.MAX_HEADER_SIZE_PROPERTY,
+                        HttpRequestParser.DEFAULT_MAX_HEADER_SIZE));
+    }
+
+    public HttpInputBuffer(InputStream in, OutputStream interimOut, HttpRequestParser parser, int maxBufferSize) {
+        this.in = in;
+        this.interimOut = interimOut;
+        this.parser = parser;
+        this.maxBufferSize = maxBufferSize;
+        this.buffer = ByteBuffer.allocate(Math.min(INITIAL_BUFFER_SIZE, maxBufferSize));
+        this.buffer.limit(0);
+    }
+
+    /**
+     * 读取并解析下一个请求头
+     * 返回的请求头引用本缓冲区，在下一次调用前有效
+     *
+     * @return 请求头；客户端在请求之间关闭连接，或上一个请求体太大无法丢弃时返回null
+     * @throws HttpParseException 请求头格式错误，或请求体长度声明无效
+     */
+    public HttpRequestHead readRequestHead() throws IOException {
+        if (!skipBody()) {
+            return null;
+        }
+        if (!buffer.hasRemaining()) {
+            // 上一个请求的数据已全部消费，从头开始使用缓冲区
+            buffer.clear().limit(0);
+        }
+        parser.reset();
+        int headStart = buffer.position();
+
+        while (true) {
+            HttpRequestHead head = parser.parse(buffer);
+            if (head != null) {
+                body = HttpBodyDecoder.forRequest(head, maxBodySize);
+                bodyStream = null;
+                bodyStart = buffer.position();
+                expectContinue = !body.isComplete() && head.expectsContinue();
+                return head;
+            }
+
+            if (buffer.limit() == buffer.capacity()) {
+                makeRoom(headStart);
+                // 数据已移动，偏移量失效，从请求头开始重新解析
+                headStart = 0;
+                parser.reset();
+                buffer.position(0);
+            }
+
+            int limit = buffer.limit();
+            int read = in.read(buffer.array(), limit, buffer.capacity() - limit);
+            if (read < 0) {
+                if (!parser.isStarted()) {
+                    return null;
+                }
+                throw new EOFException("请求头未完整时连接已关闭");
+            }
+            buffer.limit(limit + read);
+        }
+    }
+
+    /**
+     * 当前请求的请求体，读完后返回-1；没有请求体时为空流
+     */
+    public InputStream getBody() {
+        if (bodyStream == null) {
+            bodyStream = new BodyInputStream(body);
+        }
+        return bodyStream;
+    }
+
+    /**
+     * 缓冲区或套接字中是否已有后续请求的数据（流水线请求）
+     * 已读入缓冲区的剩余请求体在这里直接丢弃；请求体还没有收完时，套接字中的数据仍属于当前请求
+     */
+    public boolean hasBufferedInput() throws IOException {
+        if (body != null && !body.isComplete()) {
+            if (buffer.hasRemaining()) {
+                body.decode(buffer, null, 0, Integer.MAX_VALUE);
+            }
+            if (!body.isComplete()) {
+                return false;
+            }
+        }
+        return buffer.hasRemaining() || in.available() > 0;
+    }
+
+    /**
+     * 丢弃当前请求没有读完的请求体，使连接可以继续处理下一个请求
+     *
+     * @return 是否已丢弃完毕；请求体超过maxSwallowSize、客户端仍在等待100 Continue或连接已关闭时返回false
+     */
+    private boolean skipBody() throws IOException {
+        if (body == null || body.isComplete()) {
+            return true;
+        }
+        if (expectContinue) {
+            // 没有发送100 Continue，客户端可能根本不会发送请求体，无法确定下一个请求从哪里开始
+            return false;
+        }
+        long remaining = body.getRemaining();
+        if (remaining > maxSwallowSize + buffer.remaining()) {
+            return false;
+        }
+        long skipped = 0;
+        while (true) {
+            skipped += body.decode(buffer, null, 0, Integer.MAX_VALUE);
+            if (body.isComplete()) {
+                return true;
+            }
+            if (skipped > maxSwallowSize || !fillBody()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 读取更多的请求体数据（调用时缓冲区中的数据已全部解码）
+     * 已解码的请求体字节不再需要，新数据从请求头之后开始写入，请求头引用的字节保持不变；
+     * 请求头之后空间不足时换用新的缓冲区，请求头仍引用原来的数组
+     *
+     * @return 连接已关闭时返回false
+     */
+    private boolean fillBody() throws IOException {
+        if (buffer.capacity() - bodyStart < MIN_BODY_READ) {
+            buffer = ByteBuffer.allocate(buffer.capacity());
+            bodyStart = 0;
+        }
+        buffer.limit(bodyStart);
+        int read = in.read(buffer.array(), bodyStart, buffer.capacity() - bodyStart);
+        if (read < 0) {
+            return false;
+        }
+        buffer.limit(bodyStart + read);
+        return true;
+    }
+
+    /**
+     * 把未完成的请求头移到缓冲区开头，必要时扩容
+     */
+    private void makeRoom(int headStart) throws HttpParseException {
+        byte[] data = buffer.array();
+        int length = buffer.limit() - headStart;
+        if (headStart > 0) {
+            System.arraycopy(data, headStart, data, 0, length);
+        } else if (buffer.capacity() < maxBufferSize) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxBufferSize));
+            System.arraycopy(data, 0, larger.array(), 0, length);
+            buffer = larger;
+        } else {
+            throw new HttpParseException(431, "请求头超过 " + maxBufferSize + " 字节");
+        }
+        buffer.limit(length);
+    }
+
+    /**
+     * 请求体输入流，只对创建它的请求有效；之后的请求开始后读取返回-1
+     */
+    private class BodyInputStream extends InputStream {
+        private final HttpBodyDecoder decoder;
+
+        BodyInputStream(HttpBodyDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (decoder == null || decoder != body || decoder.isComplete()) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            sendContinue();
+            while (true) {
+                if (buffer.hasRemaining()) {
+                    int n = decoder.decode(buffer, b, off, len);
+                    if (n > 0) {
+                        return n;
+                    }
+                    if (decoder.isComplete()) {
+                        return -1;
+                    }
+                } else if (!fillBody()) {
+                    throw new EOFException("请求体未完整时连接已关闭");
+                }
+            }
+        }
+
+        @Override
+        public int available() {
+            if (decoder == null || decoder != body || decoder.isComplete() || decoder.isChunked()) {
+                return 0;
+            }
+            return (int) Math.min(decoder.getRemaining(), buffer.remaining());
+        }
+
+        /**
+         * 第一次读取请求体时告诉等待中的客户端可以开始发送
+         */
+        private void sendContinue() throws IOException {
+            if (!expectContinue) {
+                return;
+            }
+            expectContinue = false;
+            if (interimOut != null) {
+                interimOut.write(ResponseSerializer.continueResponse());
+                interimOut.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.webcontainer.http;
+
+import java.io.IOException;
+
+/**
+ * 请求头或请求体格式错误、超过大小限制
+ */
+public class HttpParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpParseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * 建议返回给客户端的状态码（400、413、414、431或501）
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
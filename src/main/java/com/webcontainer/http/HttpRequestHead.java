@@ -0,0 +1,243 @@
+package com.webcontainer.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 已解析的HTTP请求头
+ * 请求行和各个头部只以偏移量的形式引用连接的读缓冲区，在第一次读取时才解码为字符串。
+ * 引用的缓冲区在同一连接解析下一个请求之前保持有效
+ */
+public class HttpRequestHead {
+    private final byte[] buffer;
+
+    private final int methodStart;
+    private final int methodEnd;
+    private final int uriStart;
+    private final int uriEnd;
+    private final int protocolStart;
+    private final int protocolEnd;
+
+    // 每个头部占4个int：名称起止、值起止
+    private final int[] headerOffsets;
+    private final int headerCount;
+    private final int headEnd;
+
+    private String method;
+    private String uri;
+    private String protocol;
+    private String[] headerValues;
+
+    HttpRequestHead(byte[] buffer, int methodStart, int methodEnd, int uriStart, int uriEnd,
+            int protocolStart, int protocolEnd, int[] headerOffsets, int headerCount, int headEnd) {
+        this.buffer = buffer;
+        this.methodStart = methodStart;
+        this.methodEnd = methodEnd;
+        this.uriStart = uriStart;
+        this.uriEnd = uriEnd;
+        this.protocolStart = protocolStart;
+        this.protocolEnd = protocolEnd;
+        this.headerOffsets = headerOffsets;
+        this.headerCount = headerCount;
+        this.headEnd = headEnd;
+    }
+
+    public String getMethod() {
+        if (method == null) {
+            method = decodeMethod();
+        }
+        return method;
+    }
+
+    public String getUri() {
+        if (uri == null) {
+            uri = decode(uriStart, uriEnd);
+        }
+        return uri;
+    }
+
+    public String getProtocol() {
+        if (protocol == null) {
+            protocol = equalsAscii(protocolStart, protocolEnd, "HTTP/1.1") ? "HTTP/1.1"
+                    : equalsAscii(protocolStart, protocolEnd, "HTTP/1.0") ? "HTTP/1.0"
+                            : decode(protocolStart, protocolEnd);
+        }
+        return protocol;
+    }
+
+    /**
+     * 判断请求方法，不创建字符串
+     */
+    public boolean isMethod(String name) {
+        return equalsAscii(methodStart, methodEnd, name);
+    }
+
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    public String getHeaderName(int index) {
+        int base = index * 4;
+        return decode(headerOffsets[base], headerOffsets[base + 1]);
+    }
+
+    public String getHeaderValue(int index) {
+        if (headerValues == null) {
+            headerValues = new String[headerCount];
+        }
+        String value = headerValues[index];
+        if (value == null) {
+            int base = index * 4;
+            value = decode(headerOffsets[base + 2], headerOffsets[base + 3]);
+            headerValues[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 按名称查找头部（忽略大小写），返回第一个匹配的值
+     */
+    public String getHeader(String name) {
+        int index = indexOfHeader(name, 0);
+        return index < 0 ? null : getHeaderValue(index);
+    }
+
+    /**
+     * 按名称查找所有同名头部的值
+     */
+    public List<String> getHeaders(String name) {
+        int index = indexOfHeader(name, 0);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>(2);
+        while (index >= 0) {
+            values.add(getHeaderValue(index));
+            index = indexOfHeader(name, index + 1);
+        }
+        return values;
+    }
+
+    /**
+     * 所有头部名称（小写，去重）
+     */
+    public Set<String> getHeaderNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < headerCount; i++) {
+            names.add(getHeaderName(i).toLowerCase());
+        }
+        return names;
+    }
+
+    /**
+     * 从fromIndex开始查找指定名称的头部，按字节逐个忽略ASCII大小写比较
+     */
+    public int indexOfHeader(String name, int fromIndex) {
+        int length = name.length();
+        for (int i = fromIndex; i < headerCount; i++) {
+            int base = i * 4;
+            int start = headerOffsets[base];
+            if (headerOffsets[base + 1] - start == length && equalsIgnoreCaseAscii(start, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * HTTP/1.1客户端是否在等待100 Continue之后才发送请求体
+     */
+    public boolean expectsContinue() {
+        String expect = getHeader("Expect");
+        return expect != null && "100-continue".equalsIgnoreCase(expect) && "HTTP/1.1".equals(getProtocol());
+    }
+
+    /**
+     * 请求头在缓冲区中的结束位置（空行之后），其后是请求体或下一个流水线请求
+     */
+    public int getHeadEnd() {
+        return headEnd;
+    }
+
+    private boolean equalsIgnoreCaseAscii(int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            int b = buffer[start + i];
+            int c = name.charAt(i);
+            if (b != c) {
+                // 仅对ASCII字母做大小写折叠
+                if (b >= 'A' && b <= 'Z') {
+                    b += 32;
+                }
+                if (c >= 'A' && c <= 'Z') {
+                    c += 32;
+                }
+                if (b != c) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsAscii(int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 常见方法直接返回常量，避免分配
+     */
+    private String decodeMethod() {
+        switch (methodEnd - methodStart) {
+            case 3:
+                if (equalsAscii(methodStart, methodEnd, "GET")) {
+                    return "GET";
+                }
+                if (equalsAscii(methodStart, methodEnd, "PUT")) {
+                    return "PUT";
+                }
+                break;
+            case 4:
+                if (equalsAscii(methodStart, methodEnd, "POST")) {
+                    return "POST";
+                }
+                if (equalsAscii(methodStart, methodEnd, "HEAD")) {
+                    return "HEAD";
+                }
+                break;
+            case 6:
+                if (equalsAscii(methodStart, methodEnd, "DELETE")) {
+                    return "DELETE";
+                }
+                break;
+            case 7:
+                if (equalsAscii(methodStart, methodEnd, "OPTIONS")) {
+                    return "OPTIONS";
+                }
+                break;
+            default:
+                break;
+        }
+        return decode(methodStart, methodEnd);
+    }
+
+    private String decode(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return getMethod() + " " + getUri() + " " + getProtocol();
+    }
+}
@@ -0,0 +1,282 @@
+package com.webcontainer.http;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 增量式HTTP请求头解析器
+ * 直接在字节缓冲区上按状态机逐字节解析，不做字符解码和字符串切分；
+ * 数据不完整时保存状态返回null，追加数据后从上次的位置继续。
+ * 解析出的请求头只记录偏移量，解析期间调用方不能移动缓冲区中当前请求头的字节
+ */
+public class HttpRequestParser {
+    public static final String MAX_REQUEST_LINE_PROPERTY = "webcontainer.http.maxRequestLine";
+    public static final String MAX_HEADER_SIZE_PROPERTY = "webcontainer.http.maxHeaderSize";
+    public static final String MAX_HEADER_COUNT_PROPERTY = "webcontainer.http.maxHeaderCount";
+
+    public static final int DEFAULT_MAX_REQUEST_LINE = 8 * 1024;
+    public static final int DEFAULT_MAX_HEADER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_HEADER_COUNT = 100;
+
+    private static final int INITIAL_HEADER_CAPACITY = 16;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SP = ' ';
+    private static final byte HT = '\t';
+
+    // RFC 7230 token字符表
+    private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+    static {
+        for (int c = '0'; c <= '9'; c++) {
+            TOKEN_CHARS[c] = true;
+        }
+        for (int c = 'a'; c <= 'z'; c++) {
+            TOKEN_CHARS[c] = true;
+            TOKEN_CHARS[c - 32] = true;
+        }
+        for (char c : "!#$%&'*+-.^_`|~".toCharArray()) {
+            TOKEN_CHARS[c] = true;
+        }
+    }
+
+    private enum State {
+        START, METHOD, URI, PROTOCOL, REQUEST_LINE_LF,
+        HEADER_START, HEADER_NAME, HEADER_VALUE_START, HEADER_VALUE, HEADER_LF, HEAD_END_LF
+    }
+
+    private final int maxRequestLine;
+    private final int maxHeaderSize;
+    private final int maxHeaderCount;
+
+    private State state = State.START;
+    private int headStart;
+    private int methodStart;
+    private int methodEnd;
+    private int uriStart;
+    private int uriEnd;
+    private int protocolStart;
+    private int protocolEnd;
+    private int[] headerOffsets;
+    private int headerCount;
+    private int valueEnd;
+
+    public HttpRequestParser() {
+        this(Integer.getInteger(MAX_REQUEST_LINE_PROPERTY, DEFAULT_MAX_REQUEST_LINE),
+                Integer.getInteger(MAX_HEADER_SIZE_PROPERTY, DEFAULT_MAX_HEADER_SIZE),
+                Integer.getInteger(MAX_HEADER_COUNT_PROPERTY, DEFAULT_MAX_HEADER_COUNT));
+    }
+
+    public HttpRequestParser(int maxRequestLine, int maxHeaderSize, int maxHeaderCount) {
+        this.maxRequestLine = maxRequestLine;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * 从buffer的position开始解析，直到limit或请求头结束
+     * 缓冲区必须是堆缓冲区；返回后position指向已消费数据之后
+     *
+     * @return 完整的请求头；数据不足时返回null
+     * @throws HttpParseException 格式错误或超过大小限制
+     */
+    public HttpRequestHead parse(ByteBuffer buffer) throws HttpParseException {
+        byte[] data = buffer.array();
+        int offset = buffer.arrayOffset();
+        int pos = offset + buffer.position();
+        int limit = offset + buffer.limit();
+
+        try {
+            while (pos < limit) {
+                if (state != State.START && pos - headStart >= maxHeaderSize) {
+                    throw new HttpParseException(431, "请求头超过 " + maxHeaderSize + " 字节");
+                }
+                byte b = data[pos];
+                switch (state) {
+                    case START:
+                        // 忽略请求之间多余的空行
+                        if (b != CR && b != LF) {
+                            headStart = pos;
+                            methodStart = pos;
+                            state = State.METHOD;
+                            continue;
+                        }
+                        break;
+                    case METHOD:
+                        if (b == SP) {
+                            if (pos == methodStart) {
+                                throw new HttpParseException(400, "缺少请求方法");
+                            }
+                            methodEnd = pos;
+                            uriStart = pos + 1;
+                            state = State.URI;
+                        } else if (!isToken(b)) {
+                            throw new HttpParseException(400, "请求方法包含非法字符");
+                        }
+                        break;
+                    case URI:
+                        // 快速跳过URI中的普通字符
+                        while (b > SP && pos + 1 < limit) {
+                            b = data[++pos];
+                        }
+                        if (pos - headStart >= maxRequestLine) {
+                            throw new HttpParseException(414, "请求行超过 " + maxRequestLine + " 字节");
+                        }
+                        if (b == SP) {
+                            if (pos == uriStart) {
+                                throw new HttpParseException(400, "缺少请求URI");
+                            }
+                            uriEnd = pos;
+                            protocolStart = pos + 1;
+                            state = State.PROTOCOL;
+                        } else if (isControl(b)) {
+                            throw new HttpParseException(400, "无效的请求行格式");
+                        }
+                        break;
+                    case PROTOCOL:
+                        if (b == CR || b == LF) {
+                            protocolEnd = pos;
+                            checkProtocol(data);
+                            state = b == CR ? State.REQUEST_LINE_LF : State.HEADER_START;
+                        } else if (b == SP || isControl(b)) {
+                            throw new HttpParseException(400, "无效的请求行格式");
+                        } else if (pos - headStart >= maxRequestLine) {
+                            throw new HttpParseException(414, "请求行超过 " + maxRequestLine + " 字节");
+                        }
+                        break;
+                    case REQUEST_LINE_LF:
+                    case HEADER_LF:
+                        if (b != LF) {
+                            throw new HttpParseException(400, "行结束符必须是CRLF");
+                        }
+                        state = State.HEADER_START;
+                        break;
+                    case HEADER_START:
+                        if (b == CR) {
+                            state = State.HEAD_END_LF;
+                        } else if (b == LF) {
+                            return complete(buffer, data, offset, pos + 1);
+                        } else if (b == SP || b == HT) {
+                            throw new HttpParseException(400, "不支持折叠的请求头");
+                        } else {
+                            if (headerCount >= maxHeaderCount) {
+                                throw new HttpParseException(431, "请求头数量超过 " + maxHeaderCount);
+                            }
+                            ensureHeaderCapacity();
+                            headerOffsets[headerCount * 4] = pos;
+                            state = State.HEADER_NAME;
+                            continue;
+                        }
+                        break;
+                    case HEADER_NAME:
+                        while (b != ':' && isToken(b) && pos + 1 < limit) {
+                            b = data[++pos];
+                        }
+                        if (b == ':') {
+                            int nameIndex = headerCount * 4;
+                            if (pos == headerOffsets[nameIndex]) {
+                                throw new HttpParseException(400, "请求头名称为空");
+                            }
+                            headerOffsets[nameIndex + 1] = pos;
+                            state = State.HEADER_VALUE_START;
+                        } else if (!isToken(b)) {
+                            throw new HttpParseException(400, "请求头名称包含非法字符");
+                        }
+                        break;
+                    case HEADER_VALUE_START:
+                        if (b != SP && b != HT) {
+                            headerOffsets[headerCount * 4 + 2] = pos;
+                            valueEnd = pos;
+                            state = State.HEADER_VALUE;
+                            continue;
+                        }
+                        break;
+                    case HEADER_VALUE:
+                        // 快速扫描值中的可见字符，只记录最后一个非空白字符的位置
+                        while ((b > SP || b < 0) && b != 0x7f && pos + 1 < limit) {
+                            valueEnd = ++pos;
+                            b = data[pos];
+                        }
+                        if (b == CR || b == LF) {
+                            // 值的结尾去掉空白，只记录偏移
+                            headerOffsets[headerCount * 4 + 3] = valueEnd;
+                            headerCount++;
+                            state = b == CR ? State.HEADER_LF : State.HEADER_START;
+                        } else if (b != SP && b != HT) {
+                            if (isControl(b)) {
+                                throw new HttpParseException(400, "请求头的值包含非法字符");
+                            }
+                            valueEnd = pos + 1;
+                        }
+                        break;
+                    case HEAD_END_LF:
+                        if (b != LF) {
+                            throw new HttpParseException(400, "行结束符必须是CRLF");
+                        }
+                        return complete(buffer, data, offset, pos + 1);
+                    default:
+                        throw new IllegalStateException("未知的解析状态: " + state);
+                }
+                pos++;
+            }
+        } catch (HttpParseException e) {
+            reset();
+            throw e;
+        }
+
+        buffer.position(pos - offset);
+        return null;
+    }
+
+    /**
+     * 是否已经读到当前请求的第一个字节（用于区分连接正常关闭和请求被截断）
+     */
+    public boolean isStarted() {
+        return state != State.START;
+    }
+
+    /**
+     * 清除解析状态，准备解析下一个请求
+     */
+    public void reset() {
+        state = State.START;
+        headerCount = 0;
+    }
+
+    private HttpRequestHead complete(ByteBuffer buffer, byte[] data, int offset, int headEnd) {
+        HttpRequestHead head = new HttpRequestHead(data, methodStart, methodEnd, uriStart, uriEnd,
+                protocolStart, protocolEnd, headerOffsets, headerCount, headEnd);
+        buffer.position(headEnd - offset);
+        // 偏移数组交给请求头对象，下一个请求重新分配
+        headerOffsets = null;
+        reset();
+        return head;
+    }
+
+    private void checkProtocol(byte[] data) throws HttpParseException {
+        int length = protocolEnd - protocolStart;
+        if (length < 8 || data[protocolStart] != 'H' || data[protocolStart + 1] != 'T'
+                || data[protocolStart + 2] != 'T' || data[protocolStart + 3] != 'P'
+                || data[protocolStart + 4] != '/') {
+            throw new HttpParseException(400, "不支持的协议版本");
+        }
+    }
+
+    private void ensureHeaderCapacity() {
+        if (headerOffsets == null) {
+            headerOffsets = new int[INITIAL_HEADER_CAPACITY * 4];
+        } else if (headerOffsets.length < (headerCount + 1) * 4) {
+            int[] larger = new int[headerOffsets.length * 2];
+            System.arraycopy(headerOffsets, 0, larger, 0, headerCount * 4);
+            headerOffsets = larger;
+        }
+    }
+
+    private static boolean isToken(byte b) {
+        return b > 0 && TOKEN_CHARS[b];
+    }
+
+    private static boolean isControl(byte b) {
+        return (b >= 0 && b < 0x20) || b == 0x7f;
+    }
+}
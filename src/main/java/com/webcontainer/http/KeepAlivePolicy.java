@@ -0,0 +1,133 @@
+package com.webcontainer.http;
+
+/**
+ * HTTP/1.1 持久连接（keep-alive）策略
+ * 决定一个连接在响应后是否继续保持，以及单连接最大请求数和空闲超时。
+ * 阻塞（BIO）连接在空闲期间一直占用一个线程，使用单独的、短得多的空闲超时；NIO的空闲连接只占用选择器上的一个键
+ */
+public class KeepAlivePolicy {
+    public static final String MAX_REQUESTS_PROPERTY = "webcontainer.keepAlive.maxRequests";
+    public static final String IDLE_TIMEOUT_PROPERTY = "webcontainer.keepAlive.timeoutMillis";
+    public static final String BLOCKING_IDLE_TIMEOUT_PROPERTY = "webcontainer.keepAlive.blockingTimeoutMillis";
+
+    private static final int DEFAULT_MAX_REQUESTS = 100;
+    private static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 15000;
+    private static final int DEFAULT_BLOCKING_IDLE_TIMEOUT_MILLIS = 5000;
+
+    private final int maxRequests;
+    private final int idleTimeoutMillis;
+    private final int blockingIdleTimeoutMillis;
+
+    public KeepAlivePolicy(int maxRequests, int idleTimeoutMillis) {
+        this(maxRequests, idleTimeoutMillis, idleTimeoutMillis);
+    }
+
+    public KeepAlivePolicy(int maxRequests, int idleTimeoutMillis, int blockingIdleTimeoutMillis) {
+        this.maxRequests = maxRequests;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.blockingIdleTimeoutMillis = blockingIdleTimeoutMillis;
+    }
+
+    /**
+     * 从系统属性读取配置（maxRequests <= 1 相当于关闭keep-alive）
+     * 阻塞连接的空闲超时默认取5秒和空闲超时中较小的一个
+     */
+    public static KeepAlivePolicy fromSystemProperties() {
+        int idleTimeoutMillis = Integer.getInteger(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS);
+        return new KeepAlivePolicy(
+                Integer.getInteger(MAX_REQUESTS_PROPERTY, DEFAULT_MAX_REQUESTS),
+                idleTimeoutMillis,
+                Integer.getInteger(BLOCKING_IDLE_TIMEOUT_PROPERTY,
+                        Math.min(idleTimeoutMillis, DEFAULT_BLOCKING_IDLE_TIMEOUT_MILLIS)));
+    }
+
+    /**
+     * 判断第requestCount个请求处理完后是否保持连接
+     */
+    public boolean shouldKeepAlive(String protocol, String connectionHeader, int requestCount) {
+        return allowsMoreRequests(requestCount) && isKeepAliveRequested(protocol, connectionHeader);
+    }
+
+    /**
+     * 已处理requestCount个请求后，是否还允许在该连接上继续处理请求
+     */
+    public boolean allowsMoreRequests(int requestCount) {
+        return requestCount < maxRequests;
+    }
+
+    /**
+     * 根据协议版本和Connection请求头判断客户端是否希望保持连接：
+     * HTTP/1.1 默认保持，除非带有 close；HTTP/1.0 只有显式带 keep-alive 才保持
+     */
+    public static boolean isKeepAliveRequested(String protocol, String connectionHeader) {
+        if (hasToken(connectionHeader, "close")) {
+            return false;
+        }
+        if ("HTTP/1.1".equals(protocol)) {
+            return true;
+        }
+        return hasToken(connectionHeader, "keep-alive");
+    }
+
+    /**
+     * 响应中Connection头的取值
+     */
+    public static String connectionHeaderValue(boolean keepAlive) {
+        return keepAlive ? "keep-alive" : "close";
+    }
+
+    /**
+     * 判断逗号分隔的头部值中是否包含指定token（忽略大小写）
+     */
+    private static boolean hasToken(String headerValue, String token) {
+        if (headerValue == null) {
+            return false;
+        }
+        int start = 0;
+        int length = headerValue.length();
+        while (start < length) {
+            int end = headerValue.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int tokenStart = start;
+            int tokenEnd = end;
+            while (tokenStart < tokenEnd && headerValue.charAt(tokenStart) == ' ') {
+                tokenStart++;
+            }
+            while (tokenEnd > tokenStart && headerValue.charAt(tokenEnd - 1) == ' ') {
+                tokenEnd--;
+            }
+            if (tokenEnd - tokenStart == token.length()
+                    && headerValue.regionMatches(true, tokenStart, token, 0, token.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * NIO连接的空闲超时
+     */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * 阻塞连接的空闲超时（等待下一个请求期间占用线程）
+     */
+    public int getBlockingIdleTimeoutMillis() {
+        return blockingIdleTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeepAlivePolicy{maxRequests=%d, idleTimeout=%dms, blockingIdleTimeout=%dms}",
+                maxRequests, idleTimeoutMillis, blockingIdleTimeoutMillis);
+    }
+}
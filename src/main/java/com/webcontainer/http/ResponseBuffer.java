@@ -0,0 +1,116 @@
+package com.webcontainer.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 响应体字节缓冲区
+ * 初始块取自全局池，写满后按两倍扩容；响应发送完毕调用release归还初始大小的块，
+ * 大多数响应因此不需要为缓冲区分配新数组。不是线程安全的，每个响应一个实例
+ */
+public class ResponseBuffer {
+    public static final String CHUNK_SIZE_PROPERTY = "webcontainer.responseBuffer.size";
+    public static final String POOL_SIZE_PROPERTY = "webcontainer.responseBuffer.poolSize";
+
+    private static final int CHUNK_SIZE = Math.max(256, Integer.getInteger(CHUNK_SIZE_PROPERTY, 8192));
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(
+            Math.max(1, Integer.getInteger(POOL_SIZE_PROPERTY, 256)));
+    private static final byte[] EMPTY = new byte[0];
+
+    // 首次写入时才从池中取块，没有缓冲内容的响应（静态文件等）不占用池
+    private byte[] buffer = EMPTY;
+    private int count;
+
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 丢弃已写入的内容，保留已取得的块
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * 把缓冲的字节原样写入输出流
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, count);
+    }
+
+    /**
+     * 只写出开头的length个字节
+     */
+    public void writeTo(OutputStream out, int length) throws IOException {
+        if (length > 0) {
+            out.write(buffer, 0, Math.min(length, count));
+        }
+    }
+
+    /**
+     * 缓冲内容的视图，不复制；在下一次写入或release之前有效
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buffer, 0, count);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * 归还缓冲块，之后缓冲区为空但仍可继续使用
+     */
+    public void release() {
+        recycle(buffer);
+        buffer = EMPTY;
+        count = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required < 0) {
+            throw new OutOfMemoryError("响应缓冲区超过最大长度");
+        }
+        if (required <= buffer.length) {
+            return;
+        }
+        if (buffer.length == 0 && required <= CHUNK_SIZE) {
+            byte[] pooled = POOL.poll();
+            buffer = pooled != null ? pooled : new byte[CHUNK_SIZE];
+            return;
+        }
+        int newLength = Math.max(required, Math.max(CHUNK_SIZE, buffer.length * 2));
+        if (newLength < 0) {
+            newLength = Integer.MAX_VALUE - 8;
+        }
+        byte[] grown = Arrays.copyOf(buffer, newLength);
+        // 扩容后初始块不再使用，立即归还
+        recycle(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * 只回收初始大小的块，扩容出的大数组交给GC，避免池中积累大块内存
+     */
+    private static void recycle(byte[] chunk) {
+        if (chunk.length == CHUNK_SIZE) {
+            POOL.offer(chunk);
+        }
+    }
+}
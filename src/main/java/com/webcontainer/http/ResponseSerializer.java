@@ -0,0 +1,288 @@
+package com.webcontainer.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP/1.1响应头序列化
+ * 常用状态行和响应头名称预先编码为字节数组，响应头组装在每个线程复用的缓冲区中，行尾统一为CRLF；
+ * 最后把响应头和响应体作为一组缓冲区一次交给输出（输出支持时为一次gathering write）
+ *
+ * <pre>
+ * ResponseSerializer.begin(200, "OK")
+ *         .date()
+ *         .header("Content-Type", "text/html")
+ *         .contentLength(body.length)
+ *         .connection(true)
+ *         .writeTo(out, ByteBuffer.wrap(body));
+ * </pre>
+ */
+public final class ResponseSerializer {
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] HEADER_SEPARATOR = { ':', ' ' };
+    private static final byte[] CHUNKED = bytes("Transfer-Encoding: chunked\r\n");
+    private static final byte[] CONNECTION_KEEP_ALIVE = bytes("Connection: keep-alive\r\n");
+    private static final byte[] CONNECTION_CLOSE = bytes("Connection: close\r\n");
+    private static final byte[] CONTENT_LENGTH = bytes("Content-Length: ");
+    private static final byte[] CONTINUE = bytes("HTTP/1.1 100 Continue\r\n\r\n");
+
+    private static final String[] REASON_PHRASES = new String[600];
+    // 默认原因短语的完整状态行，例如"HTTP/1.1 200 OK\r\n"
+    private static final byte[][] STATUS_LINES = new byte[600][];
+    // 响应头名称（含": "）
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    // 复用的缓冲区超过该大小时不再保留，避免个别超大响应头长期占用内存
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<ResponseSerializer> SERIALIZERS = ThreadLocal.withInitial(ResponseSerializer::new);
+
+    static {
+        reason(100, "Continue");
+        reason(101, "Switching Protocols");
+        reason(200, "OK");
+        reason(201, "Created");
+        reason(202, "Accepted");
+        reason(204, "No Content");
+        reason(206, "Partial Content");
+        reason(301, "Moved Permanently");
+        reason(302, "Found");
+        reason(303, "See Other");
+        reason(304, "Not Modified");
+        reason(307, "Temporary Redirect");
+        reason(308, "Permanent Redirect");
+        reason(400, "Bad Request");
+        reason(401, "Unauthorized");
+        reason(403, "Forbidden");
+        reason(404, "Not Found");
+        reason(405, "Method Not Allowed");
+        reason(408, "Request Timeout");
+        reason(411, "Length Required");
+        reason(413, "Payload Too Large");
+        reason(414, "URI Too Long");
+        reason(416, "Range Not Satisfiable");
+        reason(431, "Request Header Fields Too Large");
+        reason(500, "Internal Server Error");
+        reason(501, "Not Implemented");
+        reason(502, "Bad Gateway");
+        reason(503, "Service Unavailable");
+        reason(505, "HTTP Version Not Supported");
+
+        for (String name : new String[] { "Accept-Ranges", "Cache-Control", "Content-Encoding", "Content-Length",
+                "Content-Range", "Content-Type", "Date", "ETag", "Expires", "Last-Modified", "Location",
+                "Retry-After", "Server", "Set-Cookie", "Vary", "WWW-Authenticate" }) {
+            HEADER_NAMES.put(name, bytes(name + ": "));
+        }
+    }
+
+    private byte[] buffer = new byte[512];
+    private int count;
+
+    private ResponseSerializer() {
+    }
+
+    private static void reason(int statusCode, String reasonPhrase) {
+        REASON_PHRASES[statusCode] = reasonPhrase;
+        STATUS_LINES[statusCode] = bytes("HTTP/1.1 " + statusCode + " " + reasonPhrase + "\r\n");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return 状态码的标准原因短语，未知状态码返回null
+     */
+    public static String reasonPhrase(int statusCode) {
+        return statusCode >= 0 && statusCode < REASON_PHRASES.length ? REASON_PHRASES[statusCode] : null;
+    }
+
+    /**
+     * 完整的"100 Continue"临时响应，每次返回新的副本
+     */
+    public static byte[] continueResponse() {
+        return CONTINUE.clone();
+    }
+
+    /**
+     * 开始序列化一个响应：取当前线程的缓冲区并写入状态行
+     * 返回的对象在同一线程下一次调用begin之前有效
+     */
+    public static ResponseSerializer begin(int statusCode, String reasonPhrase) {
+        ResponseSerializer serializer = SERIALIZERS.get();
+        if (serializer.buffer.length > MAX_RETAINED_CAPACITY) {
+            serializer.buffer = new byte[512];
+        }
+        serializer.count = 0;
+
+        String standard = reasonPhrase(statusCode);
+        if (standard != null && (reasonPhrase == null || standard.equals(reasonPhrase))) {
+            serializer.append(STATUS_LINES[statusCode]);
+        } else {
+            serializer.appendAscii("HTTP/1.1 ");
+            serializer.appendDecimal(statusCode);
+            serializer.append((byte) ' ');
+            serializer.appendAscii(reasonPhrase != null ? reasonPhrase : "Unknown");
+            serializer.append(CRLF);
+        }
+        return serializer;
+    }
+
+    public ResponseSerializer header(String name, String value) {
+        byte[] encodedName = HEADER_NAMES.get(name);
+        if (encodedName != null) {
+            append(encodedName);
+        } else {
+            appendAscii(name);
+            append(HEADER_SEPARATOR);
+        }
+        appendAscii(value);
+        append(CRLF);
+        return this;
+    }
+
+    /**
+     * 已经拼好的"名称: 值"响应头
+     */
+    public ResponseSerializer headerLine(String line) {
+        appendAscii(line);
+        append(CRLF);
+        return this;
+    }
+
+    /**
+     * 当前时间的Date响应头（每秒更新一次的预编码字节）
+     */
+    public ResponseSerializer date() {
+        append(HttpDates.currentDateHeader());
+        return this;
+    }
+
+    public ResponseSerializer contentLength(long length) {
+        append(CONTENT_LENGTH);
+        appendDecimal(length);
+        append(CRLF);
+        return this;
+    }
+
+    public ResponseSerializer chunked() {
+        append(CHUNKED);
+        return this;
+    }
+
+    public ResponseSerializer connection(boolean keepAlive) {
+        append(keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE);
+        return this;
+    }
+
+    /**
+     * 结束响应头并只写出响应头
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        append(CRLF);
+        out.write(buffer, 0, count);
+    }
+
+    /**
+     * 结束响应头，和响应体一起写出
+     * 输出实现了GatheringSink时两者作为一组缓冲区一次交出；普通输出流依次写入（由外层缓冲输出流合并为一次发送）
+     */
+    public void writeTo(OutputStream out, ByteBuffer body) throws IOException {
+        append(CRLF);
+        if (out instanceof GatheringSink) {
+            ((GatheringSink) out).write(new ByteBuffer[] { ByteBuffer.wrap(buffer, 0, count), body });
+            return;
+        }
+        out.write(buffer, 0, count);
+        if (body.hasArray()) {
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        } else {
+            byte[] copy = new byte[body.remaining()];
+            body.duplicate().get(copy);
+            out.write(copy);
+        }
+    }
+
+    /**
+     * 结束响应头，和响应体一起写出，响应体缓冲区的所有权同时交出
+     * 输出是GatheringSink时响应体只保留引用，真正写出后才调用releaseBody；
+     * 其他输出写完即调用。无论哪种情况releaseBody都恰好调用一次，调用方之后不能再修改或归还响应体
+     */
+    public void writeTo(OutputStream out, ByteBuffer body, Runnable releaseBody) throws IOException {
+        if (!(out instanceof GatheringSink)) {
+            try {
+                writeTo(out, body);
+            } finally {
+                releaseBody.run();
+            }
+            return;
+        }
+        append(CRLF);
+        GatheringSink sink = (GatheringSink) out;
+        sink.write(new ByteBuffer[] { ByteBuffer.wrap(buffer, 0, count) });
+        sink.writeRetained(body, releaseBody);
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void append(byte b) {
+        ensureCapacity(1);
+        buffer[count++] = b;
+    }
+
+    /**
+     * 按ISO-8859-1逐字符写入，超出范围的字符替换为'?'，控制字符CR/LF替换为空格以防响应头注入
+     */
+    private void appendAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n') {
+                c = ' ';
+            } else if (c > 0xFF) {
+                c = '?';
+            }
+            buffer[count++] = (byte) c;
+        }
+    }
+
+    private void appendDecimal(long value) {
+        if (value >= 0 && value < 10) {
+            append((byte) ('0' + value));
+            return;
+        }
+        appendAscii(Long.toString(value));
+    }
+
+    private void ensureCapacity(int additional) {
+        if (count + additional > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, count + additional)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * 能够一次接收多个缓冲区的输出（例如NIO连接的响应缓冲区，最终以gathering write发送）
+     */
+    public interface GatheringSink {
+
+        /**
+         * 按顺序追加缓冲区中的剩余字节；调用返回后缓冲区可能被复用，实现方必须在返回前复制或发送
+         */
+        void write(ByteBuffer[] buffers) throws IOException;
+
+        /**
+         * 追加一个所有权已交给输出的缓冲区：实现方可以只保留引用，缓冲区写出（或连接关闭）后调用release
+         */
+        void writeRetained(ByteBuffer buffer, Runnable release) throws IOException;
+    }
+}
@@ -1,17 +1,23 @@
 package com.webcontainer.stage2;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.webcontainer.HttpRequest;
 import com.webcontainer.HttpResponse;
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
+import com.webcontainer.http.ResponseSerializer;
 
 /**
  * 第二阶段：增强Web服务器
@@ -20,12 +26,14 @@ import com.webcontainer.HttpResponse;
 public class EnhancedWebServer {
     private static final int PORT = 8080;
     private static final String WEB_ROOT = "webapps/ROOT";
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
 
     private ServerSocket serverSocket;
     private boolean running = false;
     private StaticResourceHandler staticHandler;
     private Map<String, String> servletMappings;
     private Map<String, MyServlet> servletInstances;
+    private final KeepAlivePolicy keepAlivePolicy = KeepAlivePolicy.fromSystemProperties();
 
     public EnhancedWebServer() {
         this.staticHandler = new StaticResourceHandler(WEB_ROOT);
@@ -85,6 +93,7 @@ public class EnhancedWebServer {
         if (serverSocket != null) {
             serverSocket.close();
         }
+        System.out.println("静态资源缓存: " + staticHandler.getCacheStats());
         System.out.println("增强Web服务器已停止");
     }
 
@@ -100,23 +109,48 @@ public class EnhancedWebServer {
 
         @Override
         public void run() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    OutputStream outputStream = clientSocket.getOutputStream()) {
-
-                // 解析HTTP请求
-                HttpRequest request = parseRequest(reader);
-                HttpResponse response = new HttpResponse();
-
-                // 根据URI决定处理方式
-                if (isServletRequest(request.getUri())) {
-                    handleServletRequest(request, response);
-                } else {
-                    handleStaticRequest(request, response);
+            try (OutputStream outputStream = new BufferedOutputStream(
+                    clientSocket.getOutputStream(), OUTPUT_BUFFER_SIZE)) {
+
+                // 空闲超时：持久连接上超过该时间没有新请求则关闭
+                clientSocket.setSoTimeout(keepAlivePolicy.getBlockingIdleTimeoutMillis());
+
+                HttpInputBuffer input = new HttpInputBuffer(clientSocket.getInputStream());
+                int requestCount = 0;
+                while (true) {
+                    // 解析HTTP请求（客户端关闭连接时返回null）
+                    HttpRequest request = parseRequest(input);
+                    if (request == null) {
+                        break;
+                    }
+                    requestCount++;
+
+                    HttpResponse response = new HttpResponse();
+
+                    // 根据URI决定处理方式
+                    if (isServletRequest(request.getUri())) {
+                        handleServletRequest(request, response);
+                    } else {
+                        handleStaticRequest(request, response);
+                    }
+
+                    // 发送响应
+                    boolean keepAlive = keepAlivePolicy.shouldKeepAlive(request.getProtocol(),
+                            request.getHeader("Connection"), requestCount);
+                    sendResponse(outputStream, request, response, keepAlive);
+
+                    // 流水线请求：客户端已发来后续请求时暂不刷新，相邻响应合并为一次写出
+                    if (!input.hasBufferedInput()) {
+                        outputStream.flush();
+                    }
+
+                    if (!keepAlive) {
+                        break;
+                    }
                 }
 
-                // 发送响应
-                sendResponse(outputStream, response);
-
+            } catch (SocketTimeoutException e) {
+                // 持久连接空闲超时，正常关闭
             } catch (Exception e) {
                 System.err.println("处理请求时发生错误: " + e.getMessage());
                 e.printStackTrace();
@@ -184,18 +218,46 @@ public class EnhancedWebServer {
          * 处理静态资源请求
          */
         private void handleStaticRequest(HttpRequest request, HttpResponse response) {
-            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getUri());
+            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getUri(),
+                    request.getHeader("Accept-Encoding"));
+
+            // 同一URI有压缩和未压缩两种表示，共享缓存必须按Accept-Encoding区分（304响应也要带上）
+            if (resource.isVaryAcceptEncoding()) {
+                response.addHeader("Vary", "Accept-Encoding");
+            }
+
+            // 校验信息随资源一起缓存；客户端缓存仍然有效时返回304，不发送响应体
+            if (resource.getEtag() != null) {
+                response.addHeader("ETag", resource.getEtag());
+                response.addHeader("Last-Modified", resource.getLastModifiedHeader());
+                response.addHeader("Accept-Ranges", "bytes");
+                if (isConditionalMethod(request.getMethod()) && resource.isNotModified(
+                        request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+                    response.setStatus(304, "Not Modified");
+                    System.out.println("静态资源处理: " + request.getUri() + " -> 304 Not Modified");
+                    return;
+                }
+            }
+
+            // 断点续传：Range请求只发送请求的字节区间（206），区间无法满足时返回416
+            if ("GET".equals(request.getMethod())) {
+                resource = resource.selectRange(request.getHeader("Range"), request.getHeader("If-Range"));
+            }
 
             response.setStatus(resource.getStatusCode(), resource.getReasonPhrase());
             response.addHeader("Content-Type", resource.getMimeType());
+            if (resource.getContentEncoding() != null) {
+                response.addHeader("Content-Encoding", resource.getContentEncoding());
+            }
+            if (resource.getContentRange() != null) {
+                response.addHeader("Content-Range", resource.getContentRange());
+            }
             response.addHeader("Content-Length", String.valueOf(resource.getContentLength()));
 
-            // 对于二进制内容，我们需要特殊处理
-            if (resource.getMimeType().startsWith("text/") || resource.getMimeType().contains("json")
-                    || resource.getMimeType().contains("xml")) {
-                response.setBody(new String(resource.getContent()));
+            // 文件字节原样发送，文本文件也不再经过字符串解码
+            if (resource.isFileBacked()) {
+                response.setFileBody(resource.openRegion());
             } else {
-                // 对于二进制文件，直接设置字节数组
                 response.setBinaryBody(resource.getContent());
             }
 
@@ -204,60 +266,74 @@ public class EnhancedWebServer {
         }
 
         /**
-         * 解析HTTP请求（复用第一阶段的代码）
+         * 解析HTTP请求（使用共享的字节级解析器）
          */
-        private HttpRequest parseRequest(BufferedReader reader) throws IOException {
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.trim().isEmpty()) {
-                throw new IOException("无效的HTTP请求");
-            }
-
-            String[] requestParts = requestLine.split(" ");
-            if (requestParts.length != 3) {
-                throw new IOException("无效的请求行格式: " + requestLine);
-            }
-
-            HttpRequest request = new HttpRequest(requestParts[0], requestParts[1], requestParts[2]);
-
-            String headerLine;
-            while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
-                int colonIndex = headerLine.indexOf(':');
-                if (colonIndex > 0) {
-                    String headerName = headerLine.substring(0, colonIndex).trim();
-                    String headerValue = headerLine.substring(colonIndex + 1).trim();
-                    request.addHeader(headerName, headerValue);
-                }
+        private HttpRequest parseRequest(HttpInputBuffer input) throws IOException {
+            HttpRequestHead head = input.readRequestHead();
+            if (head == null) {
+                return null; // 客户端已关闭连接
             }
+            return new HttpRequest(head);
+        }
 
-            return request;
+        /**
+         * 只有GET和HEAD请求按If-None-Match/If-Modified-Since返回304
+         */
+        private boolean isConditionalMethod(String method) {
+            return "GET".equals(method) || "HEAD".equals(method);
         }
 
         /**
          * 发送HTTP响应
+         * 持久连接要求每个响应都带有准确的Content-Length，因此按实际发送的字节数重新计算；
+         * 响应只写入缓冲输出流，由连接循环决定何时刷新
          */
-        private void sendResponse(OutputStream outputStream, HttpResponse response) throws IOException {
-            PrintWriter writer = new PrintWriter(outputStream);
+        private void sendResponse(OutputStream outputStream, HttpRequest request, HttpResponse response,
+                boolean keepAlive) throws IOException {
+            FileRegion fileBody = response.getFileBody();
+            byte[] body;
+            if (fileBody != null) {
+                body = null;
+            } else if (response.getBinaryBody() != null) {
+                body = response.getBinaryBody();
+            } else if (response.getBody() != null) {
+                body = response.getBody().getBytes(StandardCharsets.UTF_8);
+            } else {
+                body = new byte[0];
+            }
 
-            // 发送状态行
-            writer.println(response.getStatusLine());
+            ResponseSerializer head = ResponseSerializer.begin(response.getStatusCode(), response.getReasonPhrase());
 
-            // 发送响应头
+            // 响应头（Content-Length和Connection由连接层统一生成）
+            boolean hasDate = false;
             for (String header : response.getHeaders()) {
-                writer.println(header);
+                if (!header.regionMatches(true, 0, "Content-Length:", 0, 15)
+                        && !header.regionMatches(true, 0, "Connection:", 0, 11)) {
+                    head.headerLine(header);
+                }
+                hasDate |= header.regionMatches(true, 0, "Date:", 0, 5);
             }
+            if (!hasDate) {
+                head.date();
+            }
+            // 304响应没有响应体，也不能发送与完整响应不一致的Content-Length
+            boolean notModified = response.getStatusCode() == 304;
+            if (!notModified) {
+                head.contentLength(fileBody != null ? fileBody.getCount() : body.length);
+            }
+            head.connection(keepAlive);
 
-            // 发送空行
-            writer.println();
-            writer.flush();
-
-            // 发送响应体
-            if (response.getBinaryBody() != null) {
-                // 二进制内容
-                outputStream.write(response.getBinaryBody());
-            } else if (response.getBody() != null) {
-                // 文本内容
-                writer.print(response.getBody());
-                writer.flush();
+            // 发送响应体（HEAD请求和304响应不发送）
+            if ("HEAD".equals(request.getMethod()) || notModified) {
+                head.writeTo(outputStream);
+                if (fileBody != null) {
+                    fileBody.close();
+                }
+            } else if (fileBody != null) {
+                head.writeTo(outputStream);
+                fileBody.writeTo(outputStream);
+            } else {
+                head.writeTo(outputStream, ByteBuffer.wrap(body));
             }
         }
     }
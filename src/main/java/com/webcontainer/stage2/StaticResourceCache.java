@@ -0,0 +1,429 @@
+package com.webcontainer.stage2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 静态资源内存缓存
+ * 缓存文件内容和元数据，总字节数受预算限制，超出时按CLOCK（近似最近最少使用）淘汰，命中只设置访问标记；
+ * 直接从文件发送的大文件只缓存元数据（路径、长度和校验信息），不计入预算；
+ * 命中的条目每隔一段时间按修改时间和文件大小重新校验，文件变化后重新读取；
+ * 由文件变化监听推送失效通知时（setWatched），命中不再访问文件系统；
+ * 每次失效都推进失效代数，读取文件期间发生过失效的结果不再放入缓存，避免旧内容在失效之后重新进入缓存。
+ * 另外记录最近确认不存在的路径（有数量上限和过期时间），重复的404探测不再访问文件系统
+ */
+public class StaticResourceCache {
+    public static final String MAX_BYTES_PROPERTY = "webcontainer.staticCache.maxBytes";
+    public static final String MAX_FILE_SIZE_PROPERTY = "webcontainer.staticCache.maxFileSize";
+    public static final String REVALIDATE_MILLIS_PROPERTY = "webcontainer.staticCache.revalidateMillis";
+    public static final String MAX_NEGATIVE_ENTRIES_PROPERTY = "webcontainer.staticCache.maxNegativeEntries";
+    public static final String NEGATIVE_TTL_MILLIS_PROPERTY = "webcontainer.staticCache.negativeTtlMillis";
+
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    private static final long DEFAULT_MAX_FILE_SIZE = 1024L * 1024;
+    private static final long DEFAULT_REVALIDATE_MILLIS = 2000;
+    private static final int DEFAULT_MAX_NEGATIVE_ENTRIES = 10000;
+    private static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5000;
+
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final long revalidateMillis;
+    private final int maxNegativeEntries;
+    private final long negativeTtlMillis;
+    private volatile boolean watched = false;
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong currentBytes = new AtomicLong();
+    // CLOCK指针：上次淘汰停下的位置，遍历到末尾后从头开始；只在持有clockLock时使用
+    private final Object clockLock = new Object();
+    private Iterator<Map.Entry<Path, Entry>> clockHand;
+    // 失效代数，每次invalidate/invalidateTree/clear时先加一再移除条目
+    private final AtomicLong generation = new AtomicLong();
+    // 不存在的路径 -> 过期时间
+    private final Map<Path, Long> missingPaths = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    /**
+     * @param maxBytes         缓存内容的总字节预算，<= 0 表示不缓存
+     * @param maxFileSize      超过该大小的文件不进入缓存
+     * @param revalidateMillis 重新校验文件修改时间和大小的间隔，0表示每次命中都校验
+     */
+    public StaticResourceCache(long maxBytes, long maxFileSize, long revalidateMillis) {
+        this(maxBytes, maxFileSize, revalidateMillis, DEFAULT_MAX_NEGATIVE_ENTRIES, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    /**
+     * @param maxNegativeEntries 记录的不存在路径数量上限，<= 0 表示不记录
+     * @param negativeTtlMillis  不存在路径的记录有效期，之后重新检查文件系统
+     */
+    public StaticResourceCache(long maxBytes, long maxFileSize, long revalidateMillis, int maxNegativeEntries,
+            long negativeTtlMillis) {
+        this.maxBytes = maxBytes;
+        this.maxFileSize = Math.min(maxFileSize, maxBytes);
+        this.revalidateMillis = revalidateMillis;
+        this.maxNegativeEntries = maxNegativeEntries;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    public static StaticResourceCache fromSystemProperties() {
+        return new StaticResourceCache(
+                Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES),
+                Long.getLong(MAX_FILE_SIZE_PROPERTY, DEFAULT_MAX_FILE_SIZE),
+                Long.getLong(REVALIDATE_MILLIS_PROPERTY, DEFAULT_REVALIDATE_MILLIS),
+                Integer.getInteger(MAX_NEGATIVE_ENTRIES_PROPERTY, DEFAULT_MAX_NEGATIVE_ENTRIES),
+                Long.getLong(NEGATIVE_TTL_MILLIS_PROPERTY, DEFAULT_NEGATIVE_TTL_MILLIS));
+    }
+
+    /**
+     * 查找缓存的资源，必要时先按修改时间和大小校验
+     *
+     * @return 仍然有效的缓存资源；未缓存或文件已变化时返回null
+     */
+    public StaticResourceHandler.StaticResource get(Path path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!watched && now - entry.lastValidated >= revalidateMillis && !revalidate(path, entry, now)) {
+            misses.increment();
+            return null;
+        }
+
+        // 已经标记过时不再写入，热点条目的命中只有读操作
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.resource;
+    }
+
+    /**
+     * 当前的失效代数，在查询文件属性之前获取，放入缓存时传回
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * 缓存新读取的资源
+     * 读取期间有失效通知到达时不缓存：失效先推进代数再移除条目，放入后检查代数，
+     * 两者无论以什么顺序交错，过期的条目都会被其中一方移除
+     *
+     * @param lastModified 读取前获取的文件修改时间
+     * @param size         读取前获取的文件大小
+     * @param generation   读取前通过getGeneration获取的失效代数
+     */
+    public void put(Path path, StaticResourceHandler.StaticResource resource, long lastModified, long size,
+            long generation) {
+        put(path, resource, lastModified, size, null, generation);
+    }
+
+    /**
+     * 缓存新读取的资源，同时记录.gz预压缩文件的版本，校验时预压缩文件的变化（包括新增和删除）同样使条目失效
+     *
+     * @param gzipAttributes 读取前获取的预压缩文件属性，没有预压缩文件时为null
+     */
+    public void put(Path path, StaticResourceHandler.StaticResource resource, long lastModified, long size,
+            BasicFileAttributes gzipAttributes, long generation) {
+        // 文件形式的资源只缓存元数据，内存占用不计入预算，也不受单文件大小限制
+        long length = resource.isFileBacked() ? 0 : resource.getContentLength();
+        if (maxBytes <= 0 || length > maxFileSize || this.generation.get() != generation) {
+            return;
+        }
+
+        Entry entry = new Entry(resource, lastModified, size, System.currentTimeMillis());
+        if (gzipAttributes != null) {
+            entry.gzipLastModified = gzipAttributes.lastModifiedTime().toMillis();
+            entry.gzipSize = gzipAttributes.size();
+        }
+        Entry previous = entries.put(path, entry);
+        if (previous != null) {
+            currentBytes.addAndGet(-previous.resource.getMemorySize());
+        }
+        // 预算按实际占用计算，包括随资源缓存的压缩表示
+        currentBytes.addAndGet(resource.getMemorySize());
+        if (this.generation.get() != generation) {
+            remove(path, entry);
+            return;
+        }
+        if (currentBytes.get() > maxBytes) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * 该路径最近是否已确认不存在
+     */
+    public boolean isKnownMissing(Path path) {
+        Long expiresAt = missingPaths.get(path);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= expiresAt) {
+            missingPaths.remove(path, expiresAt);
+            return false;
+        }
+        negativeHits.increment();
+        return true;
+    }
+
+    /**
+     * 记录不存在的路径，查询期间有失效通知（例如文件刚被创建）时不记录
+     *
+     * @param generation 查询前通过getGeneration获取的失效代数
+     */
+    public void putMissing(Path path, long generation) {
+        if (maxNegativeEntries <= 0 || this.generation.get() != generation) {
+            return;
+        }
+        if (missingPaths.size() >= maxNegativeEntries) {
+            pruneMissing();
+        }
+        Long expiresAt = System.currentTimeMillis() + negativeTtlMillis;
+        missingPaths.put(path, expiresAt);
+        if (this.generation.get() != generation) {
+            missingPaths.remove(path, expiresAt);
+        }
+    }
+
+    /**
+     * 先清除过期的记录；仍然超出上限说明正在被大量不同的路径探测，整体清空即可
+     */
+    private synchronized void pruneMissing() {
+        long now = System.currentTimeMillis();
+        missingPaths.values().removeIf(expiresAt -> expiresAt <= now);
+        if (missingPaths.size() >= maxNegativeEntries) {
+            missingPaths.clear();
+        }
+    }
+
+    /**
+     * 使某个文件的缓存失效
+     */
+    public void invalidate(Path path) {
+        generation.incrementAndGet();
+        remove(path, entries.get(path));
+        missingPaths.remove(path);
+    }
+
+    /**
+     * 使某个路径及其下所有文件的缓存失效（路径可能是已删除的目录）
+     */
+    public void invalidateTree(Path path) {
+        generation.incrementAndGet();
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            if (e.getKey().startsWith(path)) {
+                remove(e.getKey(), e.getValue());
+            }
+        }
+        missingPaths.keySet().removeIf(missing -> missing.startsWith(path));
+    }
+
+    /**
+     * 文件变化由外部监听并通过invalidate推送时设为true，命中时跳过定期校验
+     */
+    public void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            remove(e.getKey(), e.getValue());
+        }
+        missingPaths.clear();
+    }
+
+    private boolean revalidate(Path path, Entry entry, long now) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() == entry.lastModified
+                    && attributes.size() == entry.size && isGzipSidecarUnchanged(path, entry)) {
+                entry.lastValidated = now;
+                return true;
+            }
+        } catch (NoSuchFileException e) {
+            // 文件已删除
+        } catch (IOException e) {
+            System.err.println("校验静态资源缓存时发生错误: " + e.getMessage());
+        }
+        remove(path, entry);
+        return false;
+    }
+
+    private static boolean isGzipSidecarUnchanged(Path path, Entry entry) throws IOException {
+        BasicFileAttributes gzip;
+        try {
+            gzip = Files.readAttributes(StaticResourceHandler.gzipSidecar(path), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return entry.gzipSize < 0;
+        }
+        if (!gzip.isRegularFile()) {
+            return entry.gzipSize < 0;
+        }
+        return gzip.size() == entry.gzipSize && gzip.lastModifiedTime().toMillis() == entry.gzipLastModified;
+    }
+
+    /**
+     * CLOCK淘汰：转动指针，清除经过条目的访问标记，移除标记已经清除的条目，直到总字节数回到预算以内。
+     * 只在放入新条目后超出预算时执行，命中路径不加锁；不占用预算的元数据条目不淘汰
+     *
+     * @param inserted 刚放入的条目，本次不淘汰
+     */
+    private void evict(Entry inserted) {
+        synchronized (clockLock) {
+            // 每个条目最多经过两次（第一次清除标记，第二次移除），防止并发插入时无限循环
+            int steps = 2 * (entries.size() + 1);
+            while (currentBytes.get() > maxBytes && steps-- > 0) {
+                if (clockHand == null || !clockHand.hasNext()) {
+                    clockHand = entries.entrySet().iterator();
+                    if (!clockHand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<Path, Entry> e = clockHand.next();
+                Entry entry = e.getValue();
+                if (entry == inserted || entry.resource.getMemorySize() == 0) {
+                    continue;
+                }
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else if (remove(e.getKey(), entry)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private boolean remove(Path path, Entry entry) {
+        if (entry != null && entries.remove(path, entry)) {
+            currentBytes.addAndGet(-entry.resource.getMemorySize());
+            return true;
+        }
+        return false;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+                currentBytes.get(), maxBytes, negativeHits.sum(), missingPaths.size());
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+        private final StaticResourceHandler.StaticResource resource;
+        private final long lastModified;
+        private final long size;
+        // 预压缩文件的版本，没有预压缩文件时为-1
+        private long gzipLastModified = -1;
+        private long gzipSize = -1;
+        private volatile long lastValidated;
+        // 最近被访问过，淘汰时得到第二次机会
+        private volatile boolean referenced;
+
+        Entry(StaticResourceHandler.StaticResource resource, long lastModified, long size, long lastValidated) {
+            this.resource = resource;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.lastValidated = lastValidated;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public static class CacheStats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int entryCount;
+        private final long sizeBytes;
+        private final long maxBytes;
+        private final long negativeHitCount;
+        private final int negativeEntryCount;
+
+        public CacheStats(long hitCount, long missCount, long evictionCount, int entryCount,
+                long sizeBytes, long maxBytes, long negativeHitCount, int negativeEntryCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.entryCount = entryCount;
+            this.sizeBytes = sizeBytes;
+            this.maxBytes = maxBytes;
+            this.negativeHitCount = negativeHitCount;
+            this.negativeEntryCount = negativeEntryCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public long getNegativeHitCount() {
+            return negativeHitCount;
+        }
+
+        public int getNegativeEntryCount() {
+            return negativeEntryCount;
+        }
+
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StaticCache{hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, entries=%d, "
+                    + "size=%d/%d bytes, notFoundHits=%d, notFoundEntries=%d}", hitCount, missCount,
+                    getHitRate() * 100, evictionCount, entryCount, sizeBytes, maxBytes, negativeHitCount,
+                    negativeEntryCount);
+        }
+    }
+}
@@ -1,18 +1,58 @@
 package com.webcontainer.stage2;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import com.webcontainer.http.ByteRange;
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.HttpDates;
 
 /**
  * 第二阶段：静态资源处理器
  * 负责处理静态文件请求（HTML, CSS, JS, 图片等）
  */
 public class StaticResourceHandler {
+    public static final String TRANSFER_THRESHOLD_PROPERTY = "webcontainer.static.transferThreshold";
+
+    // 超过该大小的文件不读入内存，发送时由FileChannel.transferTo直接写到套接字
+    private static final long DEFAULT_TRANSFER_THRESHOLD = 256L * 1024;
+
+    public static final String GZIP_MIN_SIZE_PROPERTY = "webcontainer.static.gzipMinSize";
+
+    // 小于该大小的文本资源压缩收益不明显；负数表示不做动态压缩（预压缩的.gz文件仍然使用）
+    private static final long DEFAULT_GZIP_MIN_SIZE = 1024;
+    private static final String GZIP = "gzip";
+    // multipart/byteranges响应在内存中组装的大小上限
+    private static final long MAX_MULTIPART_BYTES = 1024L * 1024;
+
+    // 错误页面只渲染一次，编码后的字节由所有请求共享
+    private static final StaticResource FORBIDDEN = createErrorResource(403, "Forbidden");
+    private static final StaticResource NOT_FOUND = createErrorResource(404, "Not Found");
+    private static final StaticResource INTERNAL_ERROR = createErrorResource(500, "Internal Server Error");
+
     private final String webRoot;
+    private final Path webRootPath;
+    private final StaticResourceCache cache;
+    private final long transferThreshold = Long.getLong(TRANSFER_THRESHOLD_PROPERTY, DEFAULT_TRANSFER_THRESHOLD);
+    private final long gzipMinSize = Long.getLong(GZIP_MIN_SIZE_PROPERTY, DEFAULT_GZIP_MIN_SIZE);
     private static final Map<String, String> MIME_TYPES = new HashMap<>();
 
     static {
@@ -33,7 +73,13 @@ public class StaticResourceHandler {
     }
 
     public StaticResourceHandler(String webRoot) {
+        this(webRoot, StaticResourceCache.fromSystemProperties());
+    }
+
+    public StaticResourceHandler(String webRoot, StaticResourceCache cache) {
         this.webRoot = webRoot;
+        this.webRootPath = Paths.get(webRoot).normalize();
+        this.cache = cache;
         // 确保webRoot目录存在
         File webRootDir = new File(webRoot);
         if (!webRootDir.exists()) {
@@ -48,6 +94,19 @@ public class StaticResourceHandler {
      * @return StaticResource对象，包含文件内容和MIME类型
      */
     public StaticResource handleRequest(String uri) {
+        return handleRequest(uri, null);
+    }
+
+    /**
+     * 处理静态资源请求，客户端接受gzip且资源有压缩表示时返回压缩后的表示
+     *
+     * @param acceptEncoding Accept-Encoding请求头，可以为null
+     */
+    public StaticResource handleRequest(String uri, String acceptEncoding) {
+        return loadResource(uri).selectEncoding(acceptEncoding);
+    }
+
+    private StaticResource loadResource(String uri) {
         try {
             // 处理根路径，默认返回index.html
             if ("/".equals(uri)) {
@@ -58,32 +117,211 @@ public class StaticResourceHandler {
             Path filePath = Paths.get(webRoot, uri).normalize();
 
             // 安全检查：防止路径遍历攻击
-            if (!filePath.startsWith(Paths.get(webRoot).normalize())) {
-                return createErrorResource(403, "Forbidden");
+            if (!filePath.startsWith(webRootPath)) {
+                return FORBIDDEN;
             }
 
-            File file = filePath.toFile();
+            // Web应用目录下的WEB-INF和META-INF（类文件、配置）不能作为静态资源访问
+            if (isProtectedPath(filePath)) {
+                return NOT_FOUND;
+            }
 
-            // 检查文件是否存在
-            if (!file.exists() || !file.isFile()) {
-                return createErrorResource(404, "Not Found");
+            // 先查缓存
+            StaticResource cached = cache.get(filePath);
+            if (cached != null) {
+                return cached;
+            }
+            // 最近确认过不存在的路径（例如扫描器反复探测的地址）直接返回404
+            if (cache.isKnownMissing(filePath)) {
+                return NOT_FOUND;
+            }
+            long generation = cache.getGeneration();
+
+            // 检查文件是否存在（一次系统调用同时取得类型、大小和修改时间）
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                cache.putMissing(filePath, generation);
+                return NOT_FOUND;
+            }
+            if (!attributes.isRegularFile()) {
+                cache.putMissing(filePath, generation);
+                return NOT_FOUND;
             }
 
             // 检查文件是否可读
-            if (!file.canRead()) {
-                return createErrorResource(403, "Forbidden");
+            if (!Files.isReadable(filePath)) {
+                return FORBIDDEN;
+            }
+
+            String fileName = filePath.getFileName().toString();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            BasicFileAttributes gzipAttributes = readGzipSidecar(filePath);
+            if (attributes.size() > transferThreshold) {
+                // 大文件只记录路径和长度，内容发送时直接从文件传输；元数据照常缓存，不占用字节预算
+                StaticResource resource = attachGzipVariant(filePath, gzipAttributes, new StaticResource(200, "OK",
+                        filePath, attributes.size(), getMimeType(fileName), fileName, lastModified));
+                cache.put(filePath, resource, lastModified, attributes.size(), gzipAttributes, generation);
+                return resource;
             }
 
             // 读取文件内容
             byte[] content = Files.readAllBytes(filePath);
-            String mimeType = getMimeType(file.getName());
+            StaticResource resource = attachGzipVariant(filePath, gzipAttributes,
+                    new StaticResource(200, "OK", content, getMimeType(fileName), fileName, lastModified));
 
-            return new StaticResource(200, "OK", content, mimeType, file.getName());
+            cache.put(filePath, resource, lastModified, attributes.size(), gzipAttributes, generation);
+            return resource;
 
         } catch (IOException e) {
             System.err.println("读取静态资源时发生错误: " + e.getMessage());
-            return createErrorResource(500, "Internal Server Error");
+            return INTERNAL_ERROR;
+        }
+    }
+
+    /**
+     * 同目录下预压缩的.gz文件
+     */
+    static Path gzipSidecar(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + ".gz");
+    }
+
+    /**
+     * @return 预压缩文件的属性，不存在时为null
+     */
+    private static BasicFileAttributes readGzipSidecar(Path filePath) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(gzipSidecar(filePath), BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 为资源附加gzip表示：优先使用同目录下预压缩的.gz文件，
+     * 否则对足够大的文本类内容压缩一次，压缩结果随原资源一起缓存
+     *
+     * @param gzipAttributes 预压缩文件的属性，没有预压缩文件时为null
+     */
+    private StaticResource attachGzipVariant(Path filePath, BasicFileAttributes gzipAttributes,
+            StaticResource resource) throws IOException {
+        if (gzipAttributes != null) {
+            Path gzipPath = gzipSidecar(filePath);
+            long gzipLastModified = gzipAttributes.lastModifiedTime().toMillis();
+            if (resource.isFileBacked() || gzipAttributes.size() > transferThreshold) {
+                return resource.withGzipVariant(gzipPath, gzipAttributes.size(), gzipLastModified);
+            }
+            return resource.withGzipSidecar(Files.readAllBytes(gzipPath), gzipLastModified);
+        }
+
+        if (resource.isFileBacked() || gzipMinSize < 0 || resource.getContentLength() < gzipMinSize
+                || !isCompressible(resource.getMimeType())) {
+            return resource;
+        }
+        byte[] compressed = gzip(resource.getContent());
+        // 压缩收益太小时不值得占用缓存
+        if (compressed.length >= resource.getContentLength() * 9 / 10) {
+            return resource;
+        }
+        return resource.withGzipVariant(compressed);
+    }
+
+    private boolean isProtectedPath(Path filePath) {
+        if (filePath.equals(webRootPath)) {
+            return false;
+        }
+        String first = webRootPath.relativize(filePath).getName(0).toString();
+        return "WEB-INF".equalsIgnoreCase(first) || "META-INF".equalsIgnoreCase(first);
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/") || mimeType.contains("javascript") || mimeType.contains("json")
+                || mimeType.contains("xml");
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        // 每个文件版本只压缩一次，使用最高压缩级别
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 启动预热：把目录下能进入缓存的文件预先读入，直到用完字节预算
+     * WEB-INF、META-INF和.gz预压缩文件（作为原文件的变体加载）不单独预加载
+     *
+     * @return 预加载的文件数
+     */
+    public int preload(long budgetBytes) {
+        long maxSize = Math.min(cache.getMaxFileSize(), transferThreshold);
+        long remaining = budgetBytes;
+        int loaded = 0;
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(webRootPath)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException e) {
+            System.err.println("遍历静态资源目录失败: " + webRootPath + " - " + e.getMessage());
+            return 0;
+        }
+
+        for (Path file : files) {
+            if (remaining <= 0) {
+                break;
+            }
+            if (isProtectedPath(file) || file.getFileName().toString().endsWith(".gz")) {
+                continue;
+            }
+            long size;
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                continue;
+            }
+            if (size > maxSize || size > remaining) {
+                continue;
+            }
+            StaticResource resource = loadResource("/" + webRootPath.relativize(file).toString()
+                    .replace(File.separatorChar, '/'));
+            if (resource.getStatusCode() == 200) {
+                remaining -= resource.getMemorySize();
+                loaded++;
+            }
         }
+        return loaded;
+    }
+
+    /**
+     * 文件变化通知：使对应的缓存条目失效
+     * 删除或重命名的可能是目录，因此按路径前缀失效；.gz预压缩文件变化时原文件的条目也随之失效
+     */
+    public void onFileChanged(Path path) {
+        Path relative = webRootPath.toAbsolutePath().relativize(path.toAbsolutePath().normalize());
+        Path filePath = webRootPath.resolve(relative).normalize();
+        cache.invalidateTree(filePath);
+
+        String name = filePath.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            cache.invalidate(filePath.resolveSibling(name.substring(0, name.length() - 3)));
+        }
+    }
+
+    /**
+     * 获取静态资源缓存的统计信息
+     */
+    public StaticResourceCache.CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    public StaticResourceCache getCache() {
+        return cache;
     }
 
     /**
@@ -102,16 +340,16 @@ public class StaticResourceHandler {
     /**
      * 创建错误响应资源
      */
-    private StaticResource createErrorResource(int statusCode, String reasonPhrase) {
+    private static StaticResource createErrorResource(int statusCode, String reasonPhrase) {
         String errorPage = createErrorPage(statusCode, reasonPhrase);
-        byte[] content = errorPage.getBytes();
+        byte[] content = errorPage.getBytes(StandardCharsets.UTF_8);
         return new StaticResource(statusCode, reasonPhrase, content, "text/html; charset=UTF-8", "error.html");
     }
 
     /**
      * 创建错误页面HTML
      */
-    private String createErrorPage(int statusCode, String reasonPhrase) {
+    private static String createErrorPage(int statusCode, String reasonPhrase) {
         return "<!DOCTYPE html>\n" +
                 "<html>\n" +
                 "<head>\n" +
@@ -133,20 +371,243 @@ public class StaticResourceHandler {
 
     /**
      * 静态资源封装类
+     * 小文件的内容保存在内存中；大文件只保存路径和长度（content为null），发送时直接从文件传输。
+     * 文件资源在创建时计算一次ETag和Last-Modified，缓存命中后的条件请求不再访问文件；
+     * gzip表示作为原资源的一个变体保存，与原资源一起缓存和淘汰
      */
     public static class StaticResource {
         private final int statusCode;
         private final String reasonPhrase;
         private final byte[] content;
+        private final Path file;
+        // 文件形式的表示在文件中的起始位置（单个Range区间）
+        private final long fileOffset;
+        private final long contentLength;
         private final String mimeType;
         private final String fileName;
+        private final long lastModified;
+        private final String etag;
+        private final String lastModifiedHeader;
+        // 本表示的内容编码，未压缩时为null
+        private final String contentEncoding;
+        private final StaticResource gzipVariant;
+        // 206/416响应的Content-Range，完整内容为null
+        private final String contentRange;
 
         public StaticResource(int statusCode, String reasonPhrase, byte[] content, String mimeType, String fileName) {
+            this(statusCode, reasonPhrase, content, mimeType, fileName, -1L);
+        }
+
+        /**
+         * @param lastModified 文件修改时间，小于0表示没有校验信息（例如错误页面）
+         */
+        public StaticResource(int statusCode, String reasonPhrase, byte[] content, String mimeType, String fileName,
+                long lastModified) {
+            // 内容在内存中，按内容摘要生成强校验值，文件被修改但内容相同时仍然命中
+            this(statusCode, reasonPhrase, content, null, 0, content.length, mimeType, fileName, lastModified,
+                    lastModified < 0 ? null : createEtag(content.length, checksum(content)), null, null, null);
+        }
+
+        public StaticResource(int statusCode, String reasonPhrase, Path file, long contentLength, String mimeType,
+                String fileName, long lastModified) {
+            // 大文件不读取内容，用长度和修改时间标识版本
+            this(statusCode, reasonPhrase, null, file, 0, contentLength, mimeType, fileName, lastModified,
+                    createEtag(contentLength, lastModified), null, null, null);
+        }
+
+        private StaticResource(int statusCode, String reasonPhrase, byte[] content, Path file, long fileOffset,
+                long contentLength, String mimeType, String fileName, long lastModified, String etag,
+                String contentEncoding, StaticResource gzipVariant, String contentRange) {
             this.statusCode = statusCode;
             this.reasonPhrase = reasonPhrase;
             this.content = content;
+            this.file = file;
+            this.fileOffset = fileOffset;
+            this.contentLength = contentLength;
             this.mimeType = mimeType;
             this.fileName = fileName;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.lastModifiedHeader = lastModified < 0 ? null : HttpDates.format(lastModified);
+            this.contentEncoding = contentEncoding;
+            this.gzipVariant = gzipVariant;
+            this.contentRange = contentRange;
+        }
+
+        /**
+         * 附加在内存中压缩生成的gzip表示，返回新的资源对象
+         * 压缩结果完全由原内容决定，校验值由原内容的校验值派生
+         */
+        public StaticResource withGzipVariant(byte[] compressed) {
+            return withGzipVariant(new StaticResource(statusCode, reasonPhrase, compressed, null, 0,
+                    compressed.length, mimeType, fileName, lastModified, gzipEtag("gzip"), GZIP, null, null));
+        }
+
+        /**
+         * 附加读入内存的预压缩文件，返回新的资源对象
+         * 预压缩文件可以单独重新生成，校验值还要包含它自己的内容摘要
+         */
+        public StaticResource withGzipSidecar(byte[] compressed, long compressedLastModified) {
+            String version = "gz" + Long.toHexString(compressed.length) + "-" + Long.toHexString(checksum(compressed));
+            return withGzipVariant(new StaticResource(statusCode, reasonPhrase, compressed, null, 0,
+                    compressed.length, mimeType, fileName, Math.max(lastModified, compressedLastModified),
+                    gzipEtag(version), GZIP, null, null));
+        }
+
+        /**
+         * 附加预压缩文件形式的gzip表示（发送时直接从文件传输），返回新的资源对象
+         * 校验值包含预压缩文件自己的长度和修改时间
+         */
+        public StaticResource withGzipVariant(Path compressedFile, long compressedLength, long compressedLastModified) {
+            String version = "gz" + Long.toHexString(compressedLength) + "-"
+                    + Long.toHexString(compressedLastModified);
+            return withGzipVariant(new StaticResource(statusCode, reasonPhrase, null, compressedFile, 0,
+                    compressedLength, mimeType, fileName, Math.max(lastModified, compressedLastModified),
+                    gzipEtag(version), GZIP, null, null));
+        }
+
+        private StaticResource withGzipVariant(StaticResource variant) {
+            return new StaticResource(statusCode, reasonPhrase, content, file, 0, contentLength, mimeType, fileName,
+                    lastModified, etag, null, variant, null);
+        }
+
+        /**
+         * 按Range和If-Range请求头选择要发送的区间（对已选定的编码表示生效）
+         * 单个区间直接引用原内容或文件中的位置；多个区间按positioned read读取后组成multipart/byteranges
+         *
+         * @return 206或416响应对应的资源；没有Range、If-Range不匹配或Range无效时返回自身
+         */
+        public StaticResource selectRange(String rangeHeader, String ifRange) {
+            if (rangeHeader == null || statusCode != 200 || etag == null || !matchesIfRange(ifRange)) {
+                return this;
+            }
+            List<ByteRange> ranges = ByteRange.parse(rangeHeader, contentLength);
+            if (ranges == null) {
+                return this;
+            }
+            if (ranges.isEmpty()) {
+                return new StaticResource(416, "Range Not Satisfiable", new byte[0], null, 0, 0, mimeType, fileName,
+                        lastModified, etag, contentEncoding, null, "bytes */" + contentLength);
+            }
+
+            try {
+                if (ranges.size() == 1) {
+                    ByteRange range = ranges.get(0);
+                    String contentRange = range.toContentRange(contentLength);
+                    if (file != null) {
+                        return new StaticResource(206, "Partial Content", null, file, fileOffset + range.getStart(),
+                                range.getLength(), mimeType, fileName, lastModified, etag, contentEncoding, null,
+                                contentRange);
+                    }
+                    byte[] slice = Arrays.copyOfRange(content, (int) range.getStart(), (int) range.getEnd() + 1);
+                    return new StaticResource(206, "Partial Content", slice, null, 0, slice.length, mimeType,
+                            fileName, lastModified, etag, contentEncoding, null, contentRange);
+                }
+                return multipartRanges(ranges);
+            } catch (IOException e) {
+                System.err.println("读取静态资源区间时发生错误: " + e.getMessage());
+                return this;
+            }
+        }
+
+        /**
+         * If-Range只按强校验值或精确的修改时间匹配，不匹配时发送完整内容
+         */
+        private boolean matchesIfRange(String ifRange) {
+            if (ifRange == null) {
+                return true;
+            }
+            String value = ifRange.trim();
+            if (value.startsWith("\"") || value.startsWith("W/")) {
+                return value.equals(etag);
+            }
+            long date = HttpDates.parse(value);
+            return date >= 0 && date / 1000 == lastModified / 1000;
+        }
+
+        private StaticResource multipartRanges(List<ByteRange> ranges) throws IOException {
+            long total = 0;
+            for (ByteRange range : ranges) {
+                total += range.getLength();
+            }
+            // 多区间响应在内存中组装，过大时不如直接发送完整内容
+            if (total > MAX_MULTIPART_BYTES) {
+                return this;
+            }
+
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) total + ranges.size() * 128);
+            try (FileChannel channel = file != null ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+                for (ByteRange range : ranges) {
+                    String partHead = "--" + boundary + "\r\nContent-Type: " + mimeType + "\r\nContent-Range: "
+                            + range.toContentRange(contentLength) + "\r\n\r\n";
+                    out.write(partHead.getBytes(StandardCharsets.ISO_8859_1));
+                    if (channel == null) {
+                        out.write(content, (int) range.getStart(), (int) range.getLength());
+                    } else {
+                        out.write(readFully(channel, fileOffset + range.getStart(), (int) range.getLength()));
+                    }
+                    out.write('\r');
+                    out.write('\n');
+                }
+            }
+            out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+            byte[] body = out.toByteArray();
+            return new StaticResource(206, "Partial Content", body, null, 0, body.length,
+                    "multipart/byteranges; boundary=" + boundary, fileName, lastModified, etag, contentEncoding, null,
+                    null);
+        }
+
+        /**
+         * 从指定位置读取，不移动通道的position
+         */
+        private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("文件在读取区间时被截断");
+                }
+            }
+            return buffer.array();
+        }
+
+        /**
+         * @return 206/416响应的Content-Range头，完整内容时为null
+         */
+        public String getContentRange() {
+            return contentRange;
+        }
+
+        /**
+         * 按Accept-Encoding选择要发送的表示
+         *
+         * @param acceptEncoding Accept-Encoding请求头，可以为null
+         */
+        public StaticResource selectEncoding(String acceptEncoding) {
+            if (gzipVariant != null && acceptEncoding != null && acceptsGzip(acceptEncoding)) {
+                return gzipVariant;
+            }
+            return this;
+        }
+
+        /**
+         * 同一URI存在多种编码的表示时，响应需要带Vary: Accept-Encoding
+         */
+        public boolean isVaryAcceptEncoding() {
+            return gzipVariant != null || contentEncoding != null;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        /**
+         * 资源及其变体占用的内存字节数（文件形式的表示不占用）
+         */
+        public long getMemorySize() {
+            long size = content != null ? content.length : 0;
+            return gzipVariant != null ? size + gzipVariant.getMemorySize() : size;
         }
 
         public int getStatusCode() {
@@ -170,7 +631,123 @@ public class StaticResourceHandler {
         }
 
         public long getContentLength() {
-            return content.length;
+            return contentLength;
+        }
+
+        public boolean isFileBacked() {
+            return file != null;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return 带引号的强校验值；错误页面等没有校验信息时为null
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModifiedHeader() {
+            return lastModifiedHeader;
+        }
+
+        /**
+         * 按条件请求头判断客户端缓存的版本是否仍然有效（RFC 7232）
+         * 有If-None-Match时忽略If-Modified-Since；HTTP日期只精确到秒
+         *
+         * @param ifNoneMatch     If-None-Match请求头，可以为null
+         * @param ifModifiedSince If-Modified-Since请求头，可以为null
+         */
+        public boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+            if (etag == null) {
+                return false;
+            }
+            if (ifNoneMatch != null) {
+                return matchesEtag(ifNoneMatch);
+            }
+            long since = HttpDates.parse(ifModifiedSince);
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+
+        /**
+         * If-None-Match使用弱比较，忽略W/前缀
+         */
+        private boolean matchesEtag(String ifNoneMatch) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 压缩表示的强校验值必须与原内容不同
+         *
+         * @param version 压缩表示自身的版本标识
+         */
+        private String gzipEtag(String version) {
+            return etag == null ? null : etag.substring(0, etag.length() - 1) + "-" + version + "\"";
+        }
+
+        /**
+         * 客户端是否接受gzip编码（q=0表示明确拒绝）
+         */
+        static boolean acceptsGzip(String acceptEncoding) {
+            boolean wildcard = false;
+            for (String part : acceptEncoding.split(",")) {
+                int semicolon = part.indexOf(';');
+                String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+                boolean acceptable = semicolon < 0 || !isZeroQuality(part.substring(semicolon + 1));
+                if (GZIP.equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+                    return acceptable;
+                }
+                if ("*".equals(coding)) {
+                    wildcard = acceptable;
+                }
+            }
+            return wildcard;
+        }
+
+        private static boolean isZeroQuality(String parameters) {
+            for (String parameter : parameters.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.startsWith("q=") || trimmed.startsWith("Q=")) {
+                    try {
+                        return Double.parseDouble(trimmed.substring(2).trim()) <= 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static String createEtag(long length, long version) {
+            return "\"" + Long.toHexString(length) + "-" + Long.toHexString(version) + "\"";
+        }
+
+        private static long checksum(byte[] content) {
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length);
+            return crc.getValue();
+        }
+
+        /**
+         * 为一次响应创建覆盖整个文件的区间（仅适用于isFileBacked()的资源）
+         */
+        public FileRegion openRegion() {
+            return new FileRegion(file, fileOffset, contentLength);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.webcontainer.stage3;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.time.LocalDateTime;
@@ -82,12 +83,15 @@ public class ApiServlet extends HttpServlet {
 
     /**
      * 处理回声请求
+     * 表单参数和查询参数中的message原样返回；POST的其他请求体（例如JSON）放在body字段中返回
      */
-    private void handleEchoRequest(HttpServletRequest request, HttpServletResponse response, PrintWriter out) {
+    private void handleEchoRequest(HttpServletRequest request, HttpServletResponse response, PrintWriter out)
+            throws IOException {
         String message = request.getParameter("message");
         if (message == null) {
             message = "Hello, World!";
         }
+        String body = "POST".equals(request.getMethod()) ? readBody(request) : "";
 
         out.println("{");
         out.println("  \"echo\": \"" + escapeJson(message) + "\",");
@@ -95,11 +99,27 @@ public class ApiServlet extends HttpServlet {
         out.println("  \"uri\": \"" + request.getRequestURI() + "\",");
         out.println(
                 "  \"queryString\": \"" + (request.getQueryString() != null ? request.getQueryString() : "") + "\",");
+        out.println("  \"contentLength\": " + request.getContentLengthLong() + ",");
+        out.println("  \"body\": \"" + escapeJson(body) + "\",");
         out.println("  \"userAgent\": \"" + escapeJson(request.getHeader("User-Agent")) + "\",");
         out.println("  \"remoteAddr\": \"" + request.getRemoteAddr() + "\"");
         out.println("}");
     }
 
+    /**
+     * 按请求的字符编码读取整个请求体（表单参数已被解析时为空）
+     */
+    private String readBody(HttpServletRequest request) throws IOException {
+        StringBuilder body = new StringBuilder();
+        BufferedReader reader = request.getReader();
+        char[] chunk = new char[1024];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            body.append(chunk, 0, read);
+        }
+        return body.toString();
+    }
+
     /**
      * 处理默认API请求
      */
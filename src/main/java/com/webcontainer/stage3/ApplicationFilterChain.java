@@ -0,0 +1,35 @@
+package com.webcontainer.stage3;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * 第三阶段：Filter链
+ * 过滤器数组在路由编译时已经确定并排好序，每个请求只创建这个记录当前位置的对象
+ */
+public class ApplicationFilterChain implements FilterChain {
+    private final FilterRegistrationImpl[] filters;
+    private final Servlet servlet;
+    private int position = 0;
+
+    public ApplicationFilterChain(FilterRegistrationImpl[] filters, Servlet servlet) {
+        this.filters = filters;
+        this.servlet = servlet;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        if (position < filters.length) {
+            FilterRegistrationImpl next = filters[position++];
+            next.getFilter().doFilter(request, response, this);
+            return;
+        }
+        // 所有Filter都已放行，最后交给Servlet
+        servlet.service(request, response);
+    }
+}
@@ -0,0 +1,32 @@
+package com.webcontainer.stage3;
+
+/**
+ * 一条Filter映射：按URL模式或按Servlet名称（*表示所有Servlet）
+ */
+final class FilterMap {
+    private final FilterRegistrationImpl filter;
+    private final String urlPattern;
+    private final String servletName;
+
+    FilterMap(FilterRegistrationImpl filter, String urlPattern, String servletName) {
+        this.filter = filter;
+        this.urlPattern = urlPattern;
+        this.servletName = servletName;
+    }
+
+    FilterRegistrationImpl getFilter() {
+        return filter;
+    }
+
+    String getUrlPattern() {
+        return urlPattern;
+    }
+
+    String getServletName() {
+        return servletName;
+    }
+
+    boolean isUrlMapping() {
+        return urlPattern != null;
+    }
+}
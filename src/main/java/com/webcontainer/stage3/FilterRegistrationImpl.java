@@ -0,0 +1,188 @@
+package com.webcontainer.stage3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterConfig;
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+/**
+ * 第三阶段：Filter注册信息
+ * 同时作为传给Filter.init的FilterConfig；映射变化时通知Servlet容器重新编译路由和过滤器链
+ */
+public class FilterRegistrationImpl implements FilterRegistration.Dynamic, FilterConfig {
+
+    private final ServletContainer container;
+    private final String filterName;
+    private final String className;
+    private final Map<String, String> initParameters = new LinkedHashMap<>();
+    private final List<String> urlPatterns = new ArrayList<>();
+    private final List<String> servletNames = new ArrayList<>();
+
+    private volatile Filter filter;
+    private volatile boolean initialized = false;
+    private ServletContext servletContext;
+
+    FilterRegistrationImpl(ServletContainer container, String filterName, String className, Filter filter) {
+        this.container = container;
+        this.filterName = filterName;
+        this.className = className;
+        this.filter = filter;
+    }
+
+    @Override
+    public void addMappingForUrlPatterns(EnumSet<DispatcherType> dispatcherTypes, boolean isMatchAfter,
+            String... urlPatterns) {
+        // 容器只有REQUEST一种分派方式
+        if (dispatcherTypes != null && !dispatcherTypes.contains(DispatcherType.REQUEST)) {
+            return;
+        }
+        for (String urlPattern : urlPatterns) {
+            this.urlPatterns.add(urlPattern);
+            container.addFilterMapping(new FilterMap(this, urlPattern, null), isMatchAfter);
+        }
+    }
+
+    @Override
+    public void addMappingForServletNames(EnumSet<DispatcherType> dispatcherTypes, boolean isMatchAfter,
+            String... servletNames) {
+        if (dispatcherTypes != null && !dispatcherTypes.contains(DispatcherType.REQUEST)) {
+            return;
+        }
+        for (String servletName : servletNames) {
+            this.servletNames.add(servletName);
+            container.addFilterMapping(new FilterMap(this, null, servletName), isMatchAfter);
+        }
+    }
+
+    @Override
+    public Collection<String> getUrlPatternMappings() {
+        return Collections.unmodifiableList(urlPatterns);
+    }
+
+    @Override
+    public Collection<String> getServletNameMappings() {
+        return Collections.unmodifiableList(servletNames);
+    }
+
+    /**
+     * 创建（如有必要）并初始化Filter，只执行一次
+     */
+    synchronized void init(ServletContext servletContext) throws Exception {
+        if (initialized) {
+            return;
+        }
+        if (filter == null) {
+            // 在应用的类加载器上下文中加载，Filter类可以来自Web应用自己的目录
+            filter = (Filter) Class.forName(className, true, Thread.currentThread().getContextClassLoader())
+                    .getDeclaredConstructor().newInstance();
+        }
+        this.servletContext = servletContext;
+        filter.init(this);
+        initialized = true;
+        System.out.println("初始化Filter: " + filterName + " (" + className + ")");
+    }
+
+    /**
+     * @return 已初始化的Filter实例
+     */
+    Filter getFilter() throws ServletException {
+        if (!initialized) {
+            throw new ServletException("Filter not initialized: " + filterName);
+        }
+        return filter;
+    }
+
+    synchronized void destroy() {
+        if (initialized) {
+            filter.destroy();
+            initialized = false;
+            System.out.println("销毁Filter: " + filterName);
+        }
+    }
+
+    // Registration
+
+    @Override
+    public String getName() {
+        return filterName;
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean setInitParameter(String name, String value) {
+        if (name == null || value == null) {
+            throw new IllegalArgumentException("Init parameter name and value must not be null");
+        }
+        return initParameters.putIfAbsent(name, value) == null;
+    }
+
+    @Override
+    public String getInitParameter(String name) {
+        return initParameters.get(name);
+    }
+
+    @Override
+    public Set<String> setInitParameters(Map<String, String> parameters) {
+        Set<String> conflicts = new HashSet<>();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            if (initParameters.containsKey(entry.getKey())) {
+                conflicts.add(entry.getKey());
+            }
+        }
+        if (conflicts.isEmpty()) {
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                setInitParameter(entry.getKey(), entry.getValue());
+            }
+        }
+        return conflicts;
+    }
+
+    @Override
+    public Map<String, String> getInitParameters() {
+        return Collections.unmodifiableMap(initParameters);
+    }
+
+    @Override
+    public void setAsyncSupported(boolean isAsyncSupported) {
+        // 不支持异步处理
+    }
+
+    // FilterConfig
+
+    @Override
+    public String getFilterName() {
+        return filterName;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return servletContext;
+    }
+
+    @Override
+    public Enumeration<String> getInitParameterNames() {
+        return Collections.enumeration(initParameters.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return filterName;
+    }
+}
@@ -1,18 +1,31 @@
 package com.webcontainer.stage3;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.security.Principal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 
+import com.webcontainer.http.HttpDates;
+import com.webcontainer.http.HttpRequestHead;
+
 /**
  * 第三阶段：实现标准HttpServletRequest接口
  * 包装HTTP请求信息，符合Servlet API规范
@@ -22,16 +35,34 @@ public class HttpServletRequestImpl implements HttpServletRequest {
     private final String requestURI;
     private final String protocol;
     private final Map<String, String> headers;
+    // 解析器生成的请求头，头部按需从中读取，不再逐个复制到headers
+    private final HttpRequestHead head;
     private final Map<String, String[]> parameters;
     private final String queryString;
     private final String contextPath;
     private final String servletPath;
     private final String pathInfo;
 
+    // 连接层提供的请求体，为null时请求体为空
+    private InputStream body;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+    private String characterEncoding;
+    private boolean formParsed;
+
     public HttpServletRequestImpl(String method, String requestURI, String protocol) {
+        this(method, requestURI, protocol, null);
+    }
+
+    public HttpServletRequestImpl(HttpRequestHead head) {
+        this(head.getMethod(), head.getUri(), head.getProtocol(), head);
+    }
+
+    private HttpServletRequestImpl(String method, String requestURI, String protocol, HttpRequestHead head) {
         this.method = method;
         this.protocol = protocol;
         this.headers = new HashMap<>();
+        this.head = head;
         this.parameters = new HashMap<>();
 
         // 解析URI和查询字符串
@@ -83,6 +114,13 @@ public class HttpServletRequestImpl implements HttpServletRequest {
         }
     }
 
+    /**
+     * 设置请求体输入流（由连接层在处理请求前调用）
+     */
+    public void setBody(InputStream body) {
+        this.body = body;
+    }
+
     public void addHeader(String name, String value) {
         headers.put(name.toLowerCase(), value);
     }
@@ -104,44 +142,91 @@ public class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public String getHeader(String name) {
-        return headers.get(name.toLowerCase());
+        if (!headers.isEmpty()) {
+            String value = headers.get(name.toLowerCase());
+            if (value != null) {
+                return value;
+            }
+        }
+        // 在原始字节上忽略大小写比较，不需要转换名称
+        return head != null ? head.getHeader(name) : null;
     }
 
     @Override
     public Enumeration<String> getHeaders(String name) {
-        String value = getHeader(name);
-        if (value == null) {
-            return Collections.emptyEnumeration();
+        String value = headers.isEmpty() ? null : headers.get(name.toLowerCase());
+        if (value != null) {
+            return Collections.enumeration(Arrays.asList(value));
         }
-        return Collections.enumeration(Arrays.asList(value));
+        if (head != null) {
+            List<String> values = head.getHeaders(name);
+            if (!values.isEmpty()) {
+                return Collections.enumeration(values);
+            }
+        }
+        return Collections.emptyEnumeration();
     }
 
     @Override
     public Enumeration<String> getHeaderNames() {
-        return Collections.enumeration(headers.keySet());
+        if (head == null) {
+            return Collections.enumeration(headers.keySet());
+        }
+        Set<String> names = new LinkedHashSet<>(head.getHeaderNames());
+        names.addAll(headers.keySet());
+        return Collections.enumeration(names);
     }
 
     @Override
     public String getParameter(String name) {
+        parseFormBody();
         String[] values = parameters.get(name);
         return (values != null && values.length > 0) ? values[0] : null;
     }
 
     @Override
     public String[] getParameterValues(String name) {
+        parseFormBody();
         return parameters.get(name);
     }
 
     @Override
     public Enumeration<String> getParameterNames() {
+        parseFormBody();
         return Collections.enumeration(parameters.keySet());
     }
 
     @Override
     public Map<String, String[]> getParameterMap() {
+        parseFormBody();
         return new HashMap<>(parameters);
     }
 
+    /**
+     * POST表单（application/x-www-form-urlencoded）的参数在第一次取参数时从请求体读取，
+     * 与查询字符串中的参数合并；应用已经自己读取请求体时不再解析
+     */
+    private void parseFormBody() {
+        if (formParsed) {
+            return;
+        }
+        formParsed = true;
+        String contentType = getContentType();
+        if (!"POST".equals(method) || contentType == null || inputStream != null || reader != null
+                || !contentType.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded")) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            if (body != null) {
+                body.transferTo(form);
+            }
+            parseQueryString(form.toString(getCharacterEncoding()));
+        } catch (IOException e) {
+            System.err.println("读取表单参数失败: " + e.getMessage());
+        }
+    }
+
     @Override
     public String getQueryString() {
         return queryString;
@@ -240,21 +325,69 @@ public class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public String getCharacterEncoding() {
-        return "UTF-8";
+        if (characterEncoding != null) {
+            return characterEncoding;
+        }
+        String charset = charsetOf(getContentType());
+        return charset != null ? charset : "UTF-8";
     }
 
     @Override
     public void setCharacterEncoding(String env) throws UnsupportedEncodingException {
+        // 已经取得Reader之后不再生效
+        if (reader != null) {
+            return;
+        }
+        try {
+            if (!Charset.isSupported(env)) {
+                throw new UnsupportedEncodingException(env);
+            }
+        } catch (IllegalCharsetNameException e) {
+            throw new UnsupportedEncodingException(env);
+        }
+        characterEncoding = env;
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + 8);
+        int end = charset.indexOf(';');
+        if (end >= 0) {
+            charset = charset.substring(0, end);
+        }
+        charset = charset.trim();
+        if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+            charset = charset.substring(1, charset.length() - 1);
+        }
+        return charset.isEmpty() ? null : charset;
     }
 
+    /**
+     * 请求声明的Content-Length；分块传输或没有声明时为-1
+     */
     @Override
     public int getContentLength() {
-        return -1;
+        long length = getContentLengthLong();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
     }
 
     @Override
     public long getContentLengthLong() {
-        return -1L;
+        String value = getHeader("Content-Length");
+        if (value == null || getHeader("Transfer-Encoding") != null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
     }
 
     @Override
@@ -263,13 +396,33 @@ public class HttpServletRequestImpl implements HttpServletRequest {
     }
 
     @Override
-    public javax.servlet.ServletInputStream getInputStream() throws IOException {
-        throw new UnsupportedOperationException("InputStream not supported in this implementation");
+    public ServletInputStream getInputStream() throws IOException {
+        if (reader != null) {
+            throw new IllegalStateException("已经调用过getReader()");
+        }
+        if (inputStream == null) {
+            inputStream = new BodyInputStream(body != null ? body : InputStream.nullInputStream());
+        }
+        return inputStream;
     }
 
     @Override
     public BufferedReader getReader() throws IOException {
-        throw new UnsupportedOperationException("Reader not supported in this implementation");
+        if (inputStream != null) {
+            throw new IllegalStateException("已经调用过getInputStream()");
+        }
+        if (reader == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset;
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+            reader = new BufferedReader(new InputStreamReader(
+                    new BodyInputStream(body != null ? body : InputStream.nullInputStream()), charset));
+        }
+        return reader;
     }
 
     @Override
@@ -431,8 +584,11 @@ public class HttpServletRequestImpl implements HttpServletRequest {
         if (value == null) {
             return -1L;
         }
-        // 简化实现，实际应该解析日期格式
-        return -1L;
+        long date = HttpDates.parse(value);
+        if (date < 0) {
+            throw new IllegalArgumentException("无法解析的日期请求头 " + name + ": " + value);
+        }
+        return date;
     }
 
     @Override
@@ -452,4 +608,54 @@ public class HttpServletRequestImpl implements HttpServletRequest {
     public String getPathTranslated() {
         return null;
     }
+
+    /**
+     * 连接层请求体之上的ServletInputStream（阻塞读取，不支持异步ReadListener）
+     */
+    private static class BodyInputStream extends ServletInputStream {
+        private final InputStream in;
+        private boolean finished;
+
+        BodyInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                finished = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                finished = true;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("请求不是异步模式");
+        }
+    }
 }
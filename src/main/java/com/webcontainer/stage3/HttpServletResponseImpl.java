@@ -1,38 +1,193 @@
 package com.webcontainer.stage3;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
 
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.HttpDates;
+import com.webcontainer.http.ResponseBuffer;
+import com.webcontainer.http.ResponseSerializer;
+
 /**
  * 第三阶段：实现标准HttpServletResponse接口
  * 包装HTTP响应信息，符合Servlet API规范
  */
 public class HttpServletResponseImpl implements HttpServletResponse {
+    // 响应缓冲区大小（字节），写满后提交响应并开始发送；Servlet可以通过setBufferSize调整
+    public static final String BUFFER_SIZE_PROPERTY = "webcontainer.response.bufferSize";
+    private static final int DEFAULT_BUFFER_SIZE = Integer.getInteger(BUFFER_SIZE_PROPERTY, 8192);
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
     private int statusCode = SC_OK;
     private String reasonPhrase = "OK";
-    private final Map<String, String> headers = new HashMap<>();
+    // 响应头名称不区分大小写
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     private final List<javax.servlet.http.Cookie> cookies = new ArrayList<>();
-    private StringWriter stringWriter;
+    // Writer和OutputStream共用的字节缓冲区，发送时原样写入连接
+    private ResponseBuffer buffer = new ResponseBuffer();
+    private final BufferOutputStream outputStream = new BufferOutputStream();
+    // 第一次调用getWriter时按当时的字符编码创建
     private PrintWriter printWriter;
+    private BufferWriter bufferWriter;
+    private boolean outputStreamUsed = false;
+    // 容器直接设置的原始字节或文件响应体（静态资源），优先于Writer中的内容
+    private byte[] binaryBody;
+    private FileRegion fileBody;
     private String characterEncoding = "UTF-8";
     private String contentType;
     private boolean committed = false;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    // 流式发送：由连接层在处理请求前设置；未设置时整个响应体缓冲到处理结束
+    private OutputStream connection;
+    private HeadWriter headWriter;
+    // 响应头已经发出，后续内容直接写入连接
+    private boolean streaming = false;
+    // 没有声明Content-Length时使用分块传输编码
+    private boolean chunked = false;
+    // 声明了Content-Length时还能发送的字节数，超出的部分丢弃
+    private long remainingLength;
+    // 容器内部刷新Writer期间只写入缓冲区，不触发提交
+    private boolean holdOutput = false;
 
     public HttpServletResponseImpl() {
-        this.stringWriter = new StringWriter();
-        this.printWriter = new PrintWriter(stringWriter);
+    }
+
+    /**
+     * 启用流式发送：缓冲区写满或调用flushBuffer时，先通过headWriter写出状态行和响应头，再把内容写入connection。
+     * 只适用于HTTP/1.1且有响应体的请求（HEAD请求和HTTP/1.0仍然缓冲全部内容以得到准确的Content-Length）
+     */
+    public void setStreamingOutput(OutputStream connection, HeadWriter headWriter) {
+        this.connection = connection;
+        this.headWriter = headWriter;
+    }
+
+    /**
+     * @return 响应头是否已经在处理过程中发出
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * 是否使用分块传输编码（仅在isStreaming时有意义）
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * 发送剩余的缓冲内容并结束响应体
+     *
+     * @return false表示发送的字节数少于声明的Content-Length，连接不能再复用
+     */
+    public boolean finishStreaming() throws IOException {
+        finishWriter();
+        sendBuffered();
+        if (chunked) {
+            connection.write(LAST_CHUNK);
+            return true;
+        }
+        return remainingLength == 0;
+    }
+
+    private void writeBody(byte[] b, int off, int len) throws IOException {
+        if (connection != null && !holdOutput && buffer.size() + len > bufferSize) {
+            commitAndSend();
+            if (len >= bufferSize) {
+                // 大块数据不经过缓冲区
+                sendDirect(b, off, len);
+                return;
+            }
+        }
+        buffer.write(b, off, len);
+    }
+
+    private void writeBody(int b) throws IOException {
+        buffer.write(b);
+        if (connection != null && !holdOutput && buffer.size() >= bufferSize) {
+            commitAndSend();
+        }
+    }
+
+    /**
+     * 必要时提交响应头，然后发送缓冲区中的内容
+     */
+    private void commitAndSend() throws IOException {
+        if (!streaming) {
+            String contentLength = headers.get("Content-Length");
+            chunked = !hasNoBody(statusCode);
+            // 1xx、204和304响应没有响应体，写入的内容全部丢弃
+            remainingLength = 0;
+            if (chunked && contentLength != null) {
+                try {
+                    remainingLength = Long.parseLong(contentLength.trim());
+                    chunked = false;
+                } catch (NumberFormatException e) {
+                    headers.remove("Content-Length");
+                }
+            }
+            headWriter.writeHead(chunked);
+            streaming = true;
+            committed = true;
+        }
+        sendBuffered();
+    }
+
+    private void sendBuffered() throws IOException {
+        int length = buffer.size();
+        if (length == 0) {
+            return;
+        }
+        if (chunked) {
+            writeChunkHeader(length);
+            buffer.writeTo(connection);
+            connection.write(CRLF);
+        } else {
+            int sent = (int) Math.min(length, remainingLength);
+            buffer.writeTo(connection, sent);
+            remainingLength -= sent;
+        }
+        buffer.reset();
+    }
+
+    private void sendDirect(byte[] b, int off, int len) throws IOException {
+        if (chunked) {
+            writeChunkHeader(len);
+            connection.write(b, off, len);
+            connection.write(CRLF);
+        } else {
+            int sent = (int) Math.min(len, remainingLength);
+            connection.write(b, off, sent);
+            remainingLength -= sent;
+        }
+    }
+
+    private void writeChunkHeader(int length) throws IOException {
+        connection.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
     }
 
     @Override
@@ -121,8 +276,8 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
         this.contentType = type;
 
-        // 解析字符编码
-        if (type != null && type.contains("charset=")) {
+        // 解析字符编码（getWriter之后设置的编码不再生效）
+        if (type != null && type.contains("charset=") && printWriter == null) {
             String[] parts = type.split("charset=");
             if (parts.length > 1) {
                 String charset = parts[1].trim();
@@ -143,7 +298,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public void setCharacterEncoding(String charset) {
-        if (committed) {
+        if (committed || printWriter != null) {
             return;
         }
         this.characterEncoding = charset;
@@ -156,12 +311,33 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public PrintWriter getWriter() throws IOException {
+        if (outputStreamUsed) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (printWriter == null) {
+            // 字符直接编码进字节缓冲区，不经过中间String
+            bufferWriter = new BufferWriter(charset());
+            printWriter = new PrintWriter(bufferWriter);
+        }
         return printWriter;
     }
 
     @Override
-    public javax.servlet.ServletOutputStream getOutputStream() throws IOException {
-        throw new UnsupportedOperationException("OutputStream not supported in this implementation");
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (printWriter != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        outputStreamUsed = true;
+        return outputStream;
+    }
+
+    private Charset charset() {
+        try {
+            return Charset.forName(characterEncoding);
+        } catch (IllegalArgumentException e) {
+            System.err.println("不支持的字符编码: " + characterEncoding + "，使用UTF-8");
+            return StandardCharsets.UTF_8;
+        }
     }
 
     @Override
@@ -181,7 +357,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public void setDateHeader(String name, long date) {
-        setHeader(name, new Date(date).toString());
+        setHeader(name, HttpDates.format(date));
     }
 
     @Override
@@ -191,7 +367,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public void addDateHeader(String name, long date) {
-        addHeader(name, new Date(date).toString());
+        addHeader(name, HttpDates.format(date));
     }
 
     @Override
@@ -231,12 +407,13 @@ public class HttpServletResponseImpl implements HttpServletResponse {
         setStatus(sc);
         resetBuffer();
 
-        String errorPage = createErrorPage(sc, msg);
-        setContentType("text/html; charset=UTF-8");
-        setContentLength(errorPage.getBytes(characterEncoding).length);
+        // 错误页面总是UTF-8，直接写入字节缓冲区，与是否已调用getWriter无关
+        byte[] errorPage = createErrorPage(sc, msg).getBytes(StandardCharsets.UTF_8);
+        contentType = "text/html; charset=UTF-8";
+        headers.put("Content-Type", contentType);
+        setContentLength(errorPage.length);
 
-        printWriter.write(errorPage);
-        printWriter.flush();
+        buffer.write(errorPage, 0, errorPage.length);
         committed = true;
     }
 
@@ -259,7 +436,12 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public void flushBuffer() throws IOException {
-        printWriter.flush();
+        flushWriter();
+        if (connection != null) {
+            // 提交响应并把已写入的内容立即发给客户端
+            commitAndSend();
+            connection.flush();
+        }
         committed = true;
     }
 
@@ -268,8 +450,11 @@ public class HttpServletResponseImpl implements HttpServletResponse {
         if (committed) {
             throw new IllegalStateException("Response already committed");
         }
-        stringWriter = new StringWriter();
-        printWriter = new PrintWriter(stringWriter);
+        // Writer中尚未编码的字符先刷入缓冲区，再一起丢弃
+        finishWriter();
+        buffer.reset();
+        binaryBody = null;
+        closeFileBody();
     }
 
     @Override
@@ -292,12 +477,15 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public int getBufferSize() {
-        return 8192; // 默认缓冲区大小
+        return bufferSize;
     }
 
     @Override
     public void setBufferSize(int size) {
-        // 简化实现，不实际设置缓冲区大小
+        if (committed || buffer.size() > 0) {
+            throw new IllegalStateException("Buffer size cannot be changed after content has been written");
+        }
+        this.bufferSize = Math.max(size, 1);
     }
 
     @Override
@@ -312,8 +500,217 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     // 自定义方法：获取响应内容
     public String getContent() {
-        printWriter.flush();
-        return stringWriter.toString();
+        finishWriter();
+        return new String(buffer.toByteArray(), charset());
+    }
+
+    /**
+     * 刷新PrintWriter（Servlet调用Writer.flush时则会提交响应）
+     */
+    private void flushWriter() {
+        if (printWriter != null) {
+            holdOutput = true;
+            try {
+                printWriter.flush();
+            } finally {
+                holdOutput = false;
+            }
+        }
+    }
+
+    /**
+     * 响应体结束时刷新PrintWriter并结束编码：末尾不成对的代理项按替换字符输出
+     */
+    private void finishWriter() {
+        if (printWriter != null) {
+            holdOutput = true;
+            try {
+                printWriter.flush();
+                bufferWriter.finish();
+            } catch (IOException e) {
+                // holdOutput时只写入缓冲区
+                throw new UncheckedIOException(e);
+            } finally {
+                holdOutput = false;
+            }
+        }
+    }
+
+    /**
+     * 设置原样发送的响应体字节，不经过字符编码
+     */
+    public void setBinaryBody(byte[] body) {
+        closeFileBody();
+        this.binaryBody = body;
+    }
+
+    public byte[] getBinaryBody() {
+        return binaryBody;
+    }
+
+    /**
+     * 设置直接从文件发送的响应体，由发送方负责关闭
+     */
+    public void setFileBody(FileRegion region) {
+        closeFileBody();
+        this.binaryBody = null;
+        this.fileBody = region;
+    }
+
+    public FileRegion getFileBody() {
+        return fileBody;
+    }
+
+    /**
+     * 获取要发送的响应体字节（文件响应体除外）
+     */
+    public byte[] getBodyBytes() throws IOException {
+        if (binaryBody != null) {
+            return binaryBody;
+        }
+        finishWriter();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 响应体的字节数（文件响应体除外），与writeBody实际写出的字节一致
+     */
+    public int getBodyLength() {
+        if (binaryBody != null) {
+            return binaryBody.length;
+        }
+        finishWriter();
+        return buffer.size();
+    }
+
+    /**
+     * 把响应体字节直接写入连接（文件响应体除外），不复制缓冲区
+     */
+    public void writeBody(java.io.OutputStream out) throws IOException {
+        if (binaryBody != null) {
+            out.write(binaryBody);
+        } else {
+            finishWriter();
+            buffer.writeTo(out);
+        }
+    }
+
+    /**
+     * 把响应写入连接：状态行、响应头和响应体
+     * 持久连接要求每个响应都带有准确的Content-Length，因此按实际编码后的字节数计算；
+     * 已经开始流式发送的响应只发送剩余内容并结束响应体。发送后归还缓冲区
+     *
+     * @param headRequest HEAD请求不发送响应体，但保留Servlet设置的Content-Length
+     * @return false表示响应体不完整，连接不能再复用
+     */
+    public boolean send(OutputStream out, boolean headRequest, boolean keepAlive) throws IOException {
+        try {
+            if (streaming) {
+                return finishStreaming();
+            }
+
+            long bodyLength = fileBody != null ? fileBody.getCount() : getBodyLength();
+            // 1xx、204和304响应没有响应体，也不带Content-Length
+            boolean noBody = hasNoBody(statusCode);
+            String contentLength = headers.get("Content-Length");
+            if (!headRequest || contentLength == null) {
+                contentLength = String.valueOf(bodyLength);
+            }
+            ResponseSerializer head = beginHead(contentLength, false, keepAlive);
+
+            if (headRequest || noBody) {
+                head.writeTo(out);
+                if (fileBody != null) {
+                    fileBody.close();
+                }
+            } else if (fileBody != null) {
+                head.writeTo(out);
+                fileBody.writeTo(out);
+            } else if (binaryBody != null) {
+                // 响应体数组不会再被修改，连接可以直接引用
+                head.writeTo(out, ByteBuffer.wrap(binaryBody), () -> {
+                });
+            } else {
+                // 缓冲区连同所有权交给连接，不复制响应体，真正写出之后才归还到池中
+                ResponseBuffer body = buffer;
+                buffer = new ResponseBuffer();
+                head.writeTo(out, body.asByteBuffer(), body::release);
+            }
+            return true;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 只写出状态行和响应头（流式发送时提前提交）
+     *
+     * @param contentLength 为null时不发送Content-Length
+     * @param chunked       响应体使用分块传输编码
+     */
+    public void writeHead(OutputStream out, String contentLength, boolean chunked, boolean keepAlive)
+            throws IOException {
+        beginHead(contentLength, chunked, keepAlive).writeTo(out);
+    }
+
+    private ResponseSerializer beginHead(String contentLength, boolean chunked, boolean keepAlive) {
+        ResponseSerializer head = ResponseSerializer.begin(statusCode, reasonPhrase);
+        // 应用没有自行设置Date时使用缓存的当前日期
+        if (!containsHeader("Date")) {
+            head.date();
+        }
+        // Content-Length、Transfer-Encoding和Connection由连接层统一生成
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String name = header.getKey();
+            if (!"Content-Length".equalsIgnoreCase(name) && !"Connection".equalsIgnoreCase(name)
+                    && !"Transfer-Encoding".equalsIgnoreCase(name)) {
+                head.header(name, header.getValue());
+            }
+        }
+        writeCookies(head);
+        // 没有响应体的状态码不能带Content-Length或Transfer-Encoding（RFC 7230 3.3.2）
+        if (!hasNoBody(statusCode)) {
+            if (chunked) {
+                head.chunked();
+            } else if (contentLength != null) {
+                head.header("Content-Length", contentLength);
+            }
+        }
+        return head.connection(keepAlive);
+    }
+
+    /**
+     * 1xx、204和304响应不能有响应体
+     */
+    private static boolean hasNoBody(int statusCode) {
+        return statusCode / 100 == 1 || statusCode == SC_NO_CONTENT || statusCode == SC_NOT_MODIFIED;
+    }
+
+    /**
+     * 写出addCookie添加的Cookie（只有名称和值）
+     */
+    protected void writeCookies(ResponseSerializer head) {
+        for (javax.servlet.http.Cookie cookie : cookies) {
+            head.header("Set-Cookie", cookie.getName() + "=" + cookie.getValue());
+        }
+    }
+
+    /**
+     * 响应发送完毕后归还缓冲区，之后不能再读取响应体
+     */
+    public void release() {
+        buffer.release();
+    }
+
+    private void closeFileBody() {
+        if (fileBody != null) {
+            try {
+                fileBody.close();
+            } catch (IOException e) {
+                // 尚未开始发送，忽略
+            }
+            fileBody = null;
+        }
     }
 
     public List<javax.servlet.http.Cookie> getCookies() {
@@ -321,7 +718,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
     }
 
     public Map<String, String> getHeaderMap() {
-        return new HashMap<>(headers);
+        return new TreeMap<>(headers);
     }
 
     public String getReasonPhrase() {
@@ -332,40 +729,8 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      * 根据状态码获取默认的原因短语
      */
     private String getReasonPhrase(int statusCode) {
-        switch (statusCode) {
-            case 200:
-                return "OK";
-            case 201:
-                return "Created";
-            case 204:
-                return "No Content";
-            case 301:
-                return "Moved Permanently";
-            case 302:
-                return "Found";
-            case 304:
-                return "Not Modified";
-            case 400:
-                return "Bad Request";
-            case 401:
-                return "Unauthorized";
-            case 403:
-                return "Forbidden";
-            case 404:
-                return "Not Found";
-            case 405:
-                return "Method Not Allowed";
-            case 500:
-                return "Internal Server Error";
-            case 501:
-                return "Not Implemented";
-            case 502:
-                return "Bad Gateway";
-            case 503:
-                return "Service Unavailable";
-            default:
-                return "Unknown";
-        }
+        String reasonPhrase = ResponseSerializer.reasonPhrase(statusCode);
+        return reasonPhrase != null ? reasonPhrase : "Unknown";
     }
 
     /**
@@ -390,4 +755,128 @@ public class HttpServletResponseImpl implements HttpServletResponse {
                 "</body>\n" +
                 "</html>";
     }
+
+    /**
+     * 按响应字符编码把字符直接编码进响应缓冲区的Writer
+     * 每次write都立即交给缓冲区，缓冲区大小对Writer和OutputStream同样生效
+     */
+    private class BufferWriter extends Writer {
+        private final CharsetEncoder encoder;
+        private final ByteBuffer encoded = ByteBuffer.allocate(1024);
+        // 上一次write末尾不完整的代理对高位
+        private final CharBuffer pending = CharBuffer.allocate(2);
+
+        BufferWriter(Charset charset) {
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            // 编码器没有消耗的字符留在pending中（例如高位后面又是一个高位）
+            while (pending.position() > 0 && len > 0) {
+                pending.put(cbuf[off++]);
+                len--;
+                pending.flip();
+                encode(pending, false);
+                pending.compact();
+            }
+            CharBuffer in = CharBuffer.wrap(cbuf, off, len);
+            encode(in, false);
+            if (in.hasRemaining()) {
+                pending.put(in.get());
+            }
+        }
+
+        /**
+         * 结束编码，之后可以继续写入新的字符
+         */
+        void finish() throws IOException {
+            pending.flip();
+            encode(pending, true);
+            pending.clear();
+            while (true) {
+                CoderResult result = encoder.flush(encoded);
+                drain();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            encoder.reset();
+        }
+
+        private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(in, encoded, endOfInput);
+                drain();
+                if (result.isUnderflow()) {
+                    return;
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            if (encoded.position() > 0) {
+                writeBody(encoded.array(), 0, encoded.position());
+                encoded.clear();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * 提前提交响应时写出状态行和响应头（含Connection头和Content-Length或Transfer-Encoding: chunked）
+     */
+    @FunctionalInterface
+    public interface HeadWriter {
+        void writeHead(boolean chunked) throws IOException;
+    }
+
+    /**
+     * 写入响应缓冲区的ServletOutputStream，启用流式发送时缓冲区写满即提交
+     */
+    private class BufferOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            writeBody(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeBody(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Servlet显式flush（包括Writer.flush）时提交响应
+            if (connection != null && !holdOutput) {
+                commitAndSend();
+                connection.flush();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("Async IO is not supported");
+        }
+    }
 }
@@ -1,9 +1,14 @@
 package com.webcontainer.stage3;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.servlet.Filter;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -13,17 +18,30 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * 第三阶段：Servlet容器
- * 负责Servlet的生命周期管理（加载、初始化、服务、销毁）
+ * 负责Servlet和Filter的生命周期管理（加载、初始化、服务、销毁）
  */
 public class ServletContainer {
+    private static final FilterRegistrationImpl[] NO_FILTERS = new FilterRegistrationImpl[0];
+
     // Servlet实例缓存（单例模式）
     private final Map<String, Servlet> servletInstances = new ConcurrentHashMap<>();
     // Servlet配置信息
     private final Map<String, ServletConfig> servletConfigs = new HashMap<>();
     // URL模式到Servlet名称的映射
     private final Map<String, String> urlMappings = new HashMap<>();
+    // 由urlMappings和filterMaps编译的路由表，注册时整体替换，请求线程无锁读取
+    private volatile ServletRouter router = ServletRouter.EMPTY;
     // Servlet名称到类名的映射
     private final Map<String, String> servletClasses = new HashMap<>();
+    // 需要在启动时加载的Servlet及其顺序（load-on-startup）
+    private final Map<String, Integer> loadOnStartup = new HashMap<>();
+    // Servlet名称到初始化参数的映射
+    private final Map<String, Map<String, String>> servletInitParams = new HashMap<>();
+    // 按名称注册的Filter
+    private final Map<String, FilterRegistrationImpl> filters = new LinkedHashMap<>();
+    // Filter映射，按生效顺序排列；isMatchAfter=false的映射排在前面
+    private final List<FilterMap> filterMaps = new ArrayList<>();
+    private int matchBeforeCount = 0;
     // ServletContext引用
     private javax.servlet.ServletContext servletContext;
 
@@ -35,10 +53,133 @@ public class ServletContainer {
      * @param urlPattern   URL模式
      */
     public void registerServlet(String servletName, String servletClass, String urlPattern) {
+        registerServlet(servletName, servletClass, urlPattern, -1);
+    }
+
+    /**
+     * 注册Servlet
+     *
+     * @param loadOnStartup 大于等于0时在loadOnStartupServlets中按从小到大的顺序预先初始化，负数表示首次请求时加载
+     */
+    public synchronized void registerServlet(String servletName, String servletClass, String urlPattern,
+            int loadOnStartup) {
+        declareServlet(servletName, servletClass, loadOnStartup, Collections.emptyMap());
+        addServletMapping(urlPattern, servletName);
+    }
+
+    /**
+     * 声明Servlet但不添加URL映射（web.xml中servlet与servlet-mapping分开声明）
+     */
+    public synchronized void declareServlet(String servletName, String servletClass, int loadOnStartup,
+            Map<String, String> initParams) {
         servletClasses.put(servletName, servletClass);
+        servletInitParams.put(servletName, new LinkedHashMap<>(initParams));
+        if (loadOnStartup >= 0) {
+            this.loadOnStartup.put(servletName, loadOnStartup);
+        }
+        System.out.println("声明Servlet: " + servletName + " (" + servletClass + ")");
+    }
+
+    /**
+     * 为已声明的Servlet添加URL映射并重新编译路由表
+     */
+    public synchronized void addServletMapping(String urlPattern, String servletName) {
+        if (!servletClasses.containsKey(servletName)) {
+            throw new IllegalArgumentException("Servlet not declared: " + servletName);
+        }
         urlMappings.put(urlPattern, servletName);
+        router = ServletRouter.compile(urlMappings, filterMaps);
+
+        System.out.println("注册Servlet映射: " + urlPattern + " -> " + servletName);
+    }
+
+    /**
+     * 按类名注册Filter，映射通过返回的注册对象添加
+     *
+     * @return 注册对象；同名Filter已存在时返回null
+     */
+    public synchronized FilterRegistrationImpl registerFilter(String filterName, String filterClass) {
+        return addFilter(new FilterRegistrationImpl(this, filterName, filterClass, null));
+    }
+
+    /**
+     * 注册已创建的Filter实例
+     */
+    public synchronized FilterRegistrationImpl registerFilter(String filterName, Filter filter) {
+        return addFilter(new FilterRegistrationImpl(this, filterName, filter.getClass().getName(), filter));
+    }
+
+    private FilterRegistrationImpl addFilter(FilterRegistrationImpl registration) {
+        if (filters.containsKey(registration.getName())) {
+            return null;
+        }
+        filters.put(registration.getName(), registration);
+        System.out.println("注册Filter: " + registration.getName() + " (" + registration.getClassName() + ")");
+        return registration;
+    }
+
+    /**
+     * 添加Filter映射并重新编译路由表，每个Servlet映射的Filter链在此时确定
+     */
+    synchronized void addFilterMapping(FilterMap filterMap, boolean isMatchAfter) {
+        if (isMatchAfter) {
+            filterMaps.add(filterMap);
+        } else {
+            filterMaps.add(matchBeforeCount++, filterMap);
+        }
+        router = ServletRouter.compile(urlMappings, filterMaps);
+
+        String target = filterMap.isUrlMapping() ? filterMap.getUrlPattern() : "servlet:" + filterMap.getServletName();
+        System.out.println("注册Filter映射: " + filterMap.getFilter().getName() + " -> " + target);
+    }
+
+    public synchronized FilterRegistrationImpl getFilterRegistration(String filterName) {
+        return filters.get(filterName);
+    }
+
+    public synchronized Map<String, FilterRegistrationImpl> getFilterRegistrations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(filters));
+    }
 
-        System.out.println("注册Servlet: " + servletName + " (" + servletClass + ") -> " + urlPattern);
+    /**
+     * 创建并初始化所有Filter（应用启动时调用）
+     *
+     * @return 成功初始化的Filter数量
+     */
+    public synchronized int initFilters() {
+        int initialized = 0;
+        for (FilterRegistrationImpl registration : filters.values()) {
+            try {
+                registration.init(servletContext);
+                initialized++;
+            } catch (Exception e) {
+                // 未初始化的Filter在请求经过时报错，而不是被静默跳过
+                System.err.println("初始化Filter失败: " + registration.getName() + " - " + e.getMessage());
+            }
+        }
+        return initialized;
+    }
+
+    /**
+     * 实例化并初始化标记了load-on-startup的Servlet，避免首个请求承担类加载和init()的开销
+     *
+     * @return 成功初始化的Servlet数量
+     */
+    public int loadOnStartupServlets() {
+        List<Map.Entry<String, Integer>> servlets = new ArrayList<>(loadOnStartup.entrySet());
+        servlets.sort(Map.Entry.comparingByValue());
+
+        int loaded = 0;
+        for (Map.Entry<String, Integer> entry : servlets) {
+            try {
+                getServletInstance(entry.getKey());
+                loaded++;
+            } catch (Exception e) {
+                // 初始化失败的Servlet在首次请求时重试
+                System.err.println("启动时加载Servlet失败: " + entry.getKey() + " - " + e.getMessage());
+            }
+        }
+        return loaded;
     }
 
     /**
@@ -50,15 +191,36 @@ public class ServletContainer {
      */
     public boolean handleRequest(HttpServletRequest request, HttpServletResponse response) {
         String requestURI = request.getRequestURI();
-        String servletName = findServletByURI(requestURI);
+        ServletRouter.Mapping mapping = router.match(requestURI);
 
-        if (servletName == null) {
+        if (mapping == null) {
             return false; // 没有找到对应的Servlet
         }
+        return service(mapping.getServletName(), mapping.selectFilters(requestURI), request, response);
+    }
+
+    /**
+     * 交给指定的Servlet处理（调用方已完成路由）
+     *
+     * @return true如果请求已被处理
+     */
+    public boolean service(String servletName, HttpServletRequest request, HttpServletResponse response) {
+        return service(servletName, NO_FILTERS, request, response);
+    }
 
+    /**
+     * 依次经过路由时确定的Filter链，再交给指定的Servlet处理
+     *
+     * @return true如果请求已被处理
+     */
+    public boolean service(String servletName, FilterRegistrationImpl[] filterChain, HttpServletRequest request,
+            HttpServletResponse response) {
+        String requestURI = request.getRequestURI();
         try {
             Servlet servlet = getServletInstance(servletName);
-            if (servlet instanceof HttpServlet) {
+            if (filterChain.length > 0) {
+                new ApplicationFilterChain(filterChain, servlet).doFilter(request, response);
+            } else if (servlet instanceof HttpServlet) {
                 HttpServlet httpServlet = (HttpServlet) servlet;
                 httpServlet.service(request, response);
             } else {
@@ -83,38 +245,10 @@ public class ServletContainer {
     }
 
     /**
-     * 根据URI找到对应的Servlet名称
+     * 获取当前的路由表
      */
-    private String findServletByURI(String uri) {
-        // 精确匹配
-        String servletName = urlMappings.get(uri);
-        if (servletName != null) {
-            return servletName;
-        }
-
-        // 前缀匹配（例如 /api/* )
-        for (Map.Entry<String, String> entry : urlMappings.entrySet()) {
-            String pattern = entry.getKey();
-            if (pattern.endsWith("/*")) {
-                String prefix = pattern.substring(0, pattern.length() - 2);
-                if (uri.startsWith(prefix)) {
-                    return entry.getValue();
-                }
-            }
-        }
-
-        // 后缀匹配（例如 *.jsp）
-        for (Map.Entry<String, String> entry : urlMappings.entrySet()) {
-            String pattern = entry.getKey();
-            if (pattern.startsWith("*.")) {
-                String suffix = pattern.substring(1);
-                if (uri.endsWith(suffix)) {
-                    return entry.getValue();
-                }
-            }
-        }
-
-        return null;
+    public ServletRouter getRouter() {
+        return router;
     }
 
     /**
@@ -145,12 +279,15 @@ public class ServletContainer {
             throw new ServletException("Servlet class not found: " + servletName);
         }
 
-        // 使用反射创建实例
-        Class<?> servletClass = Class.forName(className);
+        // 使用反射创建实例，优先使用应用的类加载器，Servlet类可以来自Web应用自己的目录
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        Class<?> servletClass = Class.forName(className, true,
+                loader != null ? loader : ServletContainer.class.getClassLoader());
         Servlet servlet = (Servlet) servletClass.getDeclaredConstructor().newInstance();
 
         // 创建ServletConfig
-        ServletConfig config = new SimpleServletConfig(servletName, servletContext);
+        ServletConfig config = new SimpleServletConfig(servletName, servletContext,
+                servletInitParams.getOrDefault(servletName, Collections.emptyMap()));
         servletConfigs.put(servletName, config);
 
         // 初始化Servlet
@@ -174,12 +311,21 @@ public class ServletContainer {
         }
         servletInstances.clear();
         servletConfigs.clear();
+
+        // Filter在所有Servlet销毁之后销毁
+        for (FilterRegistrationImpl registration : filters.values()) {
+            try {
+                registration.destroy();
+            } catch (Exception e) {
+                System.err.println("销毁Filter时发生错误: " + registration.getName() + " - " + e.getMessage());
+            }
+        }
     }
 
     /**
      * 获取所有已注册的URL映射
      */
-    public Map<String, String> getUrlMappings() {
+    public synchronized Map<String, String> getUrlMappings() {
         return new HashMap<>(urlMappings);
     }
 
@@ -196,10 +342,13 @@ public class ServletContainer {
     private static class SimpleServletConfig implements ServletConfig {
         private final String servletName;
         private final javax.servlet.ServletContext servletContext;
+        private final Map<String, String> initParams;
 
-        public SimpleServletConfig(String servletName, javax.servlet.ServletContext servletContext) {
+        public SimpleServletConfig(String servletName, javax.servlet.ServletContext servletContext,
+                Map<String, String> initParams) {
             this.servletName = servletName;
             this.servletContext = servletContext;
+            this.initParams = initParams;
         }
 
         @Override
@@ -214,12 +363,12 @@ public class ServletContainer {
 
         @Override
         public String getInitParameter(String name) {
-            return null; // 简化实现
+            return initParams.get(name);
         }
 
         @Override
         public java.util.Enumeration<String> getInitParameterNames() {
-            return java.util.Collections.emptyEnumeration();
+            return java.util.Collections.enumeration(initParams.keySet());
         }
     }
 }
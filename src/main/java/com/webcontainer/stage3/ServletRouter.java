@@ -0,0 +1,460 @@
+package com.webcontainer.stage3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译后的Servlet URL路由表（不可变）
+ * 按Servlet规范的优先级匹配：精确匹配 > 最长路径前缀（/xxx/*） > 扩展名（*.xxx） > 默认Servlet（/）。
+ * 前缀模式按路径段组织成字典树，匹配过程不截取子串、不分配对象；
+ * 注册新的映射时整体重新编译，已发布的路由表不会被修改。
+ * 编译时同时为每个Servlet映射确定Filter链：与请求路径无关的链直接算好，
+ * 只有Filter模式比Servlet模式更细（例如/api/*下的/api/admin/*）时才与路径有关：这些模式的每种匹配组合对应的链
+ * 也在编译时算好，路由解析时只逐个判断这几个模式（不分配对象）得到位掩码，再按掩码取出现成的链。
+ * 没有Servlet匹配的请求作为静态资源处理，相当于名为"default"的默认Servlet，它的Filter链同样在编译时确定
+ */
+public final class ServletRouter {
+
+    private static final FilterRegistrationImpl[] NO_FILTERS = new FilterRegistrationImpl[0];
+    // 静态资源默认Servlet的名称，filter-mapping可以按这个名称只作用于静态资源
+    public static final String DEFAULT_SERVLET_NAME = "default";
+
+    // Filter映射对某个Servlet映射的适用情况
+    private static final int NEVER = 0;
+    private static final int ALWAYS = 1;
+    private static final int DEPENDS_ON_PATH = 2;
+    // 与路径有关的Filter模式不超过该数量时预先算好所有匹配组合的链（最多256条）
+    private static final int MAX_PRECOMPILED_PATTERNS = 8;
+
+    public static final ServletRouter EMPTY = compile(Collections.emptyMap());
+
+    public enum MatchType {
+        EXACT, PREFIX, EXTENSION, DEFAULT
+    }
+
+    private final Map<String, Mapping> exactMappings;
+    private final Node prefixRoot;
+    private final String[] extensions;
+    private final Mapping[] extensionMappings;
+    private final Mapping defaultMapping;
+    // 没有映射匹配时的静态资源映射，只用于确定Filter链
+    private final Mapping staticMapping = new Mapping("/", DEFAULT_SERVLET_NAME, MatchType.DEFAULT, -1);
+
+    private ServletRouter(Map<String, Mapping> exactMappings, Node prefixRoot, String[] extensions,
+            Mapping[] extensionMappings, Mapping defaultMapping) {
+        this.exactMappings = exactMappings;
+        this.prefixRoot = prefixRoot;
+        this.extensions = extensions;
+        this.extensionMappings = extensionMappings;
+        this.defaultMapping = defaultMapping;
+    }
+
+    /**
+     * 编译URL模式到Servlet名称的映射
+     */
+    public static ServletRouter compile(Map<String, String> urlMappings) {
+        return compile(urlMappings, Collections.emptyList());
+    }
+
+    /**
+     * 编译URL映射，并按Filter映射（已按生效顺序排列）为每个Servlet映射预先确定Filter链
+     */
+    static ServletRouter compile(Map<String, String> urlMappings, List<FilterMap> filterMaps) {
+        Map<String, Mapping> exact = new HashMap<>();
+        Node root = new Node();
+        List<String> extensions = new ArrayList<>();
+        List<Mapping> extensionMappings = new ArrayList<>();
+        Mapping defaultMapping = null;
+
+        for (Map.Entry<String, String> entry : urlMappings.entrySet()) {
+            String pattern = entry.getKey();
+            String servletName = entry.getValue();
+
+            if (pattern.endsWith("/*")) {
+                String prefix = pattern.substring(0, pattern.length() - 2);
+                Node node = root;
+                for (String segment : segments(prefix)) {
+                    node = node.addChild(segment);
+                }
+                node.mapping = new Mapping(pattern, servletName, MatchType.PREFIX, prefix.length());
+            } else if (pattern.startsWith("*.")) {
+                extensions.add(pattern.substring(1));
+                extensionMappings.add(new Mapping(pattern, servletName, MatchType.EXTENSION, -1));
+            } else if ("/".equals(pattern)) {
+                defaultMapping = new Mapping(pattern, servletName, MatchType.DEFAULT, -1);
+            } else {
+                // 空字符串模式只匹配应用根路径
+                String path = pattern.isEmpty() ? "/" : pattern;
+                exact.put(path, new Mapping(pattern, servletName, MatchType.EXACT, pattern.length()));
+            }
+        }
+
+        ServletRouter router = new ServletRouter(exact, root, extensions.toArray(new String[0]),
+                extensionMappings.toArray(new Mapping[0]), defaultMapping);
+        if (!filterMaps.isEmpty()) {
+            for (Mapping mapping : router.getMappings()) {
+                mapping.compileFilters(filterMaps);
+            }
+            router.staticMapping.compileFilters(filterMaps);
+        }
+        return router;
+    }
+
+    /**
+     * 所有Servlet映射
+     */
+    public List<Mapping> getMappings() {
+        List<Mapping> mappings = new ArrayList<>(exactMappings.values());
+        prefixRoot.collect(mappings);
+        mappings.addAll(Arrays.asList(extensionMappings));
+        if (defaultMapping != null) {
+            mappings.add(defaultMapping);
+        }
+        return mappings;
+    }
+
+    /**
+     * match返回null（作为静态资源处理）时使用的映射，它的selectFilters给出静态资源请求经过的Filter
+     */
+    public Mapping getStaticMapping() {
+        return staticMapping;
+    }
+
+    /**
+     * 查找处理该路径的映射
+     *
+     * @param path 请求路径（不含查询字符串）
+     * @return 匹配的映射，没有匹配时返回null
+     */
+    public Mapping match(String path) {
+        Mapping mapping = exactMappings.get(path);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        mapping = matchPrefix(path);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        mapping = matchExtension(path);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        return defaultMapping;
+    }
+
+    /**
+     * 沿路径段在字典树中向下查找，记录途经的最后一个（即最长的）前缀映射
+     */
+    private Mapping matchPrefix(String path) {
+        Mapping best = prefixRoot.mapping;
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return best;
+        }
+
+        Node node = prefixRoot;
+        int start = 1;
+        int length = path.length();
+        while (true) {
+            int slash = path.indexOf('/', start);
+            int end = slash < 0 ? length : slash;
+            node = node.findChild(path, start, end);
+            if (node == null) {
+                break;
+            }
+            if (node.mapping != null) {
+                best = node.mapping;
+            }
+            if (slash < 0) {
+                break;
+            }
+            start = slash + 1;
+        }
+        return best;
+    }
+
+    /**
+     * 扩展名只取最后一个路径段中最后一个点之后的部分
+     */
+    private Mapping matchExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return null;
+        }
+        int length = path.length() - dot;
+        for (int i = 0; i < extensions.length; i++) {
+            String extension = extensions[i];
+            if (extension.length() == length && path.regionMatches(dot, extension, 0, length)) {
+                return extensionMappings[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * URL模式是否匹配请求路径（Servlet规范12.2，用于Filter映射）
+     */
+    static boolean matches(String pattern, String path) {
+        if (pattern.endsWith("/*")) {
+            int length = pattern.length() - 2;
+            return path.regionMatches(0, pattern, 0, length)
+                    && (path.length() == length || path.charAt(length) == '/');
+        }
+        if (pattern.startsWith("*.")) {
+            int dot = path.lastIndexOf('.');
+            int length = pattern.length() - 1;
+            return dot > path.lastIndexOf('/') && path.length() - dot == length
+                    && path.regionMatches(dot, pattern, 1, length);
+        }
+        return pattern.equals(path) || (pattern.isEmpty() && "/".equals(path));
+    }
+
+    /**
+     * 按路径段判断前缀：/api 覆盖 /api 和 /api/x，不覆盖 /apix
+     */
+    private static boolean covers(String prefix, String path) {
+        return path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/');
+    }
+
+    /**
+     * 判断URL模式的Filter对发往某个Servlet映射的请求是否总是、从不或视路径而定地生效
+     */
+    private static int applicability(String filterPattern, Mapping mapping) {
+        if ("/*".equals(filterPattern)) {
+            return ALWAYS;
+        }
+        String servletPattern = mapping.pattern;
+        switch (mapping.matchType) {
+            case EXACT:
+                return matches(filterPattern, servletPattern.isEmpty() ? "/" : servletPattern) ? ALWAYS : NEVER;
+            case PREFIX:
+                String servletPrefix = servletPattern.substring(0, servletPattern.length() - 2);
+                if (filterPattern.endsWith("/*")) {
+                    String filterPrefix = filterPattern.substring(0, filterPattern.length() - 2);
+                    if (covers(filterPrefix, servletPrefix)) {
+                        return ALWAYS;
+                    }
+                    return covers(servletPrefix, filterPrefix) ? DEPENDS_ON_PATH : NEVER;
+                }
+                if (filterPattern.startsWith("*.")) {
+                    return DEPENDS_ON_PATH;
+                }
+                return covers(servletPrefix, filterPattern) ? DEPENDS_ON_PATH : NEVER;
+            case EXTENSION:
+                if (filterPattern.startsWith("*.")) {
+                    return filterPattern.equals(servletPattern) ? ALWAYS : NEVER;
+                }
+                return DEPENDS_ON_PATH;
+            default:
+                return DEPENDS_ON_PATH;
+        }
+    }
+
+    private static FilterRegistrationImpl[] distinct(List<FilterRegistrationImpl> filters) {
+        List<FilterRegistrationImpl> result = new ArrayList<>(filters.size());
+        for (FilterRegistrationImpl filter : filters) {
+            if (!result.contains(filter)) {
+                result.add(filter);
+            }
+        }
+        return result.isEmpty() ? NO_FILTERS : result.toArray(NO_FILTERS);
+    }
+
+    private static List<String> segments(String prefix) {
+        if (prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 前缀以/开头，第一个元素为空串
+        List<String> segments = new ArrayList<>(Arrays.asList(prefix.split("/", -1)));
+        segments.remove(0);
+        return segments;
+    }
+
+    /**
+     * 一条编译后的URL映射
+     */
+    public static final class Mapping {
+        private final String pattern;
+        private final String servletName;
+        private final MatchType matchType;
+        // 精确匹配和前缀匹配时servletPath的长度，例如 /api/* 为4
+        private final int servletPathLength;
+        // 与请求路径无关的Filter链；为null时需要按路径从候选中挑选
+        private FilterRegistrationImpl[] filters = NO_FILTERS;
+        private FilterRegistrationImpl[] candidateFilters;
+        // 候选Filter的URL模式，null表示总是生效
+        private String[] candidatePatterns;
+        // 与路径有关的不同URL模式，以及按它们的匹配位掩码索引的Filter链；模式太多时chainsByMask为null
+        private String[] pathPatterns;
+        private FilterRegistrationImpl[][] chainsByMask;
+
+        Mapping(String pattern, String servletName, MatchType matchType, int servletPathLength) {
+            this.pattern = pattern;
+            this.servletName = servletName;
+            this.matchType = matchType;
+            this.servletPathLength = servletPathLength;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getServletName() {
+            return servletName;
+        }
+
+        public MatchType getMatchType() {
+            return matchType;
+        }
+
+        public int getServletPathLength() {
+            return servletPathLength;
+        }
+
+        /**
+         * 发往该映射的请求需要依次经过的Filter
+         *
+         * @param path 应用内的请求路径
+         */
+        public FilterRegistrationImpl[] selectFilters(String path) {
+            if (filters != null) {
+                return filters;
+            }
+            if (chainsByMask != null) {
+                int mask = 0;
+                for (int i = 0; i < pathPatterns.length; i++) {
+                    if (matches(pathPatterns[i], path)) {
+                        mask |= 1 << i;
+                    }
+                }
+                return chainsByMask[mask];
+            }
+            List<FilterRegistrationImpl> selected = new ArrayList<>(candidateFilters.length);
+            for (int i = 0; i < candidateFilters.length; i++) {
+                if (candidatePatterns[i] == null || matches(candidatePatterns[i], path)) {
+                    selected.add(candidateFilters[i]);
+                }
+            }
+            return distinct(selected);
+        }
+
+        /**
+         * 规范顺序：先按声明顺序应用URL模式映射，再应用Servlet名称映射
+         */
+        private void compileFilters(List<FilterMap> filterMaps) {
+            List<FilterRegistrationImpl> candidates = new ArrayList<>();
+            List<String> patterns = new ArrayList<>();
+            boolean dependsOnPath = false;
+
+            for (FilterMap filterMap : filterMaps) {
+                if (!filterMap.isUrlMapping()) {
+                    continue;
+                }
+                int applicability = applicability(filterMap.getUrlPattern(), this);
+                if (applicability == NEVER) {
+                    continue;
+                }
+                candidates.add(filterMap.getFilter());
+                patterns.add(applicability == ALWAYS ? null : filterMap.getUrlPattern());
+                dependsOnPath |= applicability == DEPENDS_ON_PATH;
+            }
+            for (FilterMap filterMap : filterMaps) {
+                if (!filterMap.isUrlMapping() && ("*".equals(filterMap.getServletName())
+                        || servletName.equals(filterMap.getServletName()))) {
+                    candidates.add(filterMap.getFilter());
+                    patterns.add(null);
+                }
+            }
+
+            if (dependsOnPath) {
+                filters = null;
+                candidateFilters = candidates.toArray(NO_FILTERS);
+                candidatePatterns = patterns.toArray(new String[0]);
+                precompileChains();
+            } else {
+                filters = distinct(candidates);
+            }
+        }
+
+        /**
+         * 为与路径有关的模式的每一种匹配组合算好Filter链
+         */
+        private void precompileChains() {
+            List<String> distinctPatterns = new ArrayList<>();
+            for (String candidatePattern : candidatePatterns) {
+                if (candidatePattern != null && !distinctPatterns.contains(candidatePattern)) {
+                    distinctPatterns.add(candidatePattern);
+                }
+            }
+            if (distinctPatterns.size() > MAX_PRECOMPILED_PATTERNS) {
+                return;
+            }
+            pathPatterns = distinctPatterns.toArray(new String[0]);
+            chainsByMask = new FilterRegistrationImpl[1 << pathPatterns.length][];
+            for (int mask = 0; mask < chainsByMask.length; mask++) {
+                List<FilterRegistrationImpl> selected = new ArrayList<>(candidateFilters.length);
+                for (int i = 0; i < candidateFilters.length; i++) {
+                    if (candidatePatterns[i] == null
+                            || (mask & (1 << distinctPatterns.indexOf(candidatePatterns[i]))) != 0) {
+                        selected.add(candidateFilters[i]);
+                    }
+                }
+                chainsByMask[mask] = distinct(selected);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " -> " + servletName;
+        }
+    }
+
+    /**
+     * 字典树节点，子节点较少，按段线性比较
+     */
+    private static final class Node {
+        private String[] segments = new String[0];
+        private Node[] children = new Node[0];
+        private Mapping mapping;
+
+        Node addChild(String segment) {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].equals(segment)) {
+                    return children[i];
+                }
+            }
+            Node child = new Node();
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            segments[segments.length - 1] = segment;
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        void collect(List<Mapping> mappings) {
+            if (mapping != null) {
+                mappings.add(mapping);
+            }
+            for (Node child : children) {
+                child.collect(mappings);
+            }
+        }
+
+        Node findChild(String path, int start, int end) {
+            int length = end - start;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package com.webcontainer.stage3;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
 import com.webcontainer.stage2.StaticResourceHandler;
 
 /**
@@ -17,11 +19,13 @@ import com.webcontainer.stage2.StaticResourceHandler;
 public class StandardWebServer {
     private static final int PORT = 8080;
     private static final String WEB_ROOT = "webapps/ROOT";
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
 
     private ServerSocket serverSocket;
     private boolean running = false;
     private StaticResourceHandler staticHandler;
     private ServletContainer servletContainer;
+    private final KeepAlivePolicy keepAlivePolicy = KeepAlivePolicy.fromSystemProperties();
 
     public StandardWebServer() {
         this.staticHandler = new StaticResourceHandler(WEB_ROOT);
@@ -87,6 +91,7 @@ public class StandardWebServer {
         if (serverSocket != null) {
             serverSocket.close();
         }
+        System.out.println("静态资源缓存: " + staticHandler.getCacheStats());
         System.out.println("标准Servlet Web服务器已停止");
     }
 
@@ -102,24 +107,52 @@ public class StandardWebServer {
 
         @Override
         public void run() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    OutputStream outputStream = clientSocket.getOutputStream()) {
-
-                // 解析HTTP请求
-                HttpServletRequestImpl request = parseRequest(reader);
-                HttpServletResponseImpl response = new HttpServletResponseImpl();
-
-                // 首先尝试Servlet处理
-                boolean handledByServlet = servletContainer.handleRequest(request, response);
-
-                if (!handledByServlet) {
-                    // 如果没有Servlet处理，则作为静态资源处理
-                    handleStaticRequest(request, response);
+            try (OutputStream outputStream = new BufferedOutputStream(
+                    clientSocket.getOutputStream(), OUTPUT_BUFFER_SIZE)) {
+
+                // 空闲超时：持久连接上超过该时间没有新请求则关闭
+                clientSocket.setSoTimeout(keepAlivePolicy.getBlockingIdleTimeoutMillis());
+
+                // 请求体按需从连接读取，客户端等待100 Continue时由同一输出流发送
+                HttpInputBuffer input = new HttpInputBuffer(clientSocket.getInputStream(), outputStream);
+                int requestCount = 0;
+                while (true) {
+                    // 解析HTTP请求（客户端关闭连接时返回null）
+                    HttpServletRequestImpl request = parseRequest(input);
+                    if (request == null) {
+                        break;
+                    }
+                    requestCount++;
+
+                    HttpServletResponseImpl response = new HttpServletResponseImpl();
+
+                    boolean keepAlive = keepAlivePolicy.shouldKeepAlive(request.getProtocol(),
+                            request.getHeader("Connection"), requestCount);
+                    enableStreaming(outputStream, request, response, keepAlive);
+
+                    // 首先尝试Servlet处理
+                    boolean handledByServlet = servletContainer.handleRequest(request, response);
+
+                    if (!handledByServlet) {
+                        // 如果没有Servlet处理，则作为静态资源处理
+                        handleStaticRequest(request, response);
+                    }
+
+                    // 发送响应
+                    keepAlive = sendResponse(outputStream, request, response, keepAlive) && keepAlive;
+
+                    // 流水线请求：客户端已发来后续请求时暂不刷新，相邻响应合并为一次写出
+                    if (!input.hasBufferedInput()) {
+                        outputStream.flush();
+                    }
+
+                    if (!keepAlive) {
+                        break;
+                    }
                 }
 
-                // 发送响应
-                sendResponse(outputStream, response);
-
+            } catch (SocketTimeoutException e) {
+                // 持久连接空闲超时，正常关闭
             } catch (Exception e) {
                 System.err.println("处理请求时发生错误: " + e.getMessage());
                 e.printStackTrace();
@@ -135,30 +168,13 @@ public class StandardWebServer {
         /**
          * 解析HTTP请求
          */
-        private HttpServletRequestImpl parseRequest(BufferedReader reader) throws IOException {
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.trim().isEmpty()) {
-                throw new IOException("无效的HTTP请求");
-            }
-
-            String[] requestParts = requestLine.split(" ");
-            if (requestParts.length != 3) {
-                throw new IOException("无效的请求行格式: " + requestLine);
-            }
-
-            HttpServletRequestImpl request = new HttpServletRequestImpl(
-                    requestParts[0], requestParts[1], requestParts[2]);
-
-            String headerLine;
-            while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
-                int colonIndex = headerLine.indexOf(':');
-                if (colonIndex > 0) {
-                    String headerName = headerLine.substring(0, colonIndex).trim();
-                    String headerValue = headerLine.substring(colonIndex + 1).trim();
-                    request.addHeader(headerName, headerValue);
-                }
+        private HttpServletRequestImpl parseRequest(HttpInputBuffer input) throws IOException {
+            HttpRequestHead head = input.readRequestHead();
+            if (head == null) {
+                return null; // 客户端已关闭连接
             }
-
+            HttpServletRequestImpl request = new HttpServletRequestImpl(head);
+            request.setBody(input.getBody());
             return request;
         }
 
@@ -166,28 +182,47 @@ public class StandardWebServer {
          * 处理静态资源请求
          */
         private void handleStaticRequest(HttpServletRequestImpl request, HttpServletResponseImpl response) {
-            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getRequestURI());
+            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getRequestURI(),
+                    request.getHeader("Accept-Encoding"));
+
+            // 同一URI有压缩和未压缩两种表示，共享缓存必须按Accept-Encoding区分（304响应也要带上）
+            if (resource.isVaryAcceptEncoding()) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+
+            // 校验信息随资源一起缓存；客户端缓存仍然有效时返回304，不发送响应体
+            if (resource.getEtag() != null) {
+                response.setHeader("ETag", resource.getEtag());
+                response.setHeader("Last-Modified", resource.getLastModifiedHeader());
+                response.setHeader("Accept-Ranges", "bytes");
+                if (isConditionalMethod(request.getMethod()) && resource.isNotModified(
+                        request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+                    response.setStatus(304);
+                    System.out.println("静态资源处理: " + request.getRequestURI() + " -> 304 Not Modified");
+                    return;
+                }
+            }
+
+            // 断点续传：Range请求只发送请求的字节区间（206），区间无法满足时返回416
+            if ("GET".equals(request.getMethod())) {
+                resource = resource.selectRange(request.getHeader("Range"), request.getHeader("If-Range"));
+            }
 
             response.setStatus(resource.getStatusCode());
             response.setHeader("Content-Type", resource.getMimeType());
+            if (resource.getContentEncoding() != null) {
+                response.setHeader("Content-Encoding", resource.getContentEncoding());
+            }
+            if (resource.getContentRange() != null) {
+                response.setHeader("Content-Range", resource.getContentRange());
+            }
             response.setHeader("Content-Length", String.valueOf(resource.getContentLength()));
 
-            // 对于文本内容，写入PrintWriter
-            if (resource.getMimeType().startsWith("text/") ||
-                    resource.getMimeType().contains("json") ||
-                    resource.getMimeType().contains("xml")) {
-                try {
-                    response.getWriter().write(new String(resource.getContent()));
-                } catch (IOException e) {
-                    System.err.println("写入响应内容时发生错误: " + e.getMessage());
-                }
+            // 文件字节原样发送，不再经过字符串解码和Writer重新编码
+            if (resource.isFileBacked()) {
+                response.setFileBody(resource.openRegion());
             } else {
-                // 对于二进制文件，需要特殊处理（这里简化为文本处理）
-                try {
-                    response.getWriter().write(new String(resource.getContent()));
-                } catch (IOException e) {
-                    System.err.println("写入二进制响应内容时发生错误: " + e.getMessage());
-                }
+                response.setBinaryBody(resource.getContent());
             }
 
             System.out.println("静态资源处理: " + request.getRequestURI() + " -> " +
@@ -195,34 +230,33 @@ public class StandardWebServer {
         }
 
         /**
-         * 发送HTTP响应
+         * 只有GET和HEAD请求按If-None-Match/If-Modified-Since返回304
          */
-        private void sendResponse(OutputStream outputStream, HttpServletResponseImpl response) throws IOException {
-            PrintWriter writer = new PrintWriter(outputStream);
-
-            // 发送状态行
-            writer.println("HTTP/1.1 " + response.getStatus() + " " + response.getReasonPhrase());
-
-            // 发送响应头
-            for (String headerName : response.getHeaderNames()) {
-                writer.println(headerName + ": " + response.getHeader(headerName));
-            }
-
-            // 发送Cookie
-            for (javax.servlet.http.Cookie cookie : response.getCookies()) {
-                writer.println("Set-Cookie: " + cookie.getName() + "=" + cookie.getValue());
-            }
+        private boolean isConditionalMethod(String method) {
+            return "GET".equals(method) || "HEAD".equals(method);
+        }
 
-            // 发送空行
-            writer.println();
+        /**
+         * 发送HTTP响应（状态行、响应头和响应体由响应对象统一序列化）
+         * 响应只写入缓冲输出流，由连接循环决定何时刷新
+         *
+         * @return false表示响应体不完整，连接不能再复用
+         */
+        private boolean sendResponse(OutputStream outputStream, HttpServletRequestImpl request,
+                HttpServletResponseImpl response, boolean keepAlive) throws IOException {
+            return response.send(outputStream, "HEAD".equals(request.getMethod()), keepAlive);
+        }
 
-            // 发送响应体
-            String content = response.getContent();
-            if (content != null && !content.isEmpty()) {
-                writer.print(content);
+        /**
+         * HTTP/1.1的响应在缓冲区写满或Servlet调用flushBuffer时提前提交，没有声明Content-Length时分块发送；
+         * HEAD请求和HTTP/1.0仍然缓冲整个响应体
+         */
+        private void enableStreaming(OutputStream outputStream, HttpServletRequestImpl request,
+                HttpServletResponseImpl response, boolean keepAlive) {
+            if ("HTTP/1.1".equals(request.getProtocol()) && !"HEAD".equals(request.getMethod())) {
+                response.setStreamingOutput(outputStream, chunked -> response.writeHead(outputStream,
+                        response.getHeader("Content-Length"), chunked, keepAlive));
             }
-
-            writer.flush();
         }
     }
 
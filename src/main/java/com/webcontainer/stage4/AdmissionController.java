@@ -0,0 +1,102 @@
+package com.webcontainer.stage4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 准入控制器
+ * 工作线程池饱和时不再静默丢弃连接，而是在接收线程上直接返回预先编码好的
+ * 503 Service Unavailable（带Retry-After）并关闭连接，客户端可以退避重试
+ */
+public class AdmissionController {
+    public static final String RETRY_AFTER_PROPERTY = "webcontainer.overload.retryAfterSeconds";
+
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    private final ThreadPoolRequestProcessor processor;
+    private final int retryAfterSeconds;
+    // 启动时编码一次，拒绝路径上不再分配和格式化
+    private final byte[] serviceUnavailableResponse;
+
+    public AdmissionController(ThreadPoolRequestProcessor processor) {
+        this(processor, Integer.getInteger(RETRY_AFTER_PROPERTY, DEFAULT_RETRY_AFTER_SECONDS));
+    }
+
+    public AdmissionController(ThreadPoolRequestProcessor processor, int retryAfterSeconds) {
+        this.processor = processor;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.serviceUnavailableResponse = encodeServiceUnavailable(retryAfterSeconds);
+    }
+
+    private static byte[] encodeServiceUnavailable(int retryAfterSeconds) {
+        byte[] body = ("<h1>503 - Service Unavailable</h1><p>服务器繁忙，请在 " + retryAfterSeconds
+                + " 秒后重试</p>").getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 503 Service Unavailable\r\n"
+                + "Content-Type: text/html; charset=UTF-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Retry-After: " + retryAfterSeconds + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] response = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    /**
+     * 提交一个连接的处理任务；线程池拒绝或任务排队过久被丢弃时返回503并关闭连接
+     *
+     * @return 是否被接受
+     */
+    public boolean admit(Socket clientSocket, Runnable handler) {
+        return processor.submit(handler, () -> reject(clientSocket));
+    }
+
+    /**
+     * 提交任务，被拒绝或丢弃时执行onRejected（见ThreadPoolRequestProcessor.submit）
+     */
+    public boolean admit(Runnable task, Runnable onRejected) {
+        return processor.submit(task, onRejected);
+    }
+
+    /**
+     * 向连接写出503响应并关闭
+     */
+    public void reject(Socket clientSocket) {
+        try {
+            OutputStream out = clientSocket.getOutputStream();
+            out.write(serviceUnavailableResponse);
+            out.flush();
+            // 先半关闭输出，让客户端读到完整响应
+            clientSocket.shutdownOutput();
+        } catch (IOException e) {
+            // 客户端已断开，忽略
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                System.err.println("关闭客户端连接时发生错误: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 503响应的只读缓冲区（供NIO连接直接写出，每次调用返回独立的读位置）
+     */
+    public ByteBuffer serviceUnavailableResponse() {
+        return ByteBuffer.wrap(serviceUnavailableResponse).asReadOnlyBuffer();
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public ThreadPoolRequestProcessor getProcessor() {
+        return processor;
+    }
+}
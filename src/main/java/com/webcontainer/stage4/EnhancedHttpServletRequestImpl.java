@@ -2,6 +2,7 @@ package com.webcontainer.stage4;
 
 import javax.servlet.http.HttpSession;
 
+import com.webcontainer.http.HttpRequestHead;
 import com.webcontainer.stage3.HttpServletRequestImpl;
 
 /**
@@ -20,6 +21,13 @@ public class EnhancedHttpServletRequestImpl extends HttpServletRequestImpl {
         this.response = response;
     }
 
+    public EnhancedHttpServletRequestImpl(HttpRequestHead head, SessionManager sessionManager,
+            EnhancedHttpServletResponseImpl response) {
+        super(head);
+        this.sessionManager = sessionManager;
+        this.response = response;
+    }
+
     @Override
     public HttpSession getSession(boolean create) {
         return sessionManager.getSession(this, response, create);
@@ -1,5 +1,6 @@
 package com.webcontainer.stage4;
 
+import com.webcontainer.http.ResponseSerializer;
 import com.webcontainer.stage3.HttpServletResponseImpl;
 
 /**
@@ -42,4 +43,9 @@ public class EnhancedHttpServletResponseImpl extends HttpServletResponseImpl {
 
         addHeader("Set-Cookie", cookieHeader.toString());
     }
+
+    @Override
+    protected void writeCookies(ResponseSerializer head) {
+        // Cookie在addCookie时已经作为完整的Set-Cookie响应头加入
+    }
 }
@@ -1,13 +1,15 @@
 package com.webcontainer.stage4;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
 import com.webcontainer.stage2.StaticResourceHandler;
 import com.webcontainer.stage3.ServletContainer;
 
@@ -18,6 +20,7 @@ import com.webcontainer.stage3.ServletContainer;
 public class EnhancedWebServer {
     private static final int PORT = 8080;
     private static final String WEB_ROOT = "webapps/ROOT";
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
 
     // 线程池配置
     private static final int CORE_POOL_SIZE = 10;
@@ -28,14 +31,17 @@ public class EnhancedWebServer {
     private boolean running = false;
     private StaticResourceHandler staticHandler;
     private ServletContainer servletContainer;
+    private final KeepAlivePolicy keepAlivePolicy = KeepAlivePolicy.fromSystemProperties();
     private SessionManager sessionManager;
     private ThreadPoolRequestProcessor requestProcessor;
+    private AdmissionController admissionController;
 
     public EnhancedWebServer() {
         this.staticHandler = new StaticResourceHandler(WEB_ROOT);
         this.sessionManager = new SessionManager(null); // 简化实现，ServletContext暂为null
         this.servletContainer = new ServletContainer();
         this.requestProcessor = new ThreadPoolRequestProcessor(CORE_POOL_SIZE, MAX_POOL_SIZE, QUEUE_CAPACITY);
+        this.admissionController = new AdmissionController(requestProcessor);
 
         // 初始化Servlet映射
         initServletMappings();
@@ -92,8 +98,8 @@ public class EnhancedWebServer {
         while (running) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                // 使用线程池处理请求
-                requestProcessor.submit(new EnhancedRequestHandler(clientSocket));
+                // 使用线程池处理请求，线程池饱和时直接返回503
+                admissionController.admit(clientSocket, new EnhancedRequestHandler(clientSocket));
             } catch (IOException e) {
                 if (running) {
                     System.err.println("接收连接时发生错误: " + e.getMessage());
@@ -117,6 +123,7 @@ public class EnhancedWebServer {
         if (serverSocket != null) {
             serverSocket.close();
         }
+        System.out.println("静态资源缓存: " + staticHandler.getCacheStats());
         System.out.println("第四阶段增强Web服务器已停止");
     }
 
@@ -132,24 +139,54 @@ public class EnhancedWebServer {
 
         @Override
         public void run() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    OutputStream outputStream = clientSocket.getOutputStream()) {
-
-                // 解析HTTP请求
-                EnhancedHttpServletRequestImpl request = parseRequest(reader);
-                EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
-
-                // 首先尝试Servlet处理
-                boolean handledByServlet = servletContainer.handleRequest(request, response);
-
-                if (!handledByServlet) {
-                    // 如果没有Servlet处理，则作为静态资源处理
-                    handleStaticRequest(request, response);
+            try (OutputStream outputStream = new BufferedOutputStream(
+                    clientSocket.getOutputStream(), OUTPUT_BUFFER_SIZE)) {
+
+                // 空闲超时：持久连接上超过该时间没有新请求则关闭
+                clientSocket.setSoTimeout(keepAlivePolicy.getBlockingIdleTimeoutMillis());
+
+                // 请求体按需从连接读取，客户端等待100 Continue时由同一输出流发送
+                HttpInputBuffer input = new HttpInputBuffer(clientSocket.getInputStream(), outputStream);
+                int requestCount = 0;
+                while (true) {
+                    // 解析HTTP请求（客户端关闭连接时返回null），会话Cookie写入同一个响应对象
+                    EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
+                    EnhancedHttpServletRequestImpl request = parseRequest(input, response);
+                    if (request == null) {
+                        break;
+                    }
+                    requestCount++;
+                    long requestStart = System.nanoTime();
+
+                    // 线程池繁忙时不保持连接：空闲的持久连接会一直占用工作线程，排队的新连接只能等待或被丢弃
+                    boolean keepAlive = keepAlivePolicy.shouldKeepAlive(request.getProtocol(),
+                            request.getHeader("Connection"), requestCount) && !requestProcessor.isBusy();
+                    enableStreaming(outputStream, request, response, keepAlive);
+
+                    // 首先尝试Servlet处理
+                    boolean handledByServlet = servletContainer.handleRequest(request, response);
+
+                    if (!handledByServlet) {
+                        // 如果没有Servlet处理，则作为静态资源处理
+                        handleStaticRequest(request, response);
+                    }
+
+                    // 发送响应
+                    keepAlive = sendResponse(outputStream, request, response, keepAlive) && keepAlive;
+                    requestProcessor.recordRequestLatency(System.nanoTime() - requestStart);
+
+                    // 流水线请求：客户端已发来后续请求时暂不刷新，相邻响应合并为一次写出
+                    if (!input.hasBufferedInput()) {
+                        outputStream.flush();
+                    }
+
+                    if (!keepAlive) {
+                        break;
+                    }
                 }
 
-                // 发送响应
-                sendResponse(outputStream, response);
-
+            } catch (SocketTimeoutException e) {
+                // 持久连接空闲超时，正常关闭
             } catch (Exception e) {
                 System.err.println("处理请求时发生错误: " + e.getMessage());
                 e.printStackTrace();
@@ -165,31 +202,15 @@ public class EnhancedWebServer {
         /**
          * 解析HTTP请求
          */
-        private EnhancedHttpServletRequestImpl parseRequest(BufferedReader reader) throws IOException {
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.trim().isEmpty()) {
-                throw new IOException("无效的HTTP请求");
-            }
-
-            String[] requestParts = requestLine.split(" ");
-            if (requestParts.length != 3) {
-                throw new IOException("无效的请求行格式: " + requestLine);
-            }
-
-            EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
-            EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl(
-                    requestParts[0], requestParts[1], requestParts[2], sessionManager, response);
-
-            String headerLine;
-            while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
-                int colonIndex = headerLine.indexOf(':');
-                if (colonIndex > 0) {
-                    String headerName = headerLine.substring(0, colonIndex).trim();
-                    String headerValue = headerLine.substring(colonIndex + 1).trim();
-                    request.addHeader(headerName, headerValue);
-                }
+        private EnhancedHttpServletRequestImpl parseRequest(HttpInputBuffer input,
+                EnhancedHttpServletResponseImpl response) throws IOException {
+            HttpRequestHead head = input.readRequestHead();
+            if (head == null) {
+                return null; // 客户端已关闭连接
             }
-
+            EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl(head, sessionManager,
+                    response);
+            request.setBody(input.getBody());
             return request;
         }
 
@@ -198,16 +219,47 @@ public class EnhancedWebServer {
          */
         private void handleStaticRequest(EnhancedHttpServletRequestImpl request,
                 EnhancedHttpServletResponseImpl response) {
-            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getRequestURI());
+            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getRequestURI(),
+                    request.getHeader("Accept-Encoding"));
+
+            // 同一URI有压缩和未压缩两种表示，共享缓存必须按Accept-Encoding区分（304响应也要带上）
+            if (resource.isVaryAcceptEncoding()) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+
+            // 校验信息随资源一起缓存；客户端缓存仍然有效时返回304，不发送响应体
+            if (resource.getEtag() != null) {
+                response.setHeader("ETag", resource.getEtag());
+                response.setHeader("Last-Modified", resource.getLastModifiedHeader());
+                response.setHeader("Accept-Ranges", "bytes");
+                if (isConditionalMethod(request.getMethod()) && resource.isNotModified(
+                        request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+                    response.setStatus(304);
+                    System.out.println("静态资源处理: " + request.getRequestURI() + " -> 304 Not Modified");
+                    return;
+                }
+            }
+
+            // 断点续传：Range请求只发送请求的字节区间（206），区间无法满足时返回416
+            if ("GET".equals(request.getMethod())) {
+                resource = resource.selectRange(request.getHeader("Range"), request.getHeader("If-Range"));
+            }
 
             response.setStatus(resource.getStatusCode());
             response.setHeader("Content-Type", resource.getMimeType());
+            if (resource.getContentEncoding() != null) {
+                response.setHeader("Content-Encoding", resource.getContentEncoding());
+            }
+            if (resource.getContentRange() != null) {
+                response.setHeader("Content-Range", resource.getContentRange());
+            }
             response.setHeader("Content-Length", String.valueOf(resource.getContentLength()));
 
-            try {
-                response.getWriter().write(new String(resource.getContent()));
-            } catch (IOException e) {
-                System.err.println("写入静态资源响应时发生错误: " + e.getMessage());
+            // 文件字节原样发送，不再经过字符串解码和Writer重新编码
+            if (resource.isFileBacked()) {
+                response.setFileBody(resource.openRegion());
+            } else {
+                response.setBinaryBody(resource.getContent());
             }
 
             System.out.println("静态资源处理: " + request.getRequestURI() + " -> " +
@@ -215,30 +267,33 @@ public class EnhancedWebServer {
         }
 
         /**
-         * 发送HTTP响应
+         * 只有GET和HEAD请求按If-None-Match/If-Modified-Since返回304
          */
-        private void sendResponse(OutputStream outputStream, EnhancedHttpServletResponseImpl response)
-                throws IOException {
-            PrintWriter writer = new PrintWriter(outputStream);
-
-            // 发送状态行
-            writer.println("HTTP/1.1 " + response.getStatus() + " " + response.getReasonPhrase());
-
-            // 发送响应头
-            for (String headerName : response.getHeaderNames()) {
-                writer.println(headerName + ": " + response.getHeader(headerName));
-            }
+        private boolean isConditionalMethod(String method) {
+            return "GET".equals(method) || "HEAD".equals(method);
+        }
 
-            // 发送空行
-            writer.println();
+        /**
+         * 发送HTTP响应（状态行、响应头和响应体由响应对象统一序列化）
+         * 响应只写入缓冲输出流，由连接循环决定何时刷新
+         *
+         * @return false表示响应体不完整，连接不能再复用
+         */
+        private boolean sendResponse(OutputStream outputStream, EnhancedHttpServletRequestImpl request,
+                EnhancedHttpServletResponseImpl response, boolean keepAlive) throws IOException {
+            return response.send(outputStream, "HEAD".equals(request.getMethod()), keepAlive);
+        }
 
-            // 发送响应体
-            String content = response.getContent();
-            if (content != null && !content.isEmpty()) {
-                writer.print(content);
+        /**
+         * HTTP/1.1的响应在缓冲区写满或Servlet调用flushBuffer时提前提交，没有声明Content-Length时分块发送；
+         * HEAD请求和HTTP/1.0仍然缓冲整个响应体
+         */
+        private void enableStreaming(OutputStream outputStream, EnhancedHttpServletRequestImpl request,
+                EnhancedHttpServletResponseImpl response, boolean keepAlive) {
+            if ("HTTP/1.1".equals(request.getProtocol()) && !"HEAD".equals(request.getMethod())) {
+                response.setStreamingOutput(outputStream, chunked -> response.writeHead(outputStream,
+                        response.getHeader("Content-Length"), chunked, keepAlive));
             }
-
-            writer.flush();
         }
     }
 
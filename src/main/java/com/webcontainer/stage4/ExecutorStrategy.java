@@ -0,0 +1,38 @@
+package com.webcontainer.stage4;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 工作线程执行策略
+ * 决定ThreadPoolRequestProcessor用什么线程运行请求任务，
+ * 通过 -Dwebcontainer.executor=platform|virtual 选择（默认platform）
+ */
+public interface ExecutorStrategy {
+    String PROPERTY = "webcontainer.executor";
+
+    /**
+     * 策略名称（用于日志和统计）
+     */
+    String getName();
+
+    /**
+     * 创建执行请求任务的ExecutorService，队列已满等情况通过RejectedExecutionException拒绝
+     */
+    ExecutorService createExecutor(int corePoolSize, int maximumPoolSize, int queueCapacity);
+
+    /**
+     * 根据系统属性选择执行策略，当前JDK不支持虚拟线程时退回平台线程池
+     */
+    static ExecutorStrategy fromSystemProperties() {
+        String mode = System.getProperty(PROPERTY, PlatformThreadStrategy.NAME);
+        if (VirtualThreadStrategy.NAME.equalsIgnoreCase(mode)) {
+            if (VirtualThreadStrategy.isSupported()) {
+                return new VirtualThreadStrategy();
+            }
+            System.err.println("当前JDK不支持虚拟线程（需要JDK 21+），使用平台线程池");
+        } else if (!PlatformThreadStrategy.NAME.equalsIgnoreCase(mode)) {
+            System.err.println("未知的执行策略: " + mode + "，使用平台线程池");
+        }
+        return new PlatformThreadStrategy();
+    }
+}
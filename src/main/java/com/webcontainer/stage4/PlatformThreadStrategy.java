@@ -0,0 +1,51 @@
+package com.webcontainer.stage4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平台线程池策略：固定大小的ThreadPoolExecutor，有界队列，队列满时拒绝
+ */
+public class PlatformThreadStrategy implements ExecutorStrategy {
+    public static final String NAME = "platform";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ExecutorService createExecutor(int corePoolSize, int maximumPoolSize, int queueCapacity) {
+        return new ThreadPoolExecutor(
+                corePoolSize,
+                maximumPoolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new WebServerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 自定义线程工厂
+     */
+    private static class WebServerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix = "WebServer-Worker-";
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            if (t.isDaemon()) {
+                t.setDaemon(false);
+            }
+            if (t.getPriority() != Thread.NORM_PRIORITY) {
+                t.setPriority(Thread.NORM_PRIORITY);
+            }
+            return t;
+        }
+    }
+}
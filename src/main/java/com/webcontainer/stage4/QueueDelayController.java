@@ -0,0 +1,82 @@
+package com.webcontainer.stage4;
+
+/**
+ * 基于排队时延的过载控制（CoDel思路）
+ * 统计每个时间窗口内任务在队列中的最小等待时间：窗口内只要有任务几乎不用等待，说明只是短暂的突发；
+ * 整个窗口的最小等待时间都超过目标值，说明队列在持续积压，进入过载状态，
+ * 此时等待超过2倍目标值的任务直接丢弃（快速失败），避免尾延迟随队列长度无限增长
+ */
+public class QueueDelayController {
+    public static final String TARGET_PROPERTY = "webcontainer.codel.targetMillis";
+    public static final String INTERVAL_PROPERTY = "webcontainer.codel.intervalMillis";
+
+    private static final long DEFAULT_TARGET_MILLIS = 5;
+    private static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private long intervalEnd = 0;
+    private long minSojournNanos = Long.MAX_VALUE;
+    private volatile boolean overloaded = false;
+
+    /**
+     * @param targetMillis   可接受的排队时延，<= 0 表示不做丢弃
+     * @param intervalMillis 检测窗口
+     */
+    public QueueDelayController(long targetMillis, long intervalMillis) {
+        this.targetNanos = targetMillis * 1_000_000L;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    public static QueueDelayController fromSystemProperties() {
+        return new QueueDelayController(
+                Long.getLong(TARGET_PROPERTY, DEFAULT_TARGET_MILLIS),
+                Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_MILLIS));
+    }
+
+    /**
+     * 任务出队（开始执行）时调用
+     *
+     * @param sojournNanos 任务在队列中的等待时间
+     * @param nowNanos     当前时间（System.nanoTime）
+     * @return 是否应丢弃该任务
+     */
+    public synchronized boolean onDequeue(long sojournNanos, long nowNanos) {
+        if (targetNanos <= 0) {
+            return false;
+        }
+
+        if (intervalEnd == 0) {
+            intervalEnd = nowNanos + intervalNanos;
+        } else if (nowNanos - intervalEnd >= 0) {
+            // 窗口结束：整个窗口的最小等待时间都超过目标值才算过载（空闲窗口不算）
+            overloaded = minSojournNanos != Long.MAX_VALUE && minSojournNanos > targetNanos;
+            minSojournNanos = Long.MAX_VALUE;
+            intervalEnd = nowNanos + intervalNanos;
+        }
+
+        if (sojournNanos < minSojournNanos) {
+            minSojournNanos = sojournNanos;
+        }
+        return overloaded && sojournNanos > 2 * targetNanos;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public long getTargetMillis() {
+        return targetNanos / 1_000_000L;
+    }
+
+    public long getIntervalMillis() {
+        return intervalNanos / 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueDelayController{target=" + getTargetMillis() + "ms, interval=" + getIntervalMillis()
+                + "ms, overloaded=" + overloaded + "}";
+    }
+}
@@ -1,72 +1,180 @@
 package com.webcontainer.stage4;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 第四阶段：线程池请求处理器
- * 使用固定大小线程池替代"一连接一线程"模型
+ * 使用固定大小线程池替代"一连接一线程"模型，执行策略可替换为每任务一个虚拟线程；
+ * 记录每个任务的排队时间，队列持续积压时由QueueDelayController丢弃等待过久的任务；
+ * 线程池接近饱和时（isBusy）阻塞连接不再保持keep-alive，把线程让给排队的新连接
  */
 public class ThreadPoolRequestProcessor {
+    // 正在执行的任务数达到核心线程数的该百分比时视为繁忙
+    private static final int BUSY_PERCENT = 80;
+
+    private final ExecutorService executor;
+    // 平台线程池策略下的线程池，其他策略为null
     private final ThreadPoolExecutor threadPool;
+    private final String executorName;
     private final AtomicInteger requestCounter = new AtomicInteger(0);
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicLong completedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong shedCount = new AtomicLong(0);
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final QueueDelayController queueDelayController;
+    private final int busyThreshold;
     private final long startTime = System.currentTimeMillis();
 
     public ThreadPoolRequestProcessor(int corePoolSize, int maximumPoolSize, int queueCapacity) {
-        this.threadPool = new ThreadPoolExecutor(
-                corePoolSize,
-                maximumPoolSize,
-                60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(queueCapacity),
-                new WebServerThreadFactory(),
-                new ThreadPoolExecutor.AbortPolicy());
+        this(corePoolSize, maximumPoolSize, queueCapacity, ExecutorStrategy.fromSystemProperties(),
+                QueueDelayController.fromSystemProperties());
+    }
+
+    public ThreadPoolRequestProcessor(int corePoolSize, int maximumPoolSize, int queueCapacity,
+            ExecutorStrategy strategy, QueueDelayController queueDelayController) {
+        this.executor = strategy.createExecutor(corePoolSize, maximumPoolSize, queueCapacity);
+        this.queueDelayController = queueDelayController;
+        this.threadPool = executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+        this.executorName = strategy.getName();
+        this.busyThreshold = Math.max(1, corePoolSize * BUSY_PERCENT / 100);
 
         System.out.println("线程池初始化完成:");
-        System.out.println("  核心线程数: " + corePoolSize);
-        System.out.println("  最大线程数: " + maximumPoolSize);
-        System.out.println("  队列容量: " + queueCapacity);
+        System.out.println("  执行策略: " + executorName);
+        if (threadPool != null) {
+            System.out.println("  核心线程数: " + corePoolSize);
+            System.out.println("  最大线程数: " + maximumPoolSize);
+            System.out.println("  队列容量: " + queueCapacity);
+        }
+        System.out.println("  排队时延控制: 目标 " + queueDelayController.getTargetMillis() + "ms，窗口 "
+                + queueDelayController.getIntervalMillis() + "ms");
     }
 
     /**
      * 提交请求处理任务
      */
     public void submit(Runnable task) {
+        submit(task, null);
+    }
+
+    /**
+     * 提交请求处理任务
+     * 线程池饱和时在调用线程上执行onRejected；任务排队过久被丢弃时在工作线程上执行onRejected
+     *
+     * @return 任务是否被接受
+     */
+    public boolean submit(Runnable task, Runnable onRejected) {
+        long enqueueTime = System.nanoTime();
         try {
-            threadPool.execute(() -> {
+            executor.execute(() -> {
+                long dequeueTime = System.nanoTime();
+                long sojourn = dequeueTime - enqueueTime;
+                queueWait.record(sojourn);
+                if (queueDelayController.onDequeue(sojourn, dequeueTime)) {
+                    shed(sojourn, onRejected);
+                    return;
+                }
+
                 int requestId = requestCounter.incrementAndGet();
                 String threadName = Thread.currentThread().getName();
 
                 long startTime = System.currentTimeMillis();
+                activeCount.incrementAndGet();
                 try {
                     System.out.println("[" + threadName + "] 开始处理请求 #" + requestId);
                     task.run();
                 } finally {
+                    activeCount.decrementAndGet();
+                    completedCount.incrementAndGet();
                     long duration = System.currentTimeMillis() - startTime;
                     System.out.println("[" + threadName + "] 完成请求 #" + requestId + "，耗时: " + duration + "ms");
                 }
             });
-        } catch (Exception e) {
-            System.err.println("提交请求处理任务失败: " + e.getMessage());
+            return true;
+        } catch (RejectedExecutionException e) {
+            long rejected = rejectedCount.incrementAndGet();
+            // 过载时避免每次拒绝都打印日志
+            if (rejected == 1 || rejected % 100 == 0) {
+                System.err.println("提交请求处理任务失败，线程池已饱和，累计拒绝 " + rejected + " 个任务");
+            }
+            if (onRejected != null) {
+                onRejected.run();
+            }
+            return false;
         }
     }
 
+    /**
+     * 丢弃排队过久的任务：客户端很可能已经超时，与其处理过时的请求不如快速失败
+     */
+    private void shed(long sojournNanos, Runnable onRejected) {
+        long shed = shedCount.incrementAndGet();
+        if (shed == 1 || shed % 100 == 0) {
+            System.err.println("队列持续积压，丢弃排队 " + sojournNanos / 1_000_000 + "ms 的任务，累计丢弃 "
+                    + shed + " 个任务");
+        }
+        if (onRejected != null) {
+            onRejected.run();
+        }
+    }
+
+    /**
+     * 线程池是否接近饱和：已有任务在排队，或正在执行的任务数接近核心线程数。
+     * ThreadPoolExecutor只在队列满后才创建核心线程之外的线程，空闲的持久连接占满核心线程时新连接只能排队，
+     * 这时阻塞连接应在响应后关闭。虚拟线程策略没有固定的线程数，不会繁忙
+     */
+    public boolean isBusy() {
+        if (threadPool == null) {
+            return false;
+        }
+        return activeCount.get() >= busyThreshold || !threadPool.getQueue().isEmpty();
+    }
+
+    /**
+     * 记录单个HTTP请求从解析完成到响应写出的耗时（持久连接上一个任务包含多个请求）
+     */
+    public void recordRequestLatency(long nanos) {
+        requestLatency.record(nanos);
+    }
+
     /**
      * 获取线程池统计信息
+     * 虚拟线程策略没有固定的线程数和队列，线程数按正在执行的任务数统计
      */
     public ThreadPoolStats getStats() {
+        if (threadPool != null) {
+            return new ThreadPoolStats(
+                    executorName,
+                    threadPool.getCorePoolSize(),
+                    threadPool.getMaximumPoolSize(),
+                    threadPool.getActiveCount(),
+                    threadPool.getPoolSize(),
+                    threadPool.getQueue().size(),
+                    threadPool.getQueue().remainingCapacity(),
+                    threadPool.getCompletedTaskCount(),
+                    requestCounter.get(),
+                    rejectedCount.get(),
+                    shedCount.get(),
+                    System.currentTimeMillis() - startTime,
+                    requestLatency.snapshot(),
+                    queueWait.snapshot());
+        }
+        int active = activeCount.get();
         return new ThreadPoolStats(
-                threadPool.getCorePoolSize(),
-                threadPool.getMaximumPoolSize(),
-                threadPool.getActiveCount(),
-                threadPool.getPoolSize(),
-                threadPool.getQueue().size(),
-                threadPool.getQueue().remainingCapacity(),
-                threadPool.getCompletedTaskCount(),
+                executorName, 0, 0, active, active, 0, 0,
+                completedCount.get(),
                 requestCounter.get(),
-                System.currentTimeMillis() - startTime);
+                rejectedCount.get(),
+                shedCount.get(),
+                System.currentTimeMillis() - startTime,
+                requestLatency.snapshot(),
+                queueWait.snapshot());
     }
 
     /**
@@ -75,48 +183,30 @@ public class ThreadPoolRequestProcessor {
     public void shutdown() {
         System.out.println("开始关闭线程池...");
 
-        threadPool.shutdown();
+        executor.shutdown();
         try {
-            if (!threadPool.awaitTermination(10, TimeUnit.SECONDS)) {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
                 System.out.println("强制关闭线程池...");
-                threadPool.shutdownNow();
+                executor.shutdownNow();
 
-                if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
                     System.err.println("线程池关闭失败");
                 }
             }
         } catch (InterruptedException e) {
-            threadPool.shutdownNow();
+            executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
 
         System.out.println("线程池已关闭，共处理了 " + requestCounter.get() + " 个请求");
-    }
-
-    /**
-     * 自定义线程工厂
-     */
-    private static class WebServerThreadFactory implements ThreadFactory {
-        private final AtomicInteger threadNumber = new AtomicInteger(1);
-        private final String namePrefix = "WebServer-Worker-";
-
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
-            if (t.isDaemon()) {
-                t.setDaemon(false);
-            }
-            if (t.getPriority() != Thread.NORM_PRIORITY) {
-                t.setPriority(Thread.NORM_PRIORITY);
-            }
-            return t;
-        }
+        System.out.println("  " + getStats());
     }
 
     /**
      * 线程池统计信息
      */
     public static class ThreadPoolStats {
+        private final String executorName;
         private final int corePoolSize;
         private final int maximumPoolSize;
         private final int activeCount;
@@ -125,11 +215,17 @@ public class ThreadPoolRequestProcessor {
         private final int remainingCapacity;
         private final long completedTaskCount;
         private final int totalRequestCount;
+        private final long rejectedCount;
+        private final long shedCount;
         private final long uptimeMillis;
+        private final LatencyHistogram.Snapshot requestLatency;
+        private final LatencyHistogram.Snapshot queueWait;
 
-        public ThreadPoolStats(int corePoolSize, int maximumPoolSize, int activeCount,
+        public ThreadPoolStats(String executorName, int corePoolSize, int maximumPoolSize, int activeCount,
                 int poolSize, int queueSize, int remainingCapacity,
-                long completedTaskCount, int totalRequestCount, long uptimeMillis) {
+                long completedTaskCount, int totalRequestCount, long rejectedCount, long shedCount,
+                long uptimeMillis, LatencyHistogram.Snapshot requestLatency, LatencyHistogram.Snapshot queueWait) {
+            this.executorName = executorName;
             this.corePoolSize = corePoolSize;
             this.maximumPoolSize = maximumPoolSize;
             this.activeCount = activeCount;
@@ -138,10 +234,18 @@ public class ThreadPoolRequestProcessor {
             this.remainingCapacity = remainingCapacity;
             this.completedTaskCount = completedTaskCount;
             this.totalRequestCount = totalRequestCount;
+            this.rejectedCount = rejectedCount;
+            this.shedCount = shedCount;
             this.uptimeMillis = uptimeMillis;
+            this.requestLatency = requestLatency;
+            this.queueWait = queueWait;
         }
 
         // Getters
+        public String getExecutorName() {
+            return executorName;
+        }
+
         public int getCorePoolSize() {
             return corePoolSize;
         }
@@ -174,10 +278,45 @@ public class ThreadPoolRequestProcessor {
             return totalRequestCount;
         }
 
+        /**
+         * 因线程池饱和被拒绝（返回503）的任务数
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * 因排队过久被丢弃的任务数
+         */
+        public long getShedCount() {
+            return shedCount;
+        }
+
         public long getUptimeMillis() {
             return uptimeMillis;
         }
 
+        /**
+         * 单个HTTP请求的处理延迟分布
+         */
+        public LatencyHistogram.Snapshot getRequestLatency() {
+            return requestLatency;
+        }
+
+        /**
+         * 任务在队列中的等待时间分布
+         */
+        public LatencyHistogram.Snapshot getQueueWait() {
+            return queueWait;
+        }
+
+        /**
+         * 启动以来的平均吞吐量（请求/秒）
+         */
+        public double getThroughput() {
+            return uptimeMillis == 0 ? 0 : requestLatency.getCount() * 1000.0 / uptimeMillis;
+        }
+
         public String getUptimeFormatted() {
             long seconds = uptimeMillis / 1000;
             long minutes = seconds / 60;
@@ -189,10 +328,13 @@ public class ThreadPoolRequestProcessor {
         @Override
         public String toString() {
             return String.format(
-                    "ThreadPool{core=%d, max=%d, active=%d, pool=%d, queue=%d/%d, completed=%d, total=%d, uptime=%s}",
-                    corePoolSize, maximumPoolSize, activeCount, poolSize,
+                    "ThreadPool{executor=%s, core=%d, max=%d, active=%d, pool=%d, queue=%d/%d, completed=%d, "
+                            + "total=%d, rejected=%d, shed=%d, uptime=%s, throughput=%.1f/s, latency=%s, "
+                            + "queueWait=%s}",
+                    executorName, corePoolSize, maximumPoolSize, activeCount, poolSize,
                     queueSize, queueSize + remainingCapacity, completedTaskCount,
-                    totalRequestCount, getUptimeFormatted());
+                    totalRequestCount, rejectedCount, shedCount, getUptimeFormatted(), getThroughput(),
+                    requestLatency, queueWait);
         }
     }
 }
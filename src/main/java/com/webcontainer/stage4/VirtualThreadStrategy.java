@@ -0,0 +1,54 @@
+package com.webcontainer.stage4;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程策略：每个任务一个虚拟线程，没有线程数和队列上限，
+ * 阻塞的Servlet不会耗尽工作线程
+ * 通过反射调用JDK 21的API，项目仍可在较低版本的JDK上编译
+ */
+public class VirtualThreadStrategy implements ExecutorStrategy {
+    public static final String NAME = "virtual";
+
+    private static final String THREAD_NAME_PREFIX = "WebServer-Virtual-";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 相当于 Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory())，
+     * 线程池大小和队列容量参数不适用
+     */
+    @Override
+    public ExecutorService createExecutor(int corePoolSize, int maximumPoolSize, int queueCapacity) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, THREAD_NAME_PREFIX, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法创建虚拟线程执行器: " + e.getMessage(), e);
+        }
+    }
+}
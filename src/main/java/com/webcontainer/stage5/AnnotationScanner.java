@@ -0,0 +1,416 @@
+package com.webcontainer.stage5;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.servlet.DispatcherType;
+
+/**
+ * 第五阶段：@WebServlet/@WebFilter注解扫描器
+ * 直接解析class文件的常量池和类注解，不加载（也不初始化）任何类；常量池中没有这两个注解描述符的类在读完常量池后立即跳过。
+ * WEB-INF/classes和WEB-INF/lib下的每个JAR作为独立的扫描单元并行扫描；
+ * JAR的扫描结果按文件校验和缓存，重新部署时内容未变的JAR不再解压解析
+ */
+public final class AnnotationScanner {
+
+    private static final String WEB_SERVLET = "Ljavax/servlet/annotation/WebServlet;";
+    private static final String WEB_FILTER = "Ljavax/servlet/annotation/WebFilter;";
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+    // 校验和缓存保存的JAR数量上限，超过后整体清空
+    private static final int MAX_CACHED_JARS = 512;
+
+    // "CRC32-长度" -> 该JAR中的注解组件
+    private static final Map<String, WebAppConfig> JAR_CACHE = new ConcurrentHashMap<>();
+
+    private AnnotationScanner() {
+    }
+
+    /**
+     * 扫描Web应用的WEB-INF/classes和WEB-INF/lib
+     */
+    public static WebAppConfig scan(File webAppDir, String webAppName) {
+        long begin = System.nanoTime();
+        List<Path> units = new ArrayList<>();
+        File classesDir = new File(webAppDir, "WEB-INF/classes");
+        if (classesDir.isDirectory()) {
+            units.add(classesDir.toPath());
+        }
+        File[] jars = new File(webAppDir, "WEB-INF/lib").listFiles((dir, name) -> name.toLowerCase().endsWith(".jar"));
+        if (jars != null) {
+            for (File jar : jars) {
+                units.add(jar.toPath());
+            }
+        }
+
+        AtomicInteger cacheHits = new AtomicInteger();
+        // 并行扫描，按单元原顺序合并结果
+        List<WebAppConfig> results = units.parallelStream()
+                .map(unit -> scanUnit(unit, cacheHits))
+                .collect(Collectors.toList());
+
+        WebAppConfig config = new WebAppConfig();
+        for (WebAppConfig result : results) {
+            config.mergeAnnotations(result);
+        }
+        if (!units.isEmpty()) {
+            System.out.println("注解扫描 [" + webAppName + "]: " + units.size() + " 个扫描单元（JAR缓存命中 "
+                    + cacheHits.get() + "），Servlet " + config.getServlets().size() + " 个，Filter "
+                    + config.getFilters().size() + " 个，耗时 " + (System.nanoTime() - begin) / 1_000_000 + " ms");
+        }
+        return config;
+    }
+
+    private static WebAppConfig scanUnit(Path unit, AtomicInteger cacheHits) {
+        try {
+            if (Files.isDirectory(unit)) {
+                return scanDirectory(unit, new AtomicInteger());
+            }
+            String key = checksum(unit);
+            WebAppConfig cached = JAR_CACHE.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+            AtomicInteger failures = new AtomicInteger();
+            WebAppConfig result = scanJar(unit, failures);
+            // 部分类解析失败的结果不缓存，下次部署时重新扫描
+            if (failures.get() == 0) {
+                if (JAR_CACHE.size() >= MAX_CACHED_JARS) {
+                    JAR_CACHE.clear();
+                }
+                JAR_CACHE.put(key, result);
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("扫描注解失败: " + unit + " - " + e);
+            return new WebAppConfig();
+        }
+    }
+
+    private static WebAppConfig scanDirectory(Path classesDir, AtomicInteger failures) throws IOException {
+        WebAppConfig config = new WebAppConfig();
+        List<Path> classFiles;
+        try (Stream<Path> walk = Files.walk(classesDir)) {
+            classFiles = walk.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+            try {
+                scanClass(Files.readAllBytes(classFile), config);
+            } catch (IOException | RuntimeException e) {
+                classFailed(classFile.toString(), e, failures);
+            }
+        }
+        return config;
+    }
+
+    private static WebAppConfig scanJar(Path jarPath, AtomicInteger failures) throws IOException {
+        WebAppConfig config = new WebAppConfig();
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/")
+                        || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                try (InputStream in = jar.getInputStream(entry)) {
+                    scanClass(in.readAllBytes(), config);
+                } catch (IOException | RuntimeException e) {
+                    classFailed(jarPath + "!/" + name, e, failures);
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 单个class文件无法读取或格式错误时只跳过该类，同一扫描单元中的其他注解照常生效
+     */
+    private static void classFailed(String name, Exception e, AtomicInteger failures) {
+        failures.incrementAndGet();
+        System.err.println("跳过无法解析的class文件: " + name + " - " + e);
+    }
+
+    private static String checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        long length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                length += read;
+            }
+        }
+        return Long.toHexString(crc.getValue()) + "-" + length;
+    }
+
+    /**
+     * 解析一个class文件，把找到的注解组件加入config
+     */
+    static void scanClass(byte[] bytes, WebAppConfig config) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != CLASS_MAGIC) {
+            return;
+        }
+        in.readUnsignedShort(); // minor_version
+        in.readUnsignedShort(); // major_version
+
+        ConstantPool pool = ConstantPool.read(in);
+        if (!pool.containsUtf8(WEB_SERVLET) && !pool.containsUtf8(WEB_FILTER)) {
+            return;
+        }
+
+        in.readUnsignedShort(); // access_flags
+        String className = pool.className(in.readUnsignedShort());
+        in.readUnsignedShort(); // super_class
+        skipFully(in, 2 * in.readUnsignedShort()); // interfaces
+        skipMembers(in); // fields
+        skipMembers(in); // methods
+
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = pool.utf8(in.readUnsignedShort());
+            int length = in.readInt();
+            if (!RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                skipFully(in, length);
+                continue;
+            }
+            int annotationCount = in.readUnsignedShort();
+            for (int j = 0; j < annotationCount; j++) {
+                String type = pool.utf8(in.readUnsignedShort());
+                Map<String, Object> values = readAnnotationValues(in, pool);
+                if (WEB_SERVLET.equals(type)) {
+                    addServlet(className, values, config);
+                } else if (WEB_FILTER.equals(type)) {
+                    addFilter(className, values, config);
+                }
+            }
+        }
+    }
+
+    private static void addServlet(String className, Map<String, Object> values, WebAppConfig config) {
+        String name = stringValue(values, "name", className);
+        WebAppConfig.ServletDef servlet = new WebAppConfig.ServletDef(name, className,
+                values.containsKey("loadOnStartup") ? (Integer) values.get("loadOnStartup") : -1,
+                initParams(values));
+        servlet.getUrlPatterns().addAll(urlPatterns(values));
+        config.getServlets().add(servlet);
+    }
+
+    private static void addFilter(String className, Map<String, Object> values, WebAppConfig config) {
+        String name = stringValue(values, "filterName", className);
+        config.getFilters().add(new WebAppConfig.FilterDef(name, className, initParams(values)));
+
+        WebAppConfig.FilterMappingDef mapping = new WebAppConfig.FilterMappingDef(name);
+        mapping.getUrlPatterns().addAll(urlPatterns(values));
+        mapping.getServletNames().addAll(stringList(values.get("servletNames")));
+        for (String dispatcherType : stringList(values.get("dispatcherTypes"))) {
+            mapping.addDispatcherType(DispatcherType.valueOf(dispatcherType));
+        }
+        if (!mapping.getUrlPatterns().isEmpty() || !mapping.getServletNames().isEmpty()) {
+            config.getFilterMappings().add(mapping);
+        }
+    }
+
+    /**
+     * value和urlPatterns是同一属性的两种写法
+     */
+    private static List<String> urlPatterns(Map<String, Object> values) {
+        List<String> patterns = new ArrayList<>(stringList(values.get("value")));
+        patterns.addAll(stringList(values.get("urlPatterns")));
+        return patterns;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> initParams(Map<String, Object> values) {
+        Map<String, String> params = new LinkedHashMap<>();
+        Object initParams = values.get("initParams");
+        if (initParams instanceof List) {
+            for (Object param : (List<Object>) initParams) {
+                Map<String, Object> paramValues = (Map<String, Object>) param;
+                params.put((String) paramValues.get("name"), (String) paramValues.get("value"));
+            }
+        }
+        return params;
+    }
+
+    private static String stringValue(Map<String, Object> values, String name, String defaultValue) {
+        Object value = values.get(name);
+        return value instanceof String && !((String) value).isEmpty() ? (String) value : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> stringList(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        // 单个元素的数组在class文件中也按数组保存
+        return (List<String>) value;
+    }
+
+    private static Map<String, Object> readAnnotationValues(DataInputStream in, ConstantPool pool) throws IOException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        int pairCount = in.readUnsignedShort();
+        for (int i = 0; i < pairCount; i++) {
+            String name = pool.utf8(in.readUnsignedShort());
+            values.put(name, readElementValue(in, pool));
+        }
+        return values;
+    }
+
+    /**
+     * 读取注解元素值：常量转为Integer/Long/String等，枚举取常量名，嵌套注解为Map，数组为List
+     */
+    private static Object readElementValue(DataInputStream in, ConstantPool pool) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'I':
+            case 'S':
+            case 'Z':
+            case 'D':
+            case 'F':
+            case 'J':
+                return pool.constant(in.readUnsignedShort());
+            case 's':
+                return pool.utf8(in.readUnsignedShort());
+            case 'e':
+                in.readUnsignedShort(); // 枚举类型
+                return pool.utf8(in.readUnsignedShort());
+            case 'c':
+                return pool.utf8(in.readUnsignedShort());
+            case '@':
+                in.readUnsignedShort(); // 注解类型
+                return readAnnotationValues(in, pool);
+            case '[':
+                int count = in.readUnsignedShort();
+                List<Object> array = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    array.add(readElementValue(in, pool));
+                }
+                return array;
+            default:
+                throw new IOException("无法识别的注解元素类型: " + (char) tag);
+        }
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skipFully(in, 6); // access_flags, name_index, descriptor_index
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                in.readUnsignedShort();
+                skipFully(in, in.readInt());
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        in.skipBytes(length);
+    }
+
+    /**
+     * class文件常量池，只保留注解解析需要的UTF8、Class和数值常量
+     */
+    private static final class ConstantPool {
+        private final Object[] entries;
+        private final int[] classNameIndexes;
+
+        private ConstantPool(int count) {
+            this.entries = new Object[count];
+            this.classNameIndexes = new int[count];
+        }
+
+        static ConstantPool read(DataInputStream in) throws IOException {
+            int count = in.readUnsignedShort();
+            ConstantPool pool = new ConstantPool(count);
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        pool.entries[i] = in.readUTF();
+                        break;
+                    case 3: // Integer
+                        pool.entries[i] = in.readInt();
+                        break;
+                    case 4: // Float
+                        pool.entries[i] = in.readFloat();
+                        break;
+                    case 5: // Long，占两个位置
+                        pool.entries[i++] = in.readLong();
+                        break;
+                    case 6: // Double，占两个位置
+                        pool.entries[i++] = in.readDouble();
+                        break;
+                    case 7: // Class
+                        pool.classNameIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        skipFully(in, 2);
+                        break;
+                    case 15: // MethodHandle
+                        skipFully(in, 3);
+                        break;
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        skipFully(in, 4);
+                        break;
+                    default:
+                        throw new IOException("无法识别的常量池类型: " + tag);
+                }
+            }
+            return pool;
+        }
+
+        boolean containsUtf8(String value) {
+            for (Object entry : entries) {
+                if (value.equals(entry)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String utf8(int index) {
+            return (String) entries[index];
+        }
+
+        Object constant(int index) {
+            return entries[index];
+        }
+
+        String className(int classIndex) {
+            return utf8(classNameIndexes[classIndex]).replace('/', '.');
+        }
+    }
+}
@@ -12,11 +12,17 @@ public class ContextAwareRequest extends HttpServletRequestWrapper {
 
     private final WebAppContext webAppContext;
     private final String servletPath;
+    private final String pathInfo;
 
-    public ContextAwareRequest(HttpServletRequest request, WebAppContext webAppContext, String servletPath) {
+    /**
+     * @param servletPath 和 pathInfo 由路由时匹配的URL模式决定
+     */
+    public ContextAwareRequest(HttpServletRequest request, WebAppContext webAppContext, String servletPath,
+            String pathInfo) {
         super(request);
         this.webAppContext = webAppContext;
         this.servletPath = servletPath;
+        this.pathInfo = pathInfo;
     }
 
     @Override
@@ -36,16 +42,12 @@ public class ContextAwareRequest extends HttpServletRequestWrapper {
 
     @Override
     public String getPathInfo() {
-        String requestURI = getRequestURI();
-        String contextPath = getContextPath();
-        String servletPath = getServletPath();
-
-        // 计算pathInfo = requestURI - contextPath - servletPath
-        String fullServletPath = contextPath + servletPath;
-        if (requestURI.length() > fullServletPath.length()) {
-            return requestURI.substring(fullServletPath.length());
-        }
-        return null;
+        return pathInfo;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return pathInfo != null ? webAppContext.getRealPath(pathInfo) : null;
     }
 
     @Override
@@ -0,0 +1,142 @@
+package com.webcontainer.stage5;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件变化监听器
+ * 用一个WatchService递归监听整个目录树，在单独的守护线程上把创建、修改、删除事件推送给监听者；
+ * 新建的子目录自动加入监听，事件队列溢出（OVERFLOW）时通知监听者自行全量刷新
+ */
+public class FileChangeWatcher implements Closeable {
+
+    public enum ChangeKind {
+        CREATED, MODIFIED, DELETED
+    }
+
+    /**
+     * 变化通知（在监听线程上调用）
+     */
+    public interface Listener {
+
+        void onFileChanged(ChangeKind kind, Path path);
+
+        /**
+         * 有事件丢失，监听者需要重新扫描
+         */
+        void onOverflow();
+    }
+
+    private final Path root;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final Thread watcherThread;
+
+    private volatile boolean running = false;
+
+    /**
+     * 创建时立即注册整个目录树，之后发生的变化都不会遗漏；start()之后才开始推送事件
+     */
+    public FileChangeWatcher(Path root, Listener listener) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.listener = listener;
+        this.watchService = this.root.getFileSystem().newWatchService();
+        registerTree(this.root);
+
+        this.watcherThread = new Thread(this::watchLoop, "File-Watcher");
+        this.watcherThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        watcherThread.start();
+        System.out.println("文件变化监听已启动: " + root + " (" + watchedDirs.size() + " 个目录)");
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private void watchLoop() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    dispatch(dir, event);
+                } catch (RuntimeException e) {
+                    System.err.println("处理文件变化事件时发生错误: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+
+            // 目录已删除或不可访问时监听键失效
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void dispatch(Path dir, WatchEvent<?> event) {
+        WatchEvent.Kind<?> kind = event.kind();
+        if (kind == StandardWatchEventKinds.OVERFLOW || dir == null) {
+            listener.onOverflow();
+            return;
+        }
+
+        Path path = dir.resolve((Path) event.context());
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(path);
+                } catch (IOException e) {
+                    System.err.println("监听新目录失败: " + path + " - " + e.getMessage());
+                }
+            }
+            listener.onFileChanged(ChangeKind.CREATED, path);
+        } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+            listener.onFileChanged(ChangeKind.MODIFIED, path);
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            listener.onFileChanged(ChangeKind.DELETED, path);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirs.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        // 关闭后take()抛出ClosedWatchServiceException，监听线程随之退出
+        watchService.close();
+    }
+}
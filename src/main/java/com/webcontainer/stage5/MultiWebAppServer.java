@@ -1,6 +1,13 @@
 package com.webcontainer.stage5;
 
+import com.webcontainer.connector.NioConnector;
+import com.webcontainer.http.FileRegion;
+import com.webcontainer.http.HttpInputBuffer;
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
+import com.webcontainer.connector.NioRequestHandler;
 import com.webcontainer.stage2.StaticResourceHandler;
+import com.webcontainer.stage4.AdmissionController;
 import com.webcontainer.stage4.EnhancedHttpServletRequestImpl;
 import com.webcontainer.stage4.EnhancedHttpServletResponseImpl;
 import com.webcontainer.stage4.SessionManager;
@@ -9,6 +16,10 @@ import com.webcontainer.stage4.ThreadPoolRequestProcessor;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * 第五阶段：多Web应用容器服务器
@@ -17,33 +28,55 @@ import java.net.Socket;
 public class MultiWebAppServer {
     private static final int PORT = 8080;
     private static final String WEB_APPS_DIR = "webapps";
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
 
     // 线程池配置
     private static final int CORE_POOL_SIZE = 10;
     private static final int MAX_POOL_SIZE = 50;
     private static final int QUEUE_CAPACITY = 100;
 
+    // 连接器配置：-Dwebcontainer.connector=nio 启用非阻塞连接器（默认bio）
+    private static final String CONNECTOR_PROPERTY = "webcontainer.connector";
+    private static final String NIO_EVENT_LOOPS_PROPERTY = "webcontainer.nio.eventLoops";
+
+    private final boolean nioEnabled;
+    private final KeepAlivePolicy keepAlivePolicy = KeepAlivePolicy.fromSystemProperties();
     private ServerSocket serverSocket;
+    private NioConnector nioConnector;
     private boolean running = false;
     private WebAppDeployer deployer;
     private ThreadPoolRequestProcessor requestProcessor;
+    private AdmissionController admissionController;
     private SessionManager globalSessionManager; // 全局会话管理器，用于跨应用的会话处理
 
     public MultiWebAppServer() {
         // 初始化全局会话管理器
         this.globalSessionManager = new SessionManager(null);
 
+
         // 初始化部署器
         this.deployer = new WebAppDeployer(WEB_APPS_DIR, this.getClass().getClassLoader());
 
         // 初始化线程池
         this.requestProcessor = new ThreadPoolRequestProcessor(CORE_POOL_SIZE, MAX_POOL_SIZE, QUEUE_CAPACITY);
+        this.admissionController = new AdmissionController(requestProcessor);
+
+        // 选择连接器
+        this.nioEnabled = "nio".equalsIgnoreCase(System.getProperty(CONNECTOR_PROPERTY, "bio"));
+        if (nioEnabled) {
+            int eventLoops = Integer.getInteger(NIO_EVENT_LOOPS_PROPERTY,
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            this.nioConnector = new NioConnector(PORT, eventLoops, this::createNioTask, admissionController,
+                    keepAlivePolicy);
+        }
 
         System.out.println("多Web应用容器服务器初始化完成");
     }
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(PORT);
+        if (!nioEnabled) {
+            serverSocket = new ServerSocket(PORT);
+        }
         running = true;
 
         // 启动部署器
@@ -60,6 +93,7 @@ public class MultiWebAppServer {
         System.out.println("  ✅ 动态部署和热加载");
         System.out.println("  ✅ 多应用并存");
         System.out.println("  ✅ 线程池优化 (核心:" + CORE_POOL_SIZE + ", 最大:" + MAX_POOL_SIZE + ")");
+        System.out.println("  ✅ 连接器: " + (nioEnabled ? "NIO (Selector非阻塞)" : "BIO (阻塞)"));
         System.out.println("=================================");
         System.out.println("已部署的Web应用:");
 
@@ -82,12 +116,18 @@ public class MultiWebAppServer {
         System.out.println("  部署统计: http://localhost:" + PORT + "/api/deployment");
         System.out.println("=================================");
 
+        if (nioEnabled) {
+            // NIO连接器在当前线程上接收连接，直到stop被调用
+            nioConnector.start();
+            return;
+        }
+
         // 主线程循环接收连接
         while (running) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                // 使用线程池处理请求
-                requestProcessor.submit(new MultiAppRequestHandler(clientSocket));
+                // 使用线程池处理请求，线程池饱和时直接返回503
+                admissionController.admit(clientSocket, new MultiAppRequestHandler(clientSocket));
             } catch (IOException e) {
                 if (running) {
                     System.err.println("接收连接时发生错误: " + e.getMessage());
@@ -99,6 +139,11 @@ public class MultiWebAppServer {
     public void stop() throws IOException {
         running = false;
 
+        // 停止连接器
+        if (nioConnector != null) {
+            nioConnector.stop();
+        }
+
         // 停止部署器
         deployer.stop();
 
@@ -126,24 +171,49 @@ public class MultiWebAppServer {
 
         @Override
         public void run() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    OutputStream outputStream = clientSocket.getOutputStream()) {
-
-                // 解析HTTP请求
-                EnhancedHttpServletRequestImpl request = parseRequest(reader);
-                EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
-
-                // 首先尝试通过部署器处理（查找匹配的Web应用）
-                boolean handledByApp = deployer.handleRequest(request, response);
-
-                if (!handledByApp) {
-                    // 如果没有应用处理，则作为静态资源处理（从ROOT应用）
-                    handleStaticRequest(request, response);
+            try (OutputStream outputStream = new BufferedOutputStream(
+                    clientSocket.getOutputStream(), OUTPUT_BUFFER_SIZE)) {
+
+                // 空闲超时：持久连接上超过该时间没有新请求则关闭
+                clientSocket.setSoTimeout(keepAlivePolicy.getBlockingIdleTimeoutMillis());
+
+                // 请求体按需从连接读取，客户端等待100 Continue时由同一输出流发送
+                HttpInputBuffer input = new HttpInputBuffer(clientSocket.getInputStream(), outputStream);
+                int requestCount = 0;
+                while (true) {
+                    // 解析HTTP请求（客户端关闭连接时返回null），会话Cookie写入同一个响应对象
+                    HttpRequestHead head = input.readRequestHead();
+                    if (head == null) {
+                        break;
+                    }
+                    requestCount++;
+                    long requestStart = System.nanoTime();
+                    EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
+                    EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl(
+                            head, globalSessionManager, response);
+                    request.setBody(input.getBody());
+
+                    // 处理请求并发送响应
+                    // 线程池繁忙时不保持连接：空闲的持久连接会一直占用工作线程，排队的新连接只能等待或被丢弃
+                    boolean keepAlive = keepAlivePolicy.shouldKeepAlive(request.getProtocol(),
+                            request.getHeader("Connection"), requestCount) && !requestProcessor.isBusy();
+                    enableStreaming(outputStream, request, response, keepAlive);
+                    processRequest(request, response);
+                    keepAlive = sendResponse(outputStream, request, response, keepAlive) && keepAlive;
+                    requestProcessor.recordRequestLatency(System.nanoTime() - requestStart);
+
+                    // 流水线请求：客户端已发来后续请求时暂不刷新，相邻响应合并为一次写出
+                    if (!input.hasBufferedInput()) {
+                        outputStream.flush();
+                    }
+
+                    if (!keepAlive) {
+                        break;
+                    }
                 }
 
-                // 发送响应
-                sendResponse(outputStream, response);
-
+            } catch (SocketTimeoutException e) {
+                // 持久连接空闲超时，正常关闭
             } catch (Exception e) {
                 System.err.println("处理请求时发生错误: " + e.getMessage());
                 e.printStackTrace();
@@ -155,88 +225,151 @@ public class MultiWebAppServer {
                 }
             }
         }
+    }
 
-        /**
-         * 解析HTTP请求
-         */
-        private EnhancedHttpServletRequestImpl parseRequest(BufferedReader reader) throws IOException {
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.trim().isEmpty()) {
-                throw new IOException("无效的HTTP请求");
-            }
-
-            String[] requestParts = requestLine.split(" ");
-            if (requestParts.length != 3) {
-                throw new IOException("无效的请求行格式: " + requestLine);
-            }
+    /**
+     * NIO连接器回调：用事件循环线程上解析好的请求头和请求体流创建在工作线程上执行的处理任务
+     */
+    private NioRequestHandler.RequestTask createNioTask(HttpRequestHead head, InputStream body) {
+        EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
+        EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl(
+                head, globalSessionManager, response);
+        request.setBody(body);
+        return (out, keepAliveAllowed) -> {
+            long requestStart = System.nanoTime();
+            boolean keepAlive = keepAliveAllowed && KeepAlivePolicy.isKeepAliveRequested(
+                    request.getProtocol(), request.getHeader("Connection"));
+            enableStreaming(out, request, response, keepAlive);
+            processRequest(request, response);
+            keepAlive = sendResponse(out, request, response, keepAlive) && keepAlive;
+            requestProcessor.recordRequestLatency(System.nanoTime() - requestStart);
+            return keepAlive;
+        };
+    }
 
-            EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
-            EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl(
-                    requestParts[0], requestParts[1], requestParts[2], globalSessionManager, response);
-
-            String headerLine;
-            while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
-                int colonIndex = headerLine.indexOf(':');
-                if (colonIndex > 0) {
-                    String headerName = headerLine.substring(0, colonIndex).trim();
-                    String headerValue = headerLine.substring(colonIndex + 1).trim();
-                    request.addHeader(headerName, headerValue);
-                }
+    /**
+     * 处理请求：优先交给匹配的Web应用，否则作为该应用的静态资源处理
+     */
+    private void processRequest(EnhancedHttpServletRequestImpl request, EnhancedHttpServletResponseImpl response) {
+        // 一次解析出所属的Web应用和匹配的Servlet
+        RequestRouter.Route route = deployer.route(request.getRequestURI());
+        if (route == null) {
+            try {
+                response.sendError(404);
+            } catch (IOException e) {
+                System.err.println("写入404响应时发生错误: " + e.getMessage());
             }
-
-            return request;
+            return;
         }
 
-        /**
-         * 处理静态资源请求（兜底处理）
-         */
-        private void handleStaticRequest(EnhancedHttpServletRequestImpl request,
-                EnhancedHttpServletResponseImpl response) {
-            // 从ROOT应用目录提供静态资源
-            String rootPath = WEB_APPS_DIR + "/ROOT";
-            StaticResourceHandler staticHandler = new StaticResourceHandler(rootPath);
-
-            StaticResourceHandler.StaticResource resource = staticHandler.handleRequest(request.getRequestURI());
-
-            response.setStatus(resource.getStatusCode());
-            response.setHeader("Content-Type", resource.getMimeType());
-            response.setHeader("Content-Length", String.valueOf(resource.getContentLength()));
+        // 首先交给应用的Servlet处理
+        boolean handledByApp = route.getContext().handleRequest(request, response, route);
 
+        if (!handledByApp) {
+            // 没有Servlet处理时，经过应用映射到该路径的Filter后从该应用自己的目录提供静态资源
             try {
-                response.getWriter().write(new String(resource.getContent()));
+                route.getContext().serveStatic(request, response, route,
+                        (req, res) -> handleStaticRequest(req, res, route, response));
             } catch (IOException e) {
-                System.err.println("写入静态资源响应时发生错误: " + e.getMessage());
+                System.err.println("处理静态资源请求时发生错误: " + e.getMessage());
             }
+        }
+    }
 
-            System.out.println("静态资源处理 [ROOT]: " + request.getRequestURI() + " -> " +
-                    resource.getStatusCode() + " " + resource.getReasonPhrase());
+    /**
+     * 处理静态资源请求（兜底处理）
+     * 每个应用持有一个长期存在的静态资源处理器，缓存和校验信息在请求之间保持
+     *
+     * @param request     可能已被Filter包装的请求
+     * @param response    可能已被Filter包装的响应
+     * @param rawResponse 连接的响应对象，响应未被包装时文件内容直接交给它发送
+     */
+    private void handleStaticRequest(HttpServletRequest request, HttpServletResponse response,
+            RequestRouter.Route route, EnhancedHttpServletResponseImpl rawResponse) throws IOException {
+        WebAppContext context = route.getContext();
+        String appName = context.getWebAppName();
+        StaticResourceHandler.StaticResource resource = context.getStaticHandler().handleRequest(
+                route.getPath(), request.getHeader("Accept-Encoding"));
+
+        // 同一URI有压缩和未压缩两种表示，共享缓存必须按Accept-Encoding区分（304响应也要带上）
+        if (resource.isVaryAcceptEncoding()) {
+            response.setHeader("Vary", "Accept-Encoding");
         }
 
-        /**
-         * 发送HTTP响应
-         */
-        private void sendResponse(OutputStream outputStream, EnhancedHttpServletResponseImpl response)
-                throws IOException {
-            PrintWriter writer = new PrintWriter(outputStream);
+        // 校验信息随资源一起缓存；客户端缓存仍然有效时返回304，不发送响应体
+        if (resource.getEtag() != null) {
+            response.setHeader("ETag", resource.getEtag());
+            response.setHeader("Last-Modified", resource.getLastModifiedHeader());
+            response.setHeader("Accept-Ranges", "bytes");
+            if (isConditionalMethod(request.getMethod()) && resource.isNotModified(
+                    request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+                response.setStatus(304);
+                System.out.println("静态资源处理 [" + appName + "]: " + request.getRequestURI() + " -> 304 Not Modified");
+                return;
+            }
+        }
+
+        // 断点续传：Range请求只发送请求的字节区间（206），区间无法满足时返回416
+        if ("GET".equals(request.getMethod())) {
+            resource = resource.selectRange(request.getHeader("Range"), request.getHeader("If-Range"));
+        }
 
-            // 发送状态行
-            writer.println("HTTP/1.1 " + response.getStatus() + " " + response.getReasonPhrase());
+        response.setStatus(resource.getStatusCode());
+        response.setHeader("Content-Type", resource.getMimeType());
+        if (resource.getContentEncoding() != null) {
+            response.setHeader("Content-Encoding", resource.getContentEncoding());
+        }
+        if (resource.getContentRange() != null) {
+            response.setHeader("Content-Range", resource.getContentRange());
+        }
+        response.setHeader("Content-Length", String.valueOf(resource.getContentLength()));
 
-            // 发送响应头
-            for (String headerName : response.getHeaderNames()) {
-                writer.println(headerName + ": " + response.getHeader(headerName));
+        // 文件字节原样发送，不再经过字符串解码和Writer重新编码；响应被Filter包装时写入包装后的输出流
+        if (response != rawResponse) {
+            if (resource.isFileBacked()) {
+                try (FileRegion region = resource.openRegion()) {
+                    region.writeTo(response.getOutputStream());
+                }
+            } else {
+                response.getOutputStream().write(resource.getContent());
             }
+        } else if (resource.isFileBacked()) {
+            rawResponse.setFileBody(resource.openRegion());
+        } else {
+            rawResponse.setBinaryBody(resource.getContent());
+        }
 
-            // 发送空行
-            writer.println();
+        System.out.println("静态资源处理 [" + appName + "]: " + request.getRequestURI() + " -> " +
+                resource.getStatusCode() + " " + resource.getReasonPhrase());
+    }
 
-            // 发送响应体
-            String content = response.getContent();
-            if (content != null && !content.isEmpty()) {
-                writer.print(content);
-            }
+    /**
+     * 只有GET和HEAD请求按If-None-Match/If-Modified-Since返回304
+     */
+    private static boolean isConditionalMethod(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
 
-            writer.flush();
+    /**
+     * 发送HTTP响应（状态行、响应头和响应体由响应对象统一序列化）
+     * 响应只写入缓冲输出流，由连接循环决定何时刷新
+     *
+     * @return false表示响应体不完整，连接不能再复用
+     */
+    private boolean sendResponse(OutputStream outputStream, EnhancedHttpServletRequestImpl request,
+            EnhancedHttpServletResponseImpl response, boolean keepAlive) throws IOException {
+        return response.send(outputStream, "HEAD".equals(request.getMethod()), keepAlive);
+    }
+
+    /**
+     * HTTP/1.1的响应在缓冲区写满或Servlet调用flushBuffer时提前提交，没有声明Content-Length时分块发送；
+     * HEAD请求和HTTP/1.0仍然缓冲整个响应体
+     */
+    private void enableStreaming(OutputStream outputStream, EnhancedHttpServletRequestImpl request,
+            EnhancedHttpServletResponseImpl response, boolean keepAlive) {
+        if ("HTTP/1.1".equals(request.getProtocol()) && !"HEAD".equals(request.getMethod())) {
+            response.setStreamingOutput(outputStream, chunked -> response.writeHead(outputStream,
+                    response.getHeader("Content-Length"), chunked, keepAlive));
         }
     }
 
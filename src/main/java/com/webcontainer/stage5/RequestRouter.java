@@ -0,0 +1,223 @@
+package com.webcontainer.stage5;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webcontainer.stage3.FilterRegistrationImpl;
+import com.webcontainer.stage3.ServletRouter;
+
+/**
+ * 第五阶段：两级请求路由
+ * 一次解析出请求所属的Web应用、处理它的Servlet以及servletPath和pathInfo。
+ * 第一级按URI的第一个路径段查找应用（/testappX不会匹配/testapp），找不到时交给ROOT应用；
+ * 第二级使用应用的ServletRouter，同时取得编译好的Filter链。最近的解析结果保存在有界缓存中，热点URI直接命中；
+ * 命中只设置访问标记，不加锁，超出容量时按CLOCK（二次机会）算法淘汰近期没有访问过的条目。
+ * 路由表在部署和卸载应用时整体替换，缓存随旧路由表一起丢弃
+ */
+public class RequestRouter {
+    public static final String CACHE_SIZE_PROPERTY = "webcontainer.routeCache.size";
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    public static final RequestRouter EMPTY = new RequestRouter(Collections.emptyList());
+
+    // 上下文路径（/appName） -> 应用
+    private final Map<String, WebAppContext> contexts = new HashMap<>();
+    private final WebAppContext rootContext;
+    private final int cacheSize;
+    private final Map<String, CachedRoute> routeCache = new ConcurrentHashMap<>();
+    // CLOCK指针：上次淘汰停下的位置，遍历到末尾后从头开始；只在持有clockLock时使用
+    private final Object clockLock = new Object();
+    private Iterator<Map.Entry<String, CachedRoute>> clockHand;
+
+    public RequestRouter(Collection<WebAppContext> deployedContexts) {
+        WebAppContext root = null;
+        for (WebAppContext context : deployedContexts) {
+            if (context.getContextPath().isEmpty()) {
+                root = context;
+            } else {
+                contexts.put(context.getContextPath(), context);
+            }
+        }
+        this.rootContext = root;
+
+        this.cacheSize = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * 解析请求URI（不含查询字符串）
+     *
+     * @return 路由结果；没有匹配的应用时返回null
+     */
+    public Route route(String requestURI) {
+        CachedRoute cached = routeCache.get(requestURI);
+        // 应用注册了新的Servlet或Filter映射时缓存的结果作废
+        if (cached != null && cached.route.servletRouter == cached.route.context.getServletContainer().getRouter()) {
+            if (!cached.referenced) {
+                cached.referenced = true;
+            }
+            return cached.route;
+        }
+
+        WebAppContext context = findContext(requestURI);
+        if (context == null) {
+            return null;
+        }
+        Route route = resolve(context, requestURI);
+        if (cacheSize > 0) {
+            routeCache.put(requestURI, new CachedRoute(route));
+            if (routeCache.size() > cacheSize) {
+                evict();
+            }
+        }
+        return route;
+    }
+
+    /**
+     * CLOCK淘汰：转动指针，清除经过条目的访问标记，移除标记已经清除的条目，直到回到容量以内。
+     * 只在未命中且超出容量时执行，命中路径不受影响
+     */
+    private void evict() {
+        synchronized (clockLock) {
+            // 每个条目最多经过两次（第一次清除标记，第二次移除），防止并发插入时无限循环
+            int steps = 2 * (routeCache.size() + 1);
+            while (routeCache.size() > cacheSize && steps-- > 0) {
+                if (clockHand == null || !clockHand.hasNext()) {
+                    clockHand = routeCache.entrySet().iterator();
+                    if (!clockHand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, CachedRoute> entry = clockHand.next();
+                CachedRoute cached = entry.getValue();
+                if (cached.referenced) {
+                    cached.referenced = false;
+                } else {
+                    routeCache.remove(entry.getKey(), cached);
+                }
+            }
+        }
+    }
+
+    /**
+     * 第一级：按第一个路径段查找应用
+     */
+    public WebAppContext findContext(String requestURI) {
+        if (!contexts.isEmpty() && requestURI.length() > 1 && requestURI.charAt(0) == '/') {
+            int slash = requestURI.indexOf('/', 1);
+            String contextPath = slash < 0 ? requestURI : requestURI.substring(0, slash);
+            WebAppContext context = contexts.get(contextPath);
+            if (context != null) {
+                return context;
+            }
+        }
+        return rootContext;
+    }
+
+    /**
+     * 第二级：在应用内匹配Servlet并计算servletPath和pathInfo（Servlet规范12.2）
+     */
+    public static Route resolve(WebAppContext context, String requestURI) {
+        String path = context.getResourcePath(requestURI);
+        ServletRouter servletRouter = context.getServletContainer().getRouter();
+        ServletRouter.Mapping mapping = servletRouter.match(path);
+
+        String servletPath = path;
+        String pathInfo = null;
+        if (mapping != null && mapping.getMatchType() == ServletRouter.MatchType.PREFIX) {
+            // /api/* 匹配 /api/status 时 servletPath=/api, pathInfo=/status
+            int length = mapping.getServletPathLength();
+            servletPath = path.substring(0, length);
+            pathInfo = path.length() > length ? path.substring(length) : null;
+        } else if (mapping != null && mapping.getPattern().isEmpty()) {
+            // 空字符串模式匹配应用根路径
+            servletPath = "";
+            pathInfo = "/";
+        }
+        // 静态资源相当于默认Servlet，同样经过映射到该路径的Filter
+        FilterRegistrationImpl[] filters = (mapping != null ? mapping : servletRouter.getStaticMapping())
+                .selectFilters(path);
+        return new Route(context, servletRouter, mapping, filters, path, servletPath, pathInfo);
+    }
+
+    public int getCachedRouteCount() {
+        return routeCache.size();
+    }
+
+    /**
+     * 缓存条目：路由结果和CLOCK访问标记
+     */
+    private static final class CachedRoute {
+        private final Route route;
+        private volatile boolean referenced;
+
+        CachedRoute(Route route) {
+            this.route = route;
+        }
+    }
+
+    /**
+     * 一次路由的结果（不可变）
+     */
+    public static final class Route {
+        private final WebAppContext context;
+        private final ServletRouter servletRouter;
+        private final ServletRouter.Mapping mapping;
+        private final FilterRegistrationImpl[] filters;
+        private final String path;
+        private final String servletPath;
+        private final String pathInfo;
+
+        Route(WebAppContext context, ServletRouter servletRouter, ServletRouter.Mapping mapping,
+                FilterRegistrationImpl[] filters, String path, String servletPath, String pathInfo) {
+            this.context = context;
+            this.servletRouter = servletRouter;
+            this.mapping = mapping;
+            this.filters = filters;
+            this.path = path;
+            this.servletPath = servletPath;
+            this.pathInfo = pathInfo;
+        }
+
+        public WebAppContext getContext() {
+            return context;
+        }
+
+        /**
+         * @return 匹配的Servlet映射；为null时请求作为静态资源处理
+         */
+        public ServletRouter.Mapping getMapping() {
+            return mapping;
+        }
+
+        /**
+         * @return 请求依次经过的Filter（只读）；作为静态资源处理时为静态资源经过的Filter
+         */
+        public FilterRegistrationImpl[] getFilters() {
+            return filters;
+        }
+
+        /**
+         * @return 去掉上下文路径后的请求路径
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getServletPath() {
+            return servletPath;
+        }
+
+        public String getPathInfo() {
+            return pathInfo;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + context.getWebAppName() + "] " + path + " -> " + (mapping != null ? mapping : "static");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.webcontainer.stage5;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.DispatcherType;
+
+/**
+ * 第五阶段：Web应用部署描述
+ * 来自WEB-INF/web.xml和@WebServlet/@WebFilter注解，由WebAppContext在启动时应用到Servlet容器
+ */
+public class WebAppConfig {
+
+    private boolean metadataComplete = false;
+    private final Map<String, String> contextParams = new LinkedHashMap<>();
+    private final List<ServletDef> servlets = new ArrayList<>();
+    private final List<FilterDef> filters = new ArrayList<>();
+    private final List<FilterMappingDef> filterMappings = new ArrayList<>();
+
+    /**
+     * 合并注解扫描的结果：web.xml中已声明的同名Servlet/Filter以web.xml为准，注解的Filter映射排在web.xml之后
+     * web.xml声明了Servlet但没有servlet-mapping时，使用注解的urlPatterns（Servlet规范8.2.3）
+     */
+    public void mergeAnnotations(WebAppConfig annotations) {
+        Map<String, ServletDef> servletsByName = new HashMap<>();
+        for (ServletDef servlet : servlets) {
+            servletsByName.put(servlet.getName(), servlet);
+        }
+        for (ServletDef servlet : annotations.servlets) {
+            ServletDef declared = servletsByName.putIfAbsent(servlet.getName(), servlet);
+            if (declared == null) {
+                servlets.add(servlet);
+            } else if (declared.getUrlPatterns().isEmpty()) {
+                declared.getUrlPatterns().addAll(servlet.getUrlPatterns());
+            }
+        }
+
+        Set<String> filterNames = new HashSet<>();
+        for (FilterDef filter : filters) {
+            filterNames.add(filter.getName());
+        }
+        for (FilterDef filter : annotations.filters) {
+            if (filterNames.add(filter.getName())) {
+                filters.add(filter);
+            }
+        }
+        for (FilterMappingDef mapping : annotations.filterMappings) {
+            if (!hasFilterMapping(mapping.getFilterName())) {
+                filterMappings.add(mapping);
+            }
+        }
+    }
+
+    private boolean hasFilterMapping(String filterName) {
+        for (FilterMappingDef mapping : filterMappings) {
+            if (mapping.getFilterName().equals(filterName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isMetadataComplete() {
+        return metadataComplete;
+    }
+
+    public void setMetadataComplete(boolean metadataComplete) {
+        this.metadataComplete = metadataComplete;
+    }
+
+    public Map<String, String> getContextParams() {
+        return contextParams;
+    }
+
+    public List<ServletDef> getServlets() {
+        return servlets;
+    }
+
+    public List<FilterDef> getFilters() {
+        return filters;
+    }
+
+    public List<FilterMappingDef> getFilterMappings() {
+        return filterMappings;
+    }
+
+    /**
+     * Servlet声明（servlet + servlet-mapping，或@WebServlet）
+     */
+    public static class ServletDef {
+        private final String name;
+        private final String className;
+        private final int loadOnStartup;
+        private final Map<String, String> initParams;
+        private final List<String> urlPatterns = new ArrayList<>();
+
+        public ServletDef(String name, String className, int loadOnStartup, Map<String, String> initParams) {
+            this.name = name;
+            this.className = className;
+            this.loadOnStartup = loadOnStartup;
+            this.initParams = initParams;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public int getLoadOnStartup() {
+            return loadOnStartup;
+        }
+
+        public Map<String, String> getInitParams() {
+            return Collections.unmodifiableMap(initParams);
+        }
+
+        public List<String> getUrlPatterns() {
+            return urlPatterns;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + className + ") -> " + urlPatterns;
+        }
+    }
+
+    /**
+     * Filter声明（filter，或@WebFilter）
+     */
+    public static class FilterDef {
+        private final String name;
+        private final String className;
+        private final Map<String, String> initParams;
+
+        public FilterDef(String name, String className, Map<String, String> initParams) {
+            this.name = name;
+            this.className = className;
+            this.initParams = initParams;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public Map<String, String> getInitParams() {
+            return Collections.unmodifiableMap(initParams);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + className + ")";
+        }
+    }
+
+    /**
+     * Filter映射（filter-mapping，或@WebFilter的urlPatterns/servletNames）
+     */
+    public static class FilterMappingDef {
+        private final String filterName;
+        private final List<String> urlPatterns = new ArrayList<>();
+        private final List<String> servletNames = new ArrayList<>();
+        // 为空表示默认的REQUEST
+        private final EnumSet<DispatcherType> dispatcherTypes = EnumSet.noneOf(DispatcherType.class);
+
+        public FilterMappingDef(String filterName) {
+            this.filterName = filterName;
+        }
+
+        public String getFilterName() {
+            return filterName;
+        }
+
+        public List<String> getUrlPatterns() {
+            return urlPatterns;
+        }
+
+        public List<String> getServletNames() {
+            return servletNames;
+        }
+
+        public EnumSet<DispatcherType> getDispatcherTypes() {
+            return dispatcherTypes.isEmpty() ? EnumSet.of(DispatcherType.REQUEST) : EnumSet.copyOf(dispatcherTypes);
+        }
+
+        public void addDispatcherType(DispatcherType dispatcherType) {
+            dispatcherTypes.add(dispatcherType);
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.webcontainer.stage5;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
+import javax.servlet.GenericServlet;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.webcontainer.stage2.StaticResourceHandler;
+import com.webcontainer.stage3.ApplicationFilterChain;
+import com.webcontainer.stage3.FilterRegistrationImpl;
 import com.webcontainer.stage3.ServletContainer;
+import com.webcontainer.stage4.EnhancedHttpServletRequestImpl;
+import com.webcontainer.stage4.EnhancedHttpServletResponseImpl;
 import com.webcontainer.stage4.SessionManager;
 
 /**
@@ -19,6 +33,13 @@ import com.webcontainer.stage4.SessionManager;
  * 代表一个独立的Web应用，包含独立的类加载器、Servlet容器和配置
  */
 public class WebAppContext implements ServletContext {
+    // 预热：-Dwebcontainer.warmup.enabled=true 时在应用开始接收请求前预加载静态文件并预先请求warmup-urls.txt中的URL
+    public static final String WARMUP_ENABLED_PROPERTY = "webcontainer.warmup.enabled";
+    public static final String WARMUP_STATIC_BYTES_PROPERTY = "webcontainer.warmup.staticBytes";
+    private static final long DEFAULT_WARMUP_STATIC_BYTES = 4L * 1024 * 1024;
+    // 每行一个相对上下文路径的URL，#开头为注释
+    private static final String WARMUP_URLS_FILE = "WEB-INF/warmup-urls.txt";
+    private static final String WEB_XML_FILE = "WEB-INF/web.xml";
 
     private final String contextPath;
     private final String webAppName;
@@ -26,6 +47,8 @@ public class WebAppContext implements ServletContext {
     private final WebAppClassLoader classLoader;
     private final ServletContainer servletContainer;
     private final SessionManager sessionManager;
+    // 应用目录下的静态资源，缓存随应用的生命周期保持
+    private final StaticResourceHandler staticHandler;
     private final Map<String, Object> attributes = new ConcurrentHashMap<>();
     private final Map<String, String> initParameters = new ConcurrentHashMap<>();
 
@@ -46,6 +69,9 @@ public class WebAppContext implements ServletContext {
         // 创建独立的会话管理器
         this.sessionManager = new SessionManager(this);
 
+        // 创建应用自己的静态资源处理器
+        this.staticHandler = new StaticResourceHandler(webAppDir.getPath());
+
         System.out.println("创建Web应用Context: " + contextPath + " (" + webAppName + ")");
     }
 
@@ -66,10 +92,24 @@ public class WebAppContext implements ServletContext {
         try {
             currentThread.setContextClassLoader(classLoader);
 
-            // 加载web.xml配置（简化实现，这里手动配置一些示例Servlet）
+            // 加载web.xml和注解配置
             loadConfiguration();
 
-            // Servlet容器已经在loadConfiguration中完成初始化
+            // Filter先于load-on-startup的Servlet初始化
+            int filters = servletContainer.initFilters();
+            if (filters > 0) {
+                System.out.println("初始化Filter [" + webAppName + "]: " + filters + " 个");
+            }
+
+            // load-on-startup的Servlet在接收请求前完成init()
+            int servlets = servletContainer.loadOnStartupServlets();
+            if (servlets > 0) {
+                System.out.println("启动时加载Servlet [" + webAppName + "]: " + servlets + " 个");
+            }
+
+            if (Boolean.getBoolean(WARMUP_ENABLED_PROPERTY)) {
+                warmUp();
+            }
 
             started = true;
             System.out.println("Web应用启动成功: " + contextPath);
@@ -104,6 +144,10 @@ public class WebAppContext implements ServletContext {
             // 清理属性
             attributes.clear();
 
+            // 释放静态资源缓存
+            System.out.println("静态资源缓存 [" + webAppName + "]: " + staticHandler.getCacheStats());
+            staticHandler.getCache().clear();
+
             started = false;
             System.out.println("Web应用停止成功: " + contextPath);
 
@@ -123,9 +167,22 @@ public class WebAppContext implements ServletContext {
             return false;
         }
 
-        // 检查请求是否属于这个Context
+        // 检查请求是否属于这个Context（按完整的路径段比较）
         String requestPath = request.getRequestURI();
-        if (!requestPath.startsWith(contextPath)) {
+        if (!requestPath.startsWith(contextPath) || (requestPath.length() > contextPath.length()
+                && requestPath.charAt(contextPath.length()) != '/')) {
+            return false;
+        }
+        return handleRequest(request, response, RequestRouter.resolve(this, requestPath));
+    }
+
+    /**
+     * 按已解析的路由处理请求
+     *
+     * @return false表示没有Servlet匹配，应作为静态资源处理
+     */
+    public boolean handleRequest(HttpServletRequest request, HttpServletResponse response, RequestRouter.Route route) {
+        if (!started || route.getMapping() == null) {
             return false;
         }
 
@@ -135,70 +192,186 @@ public class WebAppContext implements ServletContext {
         try {
             // 设置应用的类加载器
             currentThread.setContextClassLoader(classLoader);
+            return dispatch(request, response, route);
+        } finally {
+            currentThread.setContextClassLoader(originalClassLoader);
+        }
+    }
 
-            // 调整请求路径（移除context path）
-            String servletPath = requestPath.substring(contextPath.length());
-            if (servletPath.isEmpty()) {
-                servletPath = "/";
-            }
-
-            // 创建包装请求，设置正确的servlet path
-            ContextAwareRequest contextRequest = new ContextAwareRequest(request, this, servletPath);
+    /**
+     * 交给路由匹配的Servlet处理（调用方已设置好应用的类加载器）
+     */
+    private boolean dispatch(HttpServletRequest request, HttpServletResponse response, RequestRouter.Route route) {
+        try {
+            // 创建包装请求，设置正确的servlet path和path info
+            ContextAwareRequest contextRequest = new ContextAwareRequest(request, this, route.getServletPath(),
+                    route.getPathInfo());
 
             // 委托给Servlet容器处理
-            return servletContainer.handleRequest(contextRequest, response);
+            return servletContainer.service(route.getMapping().getServletName(), route.getFilters(), contextRequest,
+                    response);
 
         } catch (Exception e) {
             System.err.println("处理请求时发生错误 [" + contextPath + "]: " + e.getMessage());
             e.printStackTrace();
             return false;
+        }
+    }
+
+    /**
+     * 没有Servlet匹配的请求作为静态资源处理。静态资源相当于应用的默认Servlet，
+     * 先依次经过路由时确定的Filter链（例如映射到/*的认证Filter），全部放行后才交给staticContent
+     *
+     * @param staticContent 提供静态资源，收到的请求和响应可能已被Filter包装
+     */
+    public void serveStatic(HttpServletRequest request, HttpServletResponse response, RequestRouter.Route route,
+            StaticContent staticContent) throws IOException {
+        FilterRegistrationImpl[] filters = route.getFilters();
+        if (filters.length == 0) {
+            staticContent.serve(request, response);
+            return;
+        }
+
+        Thread currentThread = Thread.currentThread();
+        ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+        try {
+            currentThread.setContextClassLoader(classLoader);
+            ContextAwareRequest contextRequest = new ContextAwareRequest(request, this, route.getPath(), null);
+            new ApplicationFilterChain(filters, new GenericServlet() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void service(ServletRequest req, ServletResponse res) throws IOException {
+                    staticContent.serve((HttpServletRequest) req, (HttpServletResponse) res);
+                }
+            }).doFilter(contextRequest, response);
+        } catch (ServletException | RuntimeException e) {
+            System.err.println("静态资源Filter处理错误 [" + contextPath + "]: " + e.getMessage());
+            e.printStackTrace();
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
         } finally {
             currentThread.setContextClassLoader(originalClassLoader);
         }
     }
 
     /**
-     * 加载Web应用配置（简化实现）
+     * 静态资源的提供者（由服务器实现，应用只负责在它之前执行Filter）
+     */
+    public interface StaticContent {
+        void serve(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    /**
+     * 启动预热：在字节预算内把静态文件读入缓存，然后依次请求一遍warmup-urls.txt中列出的URL，
+     * 让类加载、Servlet初始化和文件读取发生在应用对外可见之前
+     */
+    private void warmUp() {
+        long begin = System.nanoTime();
+        int files = staticHandler.preload(Long.getLong(WARMUP_STATIC_BYTES_PROPERTY, DEFAULT_WARMUP_STATIC_BYTES));
+
+        int urls = 0;
+        for (String path : readWarmupUrls()) {
+            EnhancedHttpServletResponseImpl response = new EnhancedHttpServletResponseImpl();
+            EnhancedHttpServletRequestImpl request = new EnhancedHttpServletRequestImpl("GET", contextPath + path,
+                    "HTTP/1.1", sessionManager, response);
+            // 没有Servlet处理的URL按静态资源预热
+            RequestRouter.Route route = RequestRouter.resolve(this, request.getRequestURI());
+            if (route.getMapping() == null || !dispatch(request, response, route)) {
+                staticHandler.handleRequest(route.getPath());
+            }
+            urls++;
+        }
+
+        System.out.println("预热完成 [" + webAppName + "]: 静态文件 " + files + " 个, URL " + urls + " 个, 耗时 "
+                + (System.nanoTime() - begin) / 1_000_000 + " ms");
+    }
+
+    private List<String> readWarmupUrls() {
+        Path file = webAppDir.toPath().resolve(WARMUP_URLS_FILE);
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyList();
+        }
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter(line -> line.startsWith("/"))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            System.err.println("读取预热URL列表失败: " + file + " - " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 获取请求在本应用目录中的资源路径（去掉上下文路径）
      */
-    private void loadConfiguration() {
-        // 这里可以解析web.xml文件，现在简化为手动配置
+    public String getResourcePath(String requestURI) {
+        String path = requestURI.substring(contextPath.length());
+        return path.isEmpty() ? "/" : path;
+    }
+
+    public StaticResourceHandler getStaticHandler() {
+        return staticHandler;
+    }
+
+    /**
+     * 加载Web应用配置：解析WEB-INF/web.xml，除非声明了metadata-complete，再合并类文件中的@WebServlet/@WebFilter注解
+     */
+    private void loadConfiguration() throws IOException {
         System.out.println("加载Web应用配置: " + webAppName);
 
-        // 为ROOT应用配置一些默认Servlet
-        if ("ROOT".equals(webAppName)) {
-            // 配置一些示例Servlet
-            try {
-                // 注册第五阶段的Context演示Servlet
-                servletContainer.registerServlet("contextServlet",
-                        "com.webcontainer.stage5.ContextDemoServlet", "/context");
-                System.out.println("注册Context演示Servlet: /context");
-
-                // 注册部署统计API
-                servletContainer.registerServlet("deploymentStatsServlet",
-                        "com.webcontainer.stage5.DeploymentStatsServlet", "/api/deployment");
-                System.out.println("注册部署统计API: /api/deployment");
-
-                // 注册第四阶段的Servlet（向后兼容）
-                servletContainer.registerServlet("standardServlet",
-                        "com.webcontainer.stage3.StandardServlet", "/servlet");
-                System.out.println("注册标准Servlet: /servlet");
-
-                servletContainer.registerServlet("apiServlet",
-                        "com.webcontainer.stage3.ApiServlet", "/api/*");
-                System.out.println("注册API Servlet: /api/*");
-
-                servletContainer.registerServlet("sessionDemoServlet",
-                        "com.webcontainer.stage4.SessionDemoServlet", "/session");
-                System.out.println("注册会话演示Servlet: /session");
-
-                servletContainer.registerServlet("sessionStatsServlet",
-                        "com.webcontainer.stage4.SessionStatsServlet", "/api/sessions");
-                System.out.println("注册会话统计API: /api/sessions");
-
-            } catch (Exception e) {
-                System.err.println("注册Servlet失败: " + e.getMessage());
+        WebAppConfig config;
+        Path webXml = webAppDir.toPath().resolve(WEB_XML_FILE);
+        if (Files.isRegularFile(webXml)) {
+            // web.xml有错误时部署失败，而不是带着不完整的配置启动
+            config = WebXmlParser.parse(webXml);
+        } else {
+            config = new WebAppConfig();
+        }
+        if (!config.isMetadataComplete()) {
+            config.mergeAnnotations(AnnotationScanner.scan(webAppDir, webAppName));
+        }
+        applyConfiguration(config);
+    }
+
+    private void applyConfiguration(WebAppConfig config) {
+        initParameters.putAll(config.getContextParams());
+
+        for (WebAppConfig.ServletDef servlet : config.getServlets()) {
+            servletContainer.declareServlet(servlet.getName(), servlet.getClassName(), servlet.getLoadOnStartup(),
+                    servlet.getInitParams());
+            for (String urlPattern : servlet.getUrlPatterns()) {
+                servletContainer.addServletMapping(urlPattern, servlet.getName());
             }
         }
+
+        for (WebAppConfig.FilterDef filter : config.getFilters()) {
+            FilterRegistrationImpl registration = servletContainer.registerFilter(filter.getName(),
+                    filter.getClassName());
+            if (registration != null) {
+                registration.setInitParameters(filter.getInitParams());
+            }
+        }
+        for (WebAppConfig.FilterMappingDef mapping : config.getFilterMappings()) {
+            FilterRegistrationImpl registration = servletContainer.getFilterRegistration(mapping.getFilterName());
+            if (registration == null) {
+                System.err.println("filter-mapping引用了未声明的Filter: " + mapping.getFilterName());
+                continue;
+            }
+            if (!mapping.getUrlPatterns().isEmpty()) {
+                registration.addMappingForUrlPatterns(mapping.getDispatcherTypes(), true,
+                        mapping.getUrlPatterns().toArray(new String[0]));
+            }
+            if (!mapping.getServletNames().isEmpty()) {
+                registration.addMappingForServletNames(mapping.getDispatcherTypes(), true,
+                        mapping.getServletNames().toArray(new String[0]));
+            }
+        }
+
+        System.out.println("应用配置 [" + webAppName + "]: Servlet " + config.getServlets().size() + " 个, Filter "
+                + config.getFilters().size() + " 个");
     }
 
     // ServletContext接口实现
@@ -385,35 +558,50 @@ public class WebAppContext implements ServletContext {
         return Collections.emptyMap();
     }
 
+    // Filter只能在应用启动前注册，映射在注册时编译进路由表
+
     @Override
     public javax.servlet.FilterRegistration.Dynamic addFilter(String filterName, String className) {
-        return null;
+        checkNotStarted();
+        return servletContainer.registerFilter(filterName, className);
     }
 
     @Override
     public javax.servlet.FilterRegistration.Dynamic addFilter(String filterName, javax.servlet.Filter filter) {
-        return null;
+        checkNotStarted();
+        return servletContainer.registerFilter(filterName, filter);
     }
 
     @Override
     public javax.servlet.FilterRegistration.Dynamic addFilter(String filterName,
             Class<? extends javax.servlet.Filter> filterClass) {
-        return null;
+        checkNotStarted();
+        return servletContainer.registerFilter(filterName, filterClass.getName());
     }
 
     @Override
     public <T extends javax.servlet.Filter> T createFilter(Class<T> clazz) throws ServletException {
-        return null;
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ServletException("无法创建Filter: " + clazz.getName(), e);
+        }
     }
 
     @Override
     public javax.servlet.FilterRegistration getFilterRegistration(String filterName) {
-        return null;
+        return servletContainer.getFilterRegistration(filterName);
     }
 
     @Override
     public java.util.Map<String, ? extends javax.servlet.FilterRegistration> getFilterRegistrations() {
-        return Collections.emptyMap();
+        return servletContainer.getFilterRegistrations();
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Web应用已启动，不能再注册Filter: " + contextPath);
+        }
     }
 
     @Override
@@ -1,22 +1,38 @@
 package com.webcontainer.stage5;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 第五阶段：部署器
- * 负责自动扫描、加载和卸载Web应用
+ * 负责自动扫描、加载和卸载Web应用。
+ * webapps目录的变化由FileChangeWatcher推送：新应用目录在一段时间内没有变化（复制完成）后才部署，
+ * WEB-INF下的变化（web.xml、classes、lib）使该应用在同样的静默期后重新部署，
+ * 其他文件的变化只使该应用的静态资源缓存失效，应用目录删除时卸载；无法监听时退回定期扫描
  */
 public class WebAppDeployer {
+    // 应用目录最后一次变化之后等待的静默期，期间再有变化重新计时
+    public static final String QUIET_MILLIS_PROPERTY = "webcontainer.deployer.quietMillis";
+    private static final long DEFAULT_QUIET_MILLIS = 1000;
 
     private final File webAppsDir;
     private final ClassLoader containerClassLoader;
     private final Map<String, WebAppContext> deployedApps = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scannerExecutor;
+    private final long quietMillis = Long.getLong(QUIET_MILLIS_PROPERTY, DEFAULT_QUIET_MILLIS);
+    // 应用名 -> 等待静默期结束的部署任务
+    private final Map<String, ScheduledFuture<?>> pendingDeploys = new ConcurrentHashMap<>();
+    private FileChangeWatcher watcher;
+    // 已部署应用的路由表，部署和卸载时整体替换
+    private volatile RequestRouter router = RequestRouter.EMPTY;
 
     private volatile boolean running = false;
 
@@ -48,13 +64,127 @@ public class WebAppDeployer {
             System.out.println("创建webapps目录: " + webAppsDir.getAbsolutePath());
         }
 
+        // 先注册监听再做初始部署，两者之间发生的变化不会遗漏
+        watcher = createWatcher();
+
         // 初始部署：扫描现有应用
         performInitialDeployment();
 
-        // 启动定期扫描任务（每5秒扫描一次）
-        scannerExecutor.scheduleWithFixedDelay(this::scanAndDeploy, 5, 5, TimeUnit.SECONDS);
+        if (watcher != null) {
+            watcher.start();
+            System.out.println("Web应用部署器启动完成，监听目录变化");
+        } else {
+            // 启动定期扫描任务（每5秒扫描一次）
+            scannerExecutor.scheduleWithFixedDelay(this::scanAndDeploy, 5, 5, TimeUnit.SECONDS);
+            System.out.println("Web应用部署器启动完成，扫描间隔: 5秒");
+        }
+    }
+
+    private FileChangeWatcher createWatcher() {
+        try {
+            return new FileChangeWatcher(webAppsDir.toPath(), new FileChangeWatcher.Listener() {
+                @Override
+                public void onFileChanged(FileChangeWatcher.ChangeKind kind, Path path) {
+                    handleFileChange(kind, path);
+                }
+
+                @Override
+                public void onOverflow() {
+                    handleOverflow();
+                }
+            });
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("无法监听webapps目录，改为定期扫描: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 处理webapps目录下的文件变化（在监听线程上调用）
+     */
+    private void handleFileChange(FileChangeWatcher.ChangeKind kind, Path path) {
+        if (!running) {
+            return;
+        }
+        Path relative = watcher.getRoot().relativize(path);
+        String appName = relative.getName(0).toString();
+
+        if (relative.getNameCount() == 1) {
+            // 应用目录本身的增删：新目录的内容可能还在复制，等静默期结束再部署
+            if (kind == FileChangeWatcher.ChangeKind.DELETED) {
+                cancelPendingDeploy(appName);
+                undeployApp(appName);
+            } else if (Files.isDirectory(path) && (kind == FileChangeWatcher.ChangeKind.CREATED
+                    || !deployedApps.containsKey(appName))) {
+                // 已部署应用目录本身的修改事件只表示其中的条目有变化，由下面的逐文件事件处理
+                scheduleDeploy(appName);
+            }
+            return;
+        }
+
+        WebAppContext context = deployedApps.get(appName);
+        if (context == null || pendingDeploys.containsKey(appName)
+                || "WEB-INF".equalsIgnoreCase(relative.getName(1).toString())) {
+            // 还没有部署（正在复制或上次部署失败）的应用，或者配置、类文件发生变化的应用：推迟重新部署
+            scheduleDeploy(appName);
+        } else {
+            // 应用内的静态文件变化：使对应的静态资源缓存失效
+            context.getStaticHandler().onFileChanged(path);
+        }
+    }
+
+    /**
+     * 安排在静默期之后（重新）部署应用，已安排的任务重新计时
+     */
+    private void scheduleDeploy(String appName) {
+        pendingDeploys.compute(appName, (name, pending) -> {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            ScheduledFuture<?>[] self = new ScheduledFuture<?>[1];
+            self[0] = scannerExecutor.schedule(() -> {
+                // 只有仍是最新安排的任务才执行
+                if (pendingDeploys.remove(name, self[0])) {
+                    redeployApp(name);
+                }
+            }, quietMillis, TimeUnit.MILLISECONDS);
+            return self[0];
+        });
+    }
+
+    private void cancelPendingDeploy(String appName) {
+        ScheduledFuture<?> pending = pendingDeploys.remove(appName);
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    /**
+     * 卸载应用的当前版本（如果有），再按目录的当前内容部署
+     */
+    private synchronized void redeployApp(String appName) {
+        if (!running) {
+            return;
+        }
+        File appDir = new File(webAppsDir, appName);
+        if (deployedApps.containsKey(appName)) {
+            System.out.println("应用配置或类文件已变化，重新部署: " + appName);
+            undeployApp(appName);
+        }
+        if (appDir.isDirectory()) {
+            deployApp(appName, appDir);
+        }
+    }
 
-        System.out.println("Web应用部署器启动完成，扫描间隔: 5秒");
+    /**
+     * 监听事件丢失：全量扫描部署，并清空所有应用的静态资源缓存
+     */
+    private void handleOverflow() {
+        System.out.println("文件变化事件溢出，重新扫描webapps目录");
+        scanAndDeploy();
+        for (WebAppContext context : deployedApps.values()) {
+            context.getStaticHandler().getCache().clear();
+        }
     }
 
     /**
@@ -67,7 +197,17 @@ public class WebAppDeployer {
 
         running = false;
 
-        // 停止扫描任务
+        // 停止监听和扫描任务
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("关闭文件变化监听时发生错误: " + e.getMessage());
+            }
+        }
+        for (String appName : pendingDeploys.keySet()) {
+            cancelPendingDeploy(appName);
+        }
         scannerExecutor.shutdown();
         try {
             if (!scannerExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -154,11 +294,15 @@ public class WebAppDeployer {
             // 创建WebAppContext
             WebAppContext context = new WebAppContext(contextPath, appName, appDir, containerClassLoader);
 
+            // 文件变化由监听推送，静态资源缓存命中时不再逐个校验文件
+            context.getStaticHandler().getCache().setWatched(watcher != null);
+
             // 启动应用
             context.start();
 
             // 记录已部署的应用
             deployedApps.put(appName, context);
+            router = new RequestRouter(deployedApps.values());
 
             System.out.println("Web应用部署成功: " + appName + " -> " + contextPath);
 
@@ -175,6 +319,8 @@ public class WebAppDeployer {
         try {
             WebAppContext context = deployedApps.remove(appName);
             if (context != null) {
+                // 先停止路由到该应用，再停止应用
+                router = new RequestRouter(deployedApps.values());
                 System.out.println("卸载Web应用: " + appName);
 
                 // 停止应用
@@ -194,36 +340,32 @@ public class WebAppDeployer {
      */
     public boolean handleRequest(javax.servlet.http.HttpServletRequest request,
             javax.servlet.http.HttpServletResponse response) {
-        String requestURI = request.getRequestURI();
-
-        // 查找匹配的Context
-        WebAppContext bestMatch = null;
-        int longestMatch = -1;
-
-        for (WebAppContext context : deployedApps.values()) {
-            String contextPath = context.getContextPath();
-
-            // ROOT应用的特殊处理
-            if (contextPath.isEmpty()) {
-                if (bestMatch == null) {
-                    bestMatch = context;
-                    longestMatch = 0;
-                }
-            } else if (requestURI.startsWith(contextPath)) {
-                if (contextPath.length() > longestMatch) {
-                    bestMatch = context;
-                    longestMatch = contextPath.length();
-                }
-            }
-        }
-
-        if (bestMatch != null) {
-            return bestMatch.handleRequest(request, response);
+        RequestRouter.Route route = route(request.getRequestURI());
+        if (route != null) {
+            return route.getContext().handleRequest(request, response, route);
         }
 
         return false; // 没有匹配的应用
     }
 
+    /**
+     * 一次解析出请求所属的应用、Servlet、servletPath和pathInfo
+     *
+     * @return 路由结果；没有部署ROOT应用且没有其他应用匹配时返回null
+     */
+    public RequestRouter.Route route(String requestURI) {
+        return router.route(requestURI);
+    }
+
+    /**
+     * 按上下文路径查找请求所属的Web应用（按路径段匹配，ROOT应用兜底）
+     *
+     * @return 匹配的应用；没有部署ROOT应用且没有其他应用匹配时返回null
+     */
+    public WebAppContext findContext(String requestURI) {
+        return router.findContext(requestURI);
+    }
+
     /**
      * 获取已部署的应用信息
      */
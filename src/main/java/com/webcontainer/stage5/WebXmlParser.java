@@ -0,0 +1,154 @@
+package com.webcontainer.stage5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * 第五阶段：WEB-INF/web.xml解析器
+ * 支持context-param、servlet、servlet-mapping、filter、filter-mapping和metadata-complete；
+ * 不访问外部DTD和Schema，旧版本带DOCTYPE的web.xml同样可以解析
+ */
+public final class WebXmlParser {
+
+    private WebXmlParser() {
+    }
+
+    public static WebAppConfig parse(Path webXml) throws IOException {
+        try (InputStream in = Files.newInputStream(webXml)) {
+            return parse(in);
+        }
+    }
+
+    public static WebAppConfig parse(InputStream in) throws IOException {
+        Element root;
+        try {
+            root = newDocumentBuilder().parse(in).getDocumentElement();
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("web.xml格式错误: " + e.getMessage(), e);
+        }
+
+        WebAppConfig config = new WebAppConfig();
+        config.setMetadataComplete("true".equalsIgnoreCase(root.getAttribute("metadata-complete")));
+
+        for (Element param : children(root, "context-param")) {
+            config.getContextParams().put(required(param, "param-name"), text(param, "param-value"));
+        }
+
+        Map<String, WebAppConfig.ServletDef> servlets = new LinkedHashMap<>();
+        for (Element servlet : children(root, "servlet")) {
+            String name = required(servlet, "servlet-name");
+            String loadOnStartup = text(servlet, "load-on-startup");
+            servlets.put(name, new WebAppConfig.ServletDef(name, required(servlet, "servlet-class"),
+                    parseLoadOnStartup(loadOnStartup), initParams(servlet)));
+        }
+        for (Element mapping : children(root, "servlet-mapping")) {
+            String name = required(mapping, "servlet-name");
+            WebAppConfig.ServletDef servlet = servlets.get(name);
+            if (servlet == null) {
+                throw new IOException("servlet-mapping引用了未声明的Servlet: " + name);
+            }
+            for (Element pattern : children(mapping, "url-pattern")) {
+                servlet.getUrlPatterns().add(pattern.getTextContent().trim());
+            }
+        }
+        config.getServlets().addAll(servlets.values());
+
+        for (Element filter : children(root, "filter")) {
+            config.getFilters().add(new WebAppConfig.FilterDef(required(filter, "filter-name"),
+                    required(filter, "filter-class"), initParams(filter)));
+        }
+        for (Element mapping : children(root, "filter-mapping")) {
+            WebAppConfig.FilterMappingDef def = new WebAppConfig.FilterMappingDef(required(mapping, "filter-name"));
+            for (Element pattern : children(mapping, "url-pattern")) {
+                def.getUrlPatterns().add(pattern.getTextContent().trim());
+            }
+            for (Element servletName : children(mapping, "servlet-name")) {
+                def.getServletNames().add(servletName.getTextContent().trim());
+            }
+            for (Element dispatcher : children(mapping, "dispatcher")) {
+                def.addDispatcherType(DispatcherType.valueOf(dispatcher.getTextContent().trim()));
+            }
+            config.getFilterMappings().add(def);
+        }
+        return config;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return factory.newDocumentBuilder();
+    }
+
+    /**
+     * 没有值的load-on-startup按0处理（规范：容器可自行决定顺序）
+     */
+    private static int parseLoadOnStartup(String value) {
+        if (value == null) {
+            return -1;
+        }
+        if (value.isEmpty()) {
+            return 0;
+        }
+        return Integer.parseInt(value);
+    }
+
+    private static Map<String, String> initParams(Element parent) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (Element param : children(parent, "init-param")) {
+            params.put(required(param, "param-name"), text(param, "param-value"));
+        }
+        return params;
+    }
+
+    private static String required(Element parent, String name) throws IOException {
+        String value = text(parent, name);
+        if (value == null || value.isEmpty()) {
+            throw new IOException("web.xml中的<" + parent.getLocalName() + ">缺少<" + name + ">");
+        }
+        return value;
+    }
+
+    /**
+     * 子元素的文本（去掉首尾空白），不存在时返回null
+     */
+    private static String text(Element parent, String name) {
+        List<Element> elements = children(parent, name);
+        return elements.isEmpty() ? null : elements.get(0).getTextContent().trim();
+    }
+
+    /**
+     * 按本地名查找直接子元素，忽略命名空间（各版本web.xml的命名空间不同）
+     */
+    private static List<Element> children(Element parent, String name) {
+        List<Element> result = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                String localName = node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+                if (name.equals(localName)) {
+                    result.add((Element) node);
+                }
+            }
+        }
+        return result;
+    }
+}
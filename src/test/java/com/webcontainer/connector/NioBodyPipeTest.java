@@ -0,0 +1,81 @@
+package com.webcontainer.connector;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.webcontainer.http.HttpBodyDecoder;
+import com.webcontainer.http.HttpRequestParser;
+
+/**
+ * 请求体管道测试
+ */
+public class NioBodyPipeTest {
+
+    private static HttpBodyDecoder decoder(int contentLength) throws Exception {
+        String head = "POST /upload HTTP/1.1\r\nContent-Length: " + contentLength + "\r\n\r\n";
+        return HttpBodyDecoder.forRequest(new HttpRequestParser().parse(
+                ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1))), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        AtomicInteger resumed = new AtomicInteger();
+        NioBodyPipe pipe = new NioBodyPipe(8, resumed::incrementAndGet);
+        HttpBodyDecoder decoder = decoder(20);
+        ByteBuffer data = ByteBuffer.wrap("0123456789abcdefghij".getBytes(StandardCharsets.ISO_8859_1));
+
+        // 写满后剩余数据留在缓冲区中，等待读出
+        assertTrue(pipe.fill(decoder, data));
+        assertEquals(12, data.remaining());
+        byte[] b = new byte[3];
+        assertEquals(3, pipe.read(b, 0, 3));
+        assertEquals(0, resumed.get());
+        assertEquals(3, pipe.read(b, 0, 3));
+        assertEquals(1, resumed.get()); // 读出一半后恢复
+
+        // 环形缓冲区跨越末尾写入
+        assertTrue(pipe.fill(decoder, data));
+        StringBuilder body = new StringBuilder("012345");
+        int n;
+        while (!decoder.isComplete() || pipe.available() > 0) {
+            n = pipe.read(b, 0, b.length);
+            body.append(new String(b, 0, n, StandardCharsets.ISO_8859_1));
+            if (data.hasRemaining()) {
+                pipe.fill(decoder, data);
+            }
+        }
+        assertEquals("0123456789abcdefghij", body.toString());
+        assertEquals(-1, pipe.read());
+    }
+
+    @Test
+    public void testFailWakesReader() throws Exception {
+        NioBodyPipe pipe = new NioBodyPipe(8, () -> { });
+        pipe.fill(decoder(10), ByteBuffer.wrap(new byte[] { 'a' }));
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // 忽略
+            }
+            pipe.fail(new EOFException("连接已关闭"));
+        });
+        closer.start();
+
+        // 已收到的数据先读出，之后阻塞的读取在连接关闭时抛出异常
+        assertEquals('a', pipe.read());
+        try {
+            pipe.read();
+            fail("请求体不完整时应当抛出异常");
+        } catch (IOException e) {
+            assertTrue(e instanceof EOFException);
+        }
+        closer.join();
+    }
+}
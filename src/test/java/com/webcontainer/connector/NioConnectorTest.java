@@ -0,0 +1,195 @@
+package com.webcontainer.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.webcontainer.http.HttpRequestHead;
+import com.webcontainer.http.KeepAlivePolicy;
+import com.webcontainer.stage4.AdmissionController;
+import com.webcontainer.stage4.ThreadPoolRequestProcessor;
+
+/**
+ * NIO连接器回环测试：流水线请求、分段到达的请求头和请求体、流式响应
+ */
+public class NioConnectorTest {
+    private final CountDownLatch streamReleased = new CountDownLatch(1);
+    private ThreadPoolRequestProcessor processor;
+    private NioConnector connector;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        processor = new ThreadPoolRequestProcessor(2, 4, 16);
+        connector = new NioConnector(port, 1, this::createTask, new AdmissionController(processor),
+                new KeepAlivePolicy(100, 5000));
+        Thread acceptor = new Thread(() -> {
+            try {
+                connector.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (int i = 0; i < 100; i++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        fail("连接器没有启动");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        streamReleased.countDown();
+        connector.stop();
+        processor.shutdown();
+    }
+
+    /**
+     * 响应体为请求方法、URI和读到的请求体长度；/stream先提交一部分，等待测试放行后再写完
+     */
+    private NioRequestHandler.RequestTask createTask(HttpRequestHead head, InputStream body) {
+        return (out, keepAliveAllowed) -> {
+            if (head.getUri().equals("/stream")) {
+                out.write(ascii("HTTP/1.1 200 OK\r\nConnection: close\r\n\r\nfirst;"));
+                out.flush();
+                try {
+                    streamReleased.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write(ascii("second"));
+                return false;
+            }
+            long length = 0;
+            byte[] buffer = new byte[1000];
+            int n;
+            while ((n = body.read(buffer)) > 0) {
+                length += n;
+            }
+            byte[] content = ascii(head.getMethod() + " " + head.getUri() + " " + length);
+            out.write(ascii("HTTP/1.1 200 OK\r\nContent-Length: " + content.length + "\r\n\r\n"));
+            out.write(content);
+            return keepAliveAllowed;
+        };
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(ascii("GET /a HTTP/1.1\r\n\r\n"
+                    + "POST /b HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                    + "GET /c HTTP/1.1\r\n\r\n"));
+            InputStream in = socket.getInputStream();
+            // 同一批的响应按请求顺序写出
+            assertEquals("GET /a 0", readResponse(in));
+            assertEquals("POST /b 3", readResponse(in));
+            assertEquals("GET /c 0", readResponse(in));
+        }
+    }
+
+    @Test
+    public void testSplitHeadAndBody() throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // 请求头分几次到达
+            for (String part : new String[] { "GET /sp", "lit HTTP/1.1\r\nHo", "st: x\r\n\r", "\n" }) {
+                out.write(ascii(part));
+                out.flush();
+                Thread.sleep(20);
+            }
+            assertEquals("GET /split 0", readResponse(in));
+
+            // 远大于请求体管道容量的请求体，分多次到达
+            int length = 1024 * 1024;
+            out.write(ascii("POST /upload HTTP/1.1\r\nContent-Length: " + length + "\r\n\r\n"));
+            byte[] chunk = new byte[64 * 1024];
+            for (int sent = 0; sent < length; sent += chunk.length) {
+                out.write(chunk);
+            }
+            assertEquals("POST /upload " + length, readResponse(in));
+
+            // 分块请求体之后的流水线请求照常处理
+            out.write(ascii("POST /chunked HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhel"));
+            out.flush();
+            Thread.sleep(20);
+            out.write(ascii("lo\r\n0\r\n\r\nGET /next HTTP/1.1\r\n\r\n"));
+            assertEquals("POST /chunked 5", readResponse(in));
+            assertEquals("GET /next 0", readResponse(in));
+        }
+    }
+
+    @Test
+    public void testStreamedResponseWrittenBeforeHandlerReturns() throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(ascii("GET /stream HTTP/1.1\r\n\r\n"));
+            InputStream in = socket.getInputStream();
+            String head = readHead(in);
+            assertTrue(head.startsWith("HTTP/1.1 200 OK"));
+            // 处理器还在等待，已flush的部分已经写出
+            assertEquals("first;", new String(readBytes(in, 6), StandardCharsets.ISO_8859_1));
+            streamReleased.countDown();
+            assertEquals("second", new String(in.readAllBytes(), StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readResponse(InputStream in) throws IOException {
+        String head = readHead(in);
+        int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return new String(readBytes(in, length), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("连接已关闭");
+            }
+            head.write(b);
+        }
+        return head.toString("ISO-8859-1");
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new IOException("连接已关闭");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+}
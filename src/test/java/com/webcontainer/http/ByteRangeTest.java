@@ -0,0 +1,38 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/**
+ * Range请求头解析测试
+ */
+public class ByteRangeTest {
+
+    @Test
+    public void testParseRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99, 500-, -200", 1000);
+
+        assertEquals(3, ranges.size());
+        assertEquals("0-99", ranges.get(0).toString());
+        assertEquals("500-999", ranges.get(1).toString()); // 开放区间截止到末尾
+        assertEquals("800-999", ranges.get(2).toString()); // 后缀区间
+        assertEquals("bytes 0-99/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    @Test
+    public void testClampAndUnsatisfiable() {
+        assertEquals("900-999", ByteRange.parse("bytes=900-5000", 1000).get(0).toString());
+        assertEquals(0, ByteRange.parse("bytes=1000-", 1000).size()); // 416
+        assertEquals(0, ByteRange.parse("bytes=-0", 1000).size());
+    }
+
+    @Test
+    public void testInvalidRangesAreIgnored() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-1", 1000));
+        assertNull(ByteRange.parse("bytes=5-1", 1000));
+        assertNull(ByteRange.parse("bytes=abc", 1000));
+    }
+}
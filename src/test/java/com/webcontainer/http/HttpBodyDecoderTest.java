@@ -0,0 +1,108 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 请求体解码和阻塞连接上的请求体读取测试
+ */
+public class HttpBodyDecoderTest {
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static HttpBodyDecoder decoder(String headers, long maxBodySize) throws Exception {
+        HttpRequestHead head = new HttpRequestParser().parse(bytes("POST /upload HTTP/1.1\r\n" + headers + "\r\n"));
+        return HttpBodyDecoder.forRequest(head, maxBodySize);
+    }
+
+    @Test
+    public void testContentLength() throws Exception {
+        HttpBodyDecoder decoder = decoder("Content-Length: 5\r\n", 100);
+        ByteBuffer data = bytes("helloGET / HTTP/1.1");
+        byte[] body = new byte[16];
+
+        assertEquals(5, decoder.decode(data, body, 0, body.length));
+        assertTrue(decoder.isComplete());
+        assertEquals("hello", new String(body, 0, 5, StandardCharsets.ISO_8859_1));
+        assertEquals(5, data.position()); // 后续流水线请求的数据不消费
+
+        assertTrue(decoder("", 100).isComplete()); // 没有长度声明时请求体为空
+    }
+
+    @Test
+    public void testChunkedAcrossBuffers() throws Exception {
+        HttpBodyDecoder decoder = decoder("Transfer-Encoding: chunked\r\n", 100);
+        String encoded = "5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nX-Checksum: 1\r\n\r\nNEXT";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[3];
+
+        // 每次只送入一个字节，输出缓冲区也很小
+        ByteBuffer data = bytes(encoded);
+        for (int limit = 1; limit <= encoded.length() && !decoder.isComplete(); limit++) {
+            data.limit(limit);
+            int n;
+            while ((n = decoder.decode(data, chunk, 0, chunk.length)) > 0) {
+                body.write(chunk, 0, n);
+            }
+        }
+
+        assertTrue(decoder.isComplete());
+        assertEquals("hello, world", body.toString(StandardCharsets.ISO_8859_1.name()));
+        assertEquals(encoded.length() - 4, data.position());
+    }
+
+    @Test
+    public void testInvalidBodies() throws Exception {
+        assertStatus(400, "Content-Length: 5\r\nTransfer-Encoding: chunked\r\n");
+        assertStatus(400, "Content-Length: 5\r\nContent-Length: 6\r\n");
+        assertStatus(400, "Content-Length: -1\r\n");
+        assertStatus(413, "Content-Length: 101\r\n");
+        assertStatus(501, "Transfer-Encoding: gzip\r\n");
+
+        HttpBodyDecoder decoder = decoder("Transfer-Encoding: chunked\r\n", 100);
+        try {
+            decoder.decode(bytes("65\r\n"), null, 0, Integer.MAX_VALUE); // 分块累计超过上限
+            fail("应当拒绝过大的请求体");
+        } catch (HttpParseException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+    }
+
+    private static void assertStatus(int statusCode, String headers) throws Exception {
+        try {
+            decoder(headers, 100);
+            fail("应当拒绝: " + headers);
+        } catch (HttpParseException e) {
+            assertEquals(statusCode, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testInputBufferStreamsAndSkipsBodies() throws Exception {
+        String requests = "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\ndata\r\n0\r\n\r\n"
+                + "POST /b HTTP/1.1\r\nContent-Length: 6\r\n\r\nunread"
+                + "GET /c HTTP/1.1\r\n\r\n";
+        HttpInputBuffer input = new HttpInputBuffer(
+                new ByteArrayInputStream(requests.getBytes(StandardCharsets.ISO_8859_1)));
+
+        assertEquals("/a", input.readRequestHead().getUri());
+        InputStream body = input.getBody();
+        assertEquals("data", new String(body.readAllBytes(), StandardCharsets.ISO_8859_1));
+        assertEquals(-1, body.read());
+
+        // 第二个请求的请求体没有读取，读取下一个请求头之前自动丢弃
+        assertEquals("/b", input.readRequestHead().getUri());
+        assertEquals("/c", input.readRequestHead().getUri());
+        assertEquals(-1, input.getBody().read());
+        assertEquals(-1, body.read()); // 之前请求的请求体流不再读取数据
+        assertNull(input.readRequestHead());
+    }
+}
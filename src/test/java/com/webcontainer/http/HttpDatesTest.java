@@ -0,0 +1,52 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * HTTP日期格式化和解析测试
+ */
+public class HttpDatesTest {
+
+    // Sun, 06 Nov 1994 08:49:37 GMT
+    private static final long EXAMPLE = 784111777000L;
+
+    @Test
+    public void testFormat() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDates.format(EXAMPLE));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDates.format(EXAMPLE + 999)); // 只精确到秒
+    }
+
+    @Test
+    public void testParseAllFormats() {
+        assertEquals(EXAMPLE, HttpDates.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(EXAMPLE, HttpDates.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(EXAMPLE, HttpDates.parse("Sun Nov  6 08:49:37 1994"));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertEquals(-1L, HttpDates.parse(null));
+        assertEquals(-1L, HttpDates.parse("yesterday"));
+        assertEquals(-1L, HttpDates.parse("Mon, 06 Nov 1994 08:49:37 GMT")); // 星期与日期不符
+        assertEquals(-1L, HttpDates.parse("Thu, 29 Feb 2001 00:00:00 GMT")); // 非闰年
+        assertEquals(-1L, HttpDates.parse("Sun, 06 Nov 1994 08:4x:37 GMT"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        // 闰日、纪元前后和年末
+        long[] samples = { 951782400000L, 0L, -1000L, 1704067199000L, 253402300799000L };
+        for (long millis : samples) {
+            assertEquals(millis, HttpDates.parse(HttpDates.format(millis)));
+        }
+        assertEquals("Tue, 29 Feb 2000 00:00:00 GMT", HttpDates.format(951782400000L));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", HttpDates.format(-1000L));
+    }
+
+    @Test
+    public void testCurrentDate() {
+        long parsed = HttpDates.parse(HttpDates.currentDate());
+        assertTrue(Math.abs(System.currentTimeMillis() - parsed) < 3000L);
+    }
+}
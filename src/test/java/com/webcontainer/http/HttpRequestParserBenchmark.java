@@ -0,0 +1,99 @@
+package com.webcontainer.http;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 请求解析基准测试：字节级解析器 vs 原来的 BufferedReader + String.split 实现
+ *
+ * 运行方式：
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.webcontainer.http.HttpRequestParserBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestParserBenchmark {
+
+    // 典型的浏览器请求
+    private static final byte[] REQUEST = ("GET /testapp1/hello?name=world HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: zh-CN,zh;q=0.9,en;q=0.8\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Cookie: JSESSIONID=8F3A2B1C4D5E6F708192A3B4C5D6E7F8\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private final HttpRequestParser parser = new HttpRequestParser();
+    private final ByteBuffer buffer = ByteBuffer.wrap(REQUEST);
+
+    @Benchmark
+    public void byteParser(Blackhole blackhole) throws IOException {
+        buffer.clear();
+        HttpRequestHead head = parser.parse(buffer);
+        // 与连接处理循环一样读取请求行和两个常用头部
+        blackhole.consume(head.getMethod());
+        blackhole.consume(head.getUri());
+        blackhole.consume(head.getHeader("Connection"));
+        blackhole.consume(head.getHeader("Cookie"));
+    }
+
+    @Benchmark
+    public void legacyBufferedReader(Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(REQUEST)));
+        String requestLine = reader.readLine();
+        String[] requestParts = requestLine.split(" ");
+        if (requestParts.length != 3) {
+            throw new IOException("无效的请求行格式: " + requestLine);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        String headerLine;
+        while ((headerLine = reader.readLine()) != null && !headerLine.trim().isEmpty()) {
+            int colonIndex = headerLine.indexOf(':');
+            if (colonIndex > 0) {
+                String headerName = headerLine.substring(0, colonIndex).trim();
+                String headerValue = headerLine.substring(colonIndex + 1).trim();
+                headers.put(headerName.toLowerCase(), headerValue);
+            }
+        }
+
+        blackhole.consume(requestParts[0]);
+        blackhole.consume(requestParts[1]);
+        blackhole.consume(headers.get("Connection".toLowerCase()));
+        blackhole.consume(headers.get("Cookie".toLowerCase()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpRequestParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
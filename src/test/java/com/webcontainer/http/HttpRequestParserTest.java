@@ -0,0 +1,103 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP请求解析器测试
+ */
+public class HttpRequestParserTest {
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testParseRequest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        HttpRequestHead head = parser.parse(bytes(
+                "GET /index.html?a=1 HTTP/1.1\r\nHost: localhost:8080\r\nUser-Agent:  Test \r\n\r\n"));
+
+        assertNotNull(head);
+        assertEquals("GET", head.getMethod());
+        assertEquals("/index.html?a=1", head.getUri());
+        assertEquals("HTTP/1.1", head.getProtocol());
+        assertEquals(2, head.getHeaderCount());
+        assertEquals("localhost:8080", head.getHeader("host")); // 测试大小写不敏感
+        assertEquals("Test", head.getHeader("USER-AGENT"));
+        assertNull(head.getHeader("Connection"));
+    }
+
+    @Test
+    public void testIncrementalParse() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        byte[] data = "POST /api HTTP/1.0\r\nContent-Type: text/plain\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        // 每次只追加一个字节
+        HttpRequestHead head = null;
+        for (int limit = 1; limit <= data.length && head == null; limit++) {
+            buffer.limit(limit);
+            head = parser.parse(buffer);
+        }
+
+        assertNotNull(head);
+        assertEquals("POST", head.getMethod());
+        assertEquals("text/plain", head.getHeader("Content-Type"));
+        assertEquals(data.length, head.getHeadEnd());
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        ByteBuffer buffer = bytes("GET /a HTTP/1.1\r\nHost: x\r\n\r\nGET /b HTTP/1.1\r\nHost: y\r\n\r\n");
+
+        assertEquals("/a", parser.parse(buffer).getUri());
+        HttpRequestHead second = parser.parse(buffer);
+        assertEquals("/b", second.getUri());
+        assertEquals("y", second.getHeader("Host"));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testMultipleHeaderValues() throws Exception {
+        HttpRequestHead head = new HttpRequestParser().parse(bytes(
+                "GET / HTTP/1.1\r\nAccept: text/html\r\naccept: */*\r\nX-Empty:\r\n\r\n"));
+
+        assertEquals(2, head.getHeaders("Accept").size());
+        assertEquals("*/*", head.getHeaders("Accept").get(1));
+        assertEquals("", head.getHeader("X-Empty"));
+        assertEquals(2, head.getHeaderNames().size());
+    }
+
+    @Test(expected = HttpParseException.class)
+    public void testInvalidRequestLine() throws Exception {
+        new HttpRequestParser().parse(bytes("GET /index.html\r\n\r\n"));
+    }
+
+    @Test
+    public void testHeaderSizeLimit() {
+        HttpRequestParser parser = new HttpRequestParser(8192, 64, 100);
+        try {
+            parser.parse(bytes("GET / HTTP/1.1\r\nX-Long: " + new String(new char[100]).replace('\0', 'a') + "\r\n\r\n"));
+            fail("应该超过请求头大小限制");
+        } catch (HttpParseException e) {
+            assertEquals(431, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testInputBufferReadsPipelinedRequests() throws Exception {
+        byte[] data = "GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        HttpInputBuffer input = new HttpInputBuffer(new ByteArrayInputStream(data));
+
+        assertEquals("/a", input.readRequestHead().getUri());
+        assertTrue(input.hasBufferedInput());
+        assertEquals("/b", input.readRequestHead().getUri());
+        assertNull(input.readRequestHead());
+    }
+}
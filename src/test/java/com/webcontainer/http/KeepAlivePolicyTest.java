@@ -0,0 +1,56 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 持久连接策略测试
+ */
+public class KeepAlivePolicyTest {
+
+    @Test
+    public void testKeepAliveRequested() {
+        // HTTP/1.1 默认保持，HTTP/1.0 需要显式请求
+        assertTrue(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.1", null));
+        assertFalse(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.0", null));
+        assertTrue(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.0", "Keep-Alive"));
+
+        // Connection是逗号分隔的token列表，忽略大小写和空白
+        assertFalse(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.1", "Upgrade, CLOSE"));
+        assertTrue(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.0", " upgrade ,  keep-alive "));
+        assertFalse(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.0", "keep-alive-ish"));
+        assertTrue(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.1", "closed"));
+        assertFalse(KeepAlivePolicy.isKeepAliveRequested("HTTP/1.0", "keep-alive, close"));
+    }
+
+    @Test
+    public void testMaxRequests() {
+        KeepAlivePolicy policy = new KeepAlivePolicy(3, 1000);
+        assertTrue(policy.shouldKeepAlive("HTTP/1.1", null, 1));
+        assertTrue(policy.shouldKeepAlive("HTTP/1.1", null, 2));
+        assertFalse(policy.shouldKeepAlive("HTTP/1.1", null, 3));
+        assertFalse(policy.shouldKeepAlive("HTTP/1.1", "close", 1));
+
+        // maxRequests为1时相当于关闭keep-alive
+        assertFalse(new KeepAlivePolicy(1, 1000).shouldKeepAlive("HTTP/1.1", null, 1));
+    }
+
+    @Test
+    public void testBlockingIdleTimeout() {
+        String previous = System.setProperty(KeepAlivePolicy.IDLE_TIMEOUT_PROPERTY, "2000");
+        try {
+            // 阻塞连接默认不超过5秒，也不超过配置的空闲超时
+            assertEquals(2000, KeepAlivePolicy.fromSystemProperties().getBlockingIdleTimeoutMillis());
+            System.clearProperty(KeepAlivePolicy.IDLE_TIMEOUT_PROPERTY);
+            KeepAlivePolicy policy = KeepAlivePolicy.fromSystemProperties();
+            assertEquals(15000, policy.getIdleTimeoutMillis());
+            assertEquals(5000, policy.getBlockingIdleTimeoutMillis());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(KeepAlivePolicy.IDLE_TIMEOUT_PROPERTY);
+            } else {
+                System.setProperty(KeepAlivePolicy.IDLE_TIMEOUT_PROPERTY, previous);
+            }
+        }
+    }
+}
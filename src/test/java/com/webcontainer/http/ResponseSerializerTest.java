@@ -0,0 +1,88 @@
+package com.webcontainer.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 响应头序列化测试
+ */
+public class ResponseSerializerTest {
+
+    @Test
+    public void testSerializesHeadAndBodyWithCrlf() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseSerializer.begin(200, "OK")
+                .header("Content-Type", "text/plain")
+                .header("X-Custom", "a\r\nInjected: 1")
+                .contentLength(5)
+                .connection(true)
+                .writeTo(out, ByteBuffer.wrap("hello".getBytes(StandardCharsets.ISO_8859_1)));
+
+        assertEquals("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "X-Custom: a  Injected: 1\r\n"
+                + "Content-Length: 5\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n"
+                + "hello", out.toString("ISO-8859-1"));
+    }
+
+    @Test
+    public void testCustomReasonAndChunkedHead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseSerializer.begin(299, null).chunked().connection(false).writeTo(out);
+
+        assertEquals("HTTP/1.1 299 Unknown\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n",
+                out.toString("ISO-8859-1"));
+        assertEquals("Not Found", ResponseSerializer.reasonPhrase(404));
+    }
+
+    @Test
+    public void testGatheringSinkReceivesHeadAndBodyTogether() throws IOException {
+        List<String> writes = new ArrayList<>();
+        class Sink extends ByteArrayOutputStream implements ResponseSerializer.GatheringSink {
+            @Override
+            public void write(ByteBuffer[] buffers) {
+                StringBuilder joined = new StringBuilder();
+                for (ByteBuffer buffer : buffers) {
+                    joined.append(StandardCharsets.ISO_8859_1.decode(buffer.duplicate()));
+                }
+                writes.add(joined.toString());
+            }
+
+            @Override
+            public void writeRetained(ByteBuffer buffer, Runnable release) {
+                writes.add("retained:" + StandardCharsets.ISO_8859_1.decode(buffer.duplicate()));
+                release.run();
+            }
+        }
+        ResponseSerializer.begin(404, "Not Found").contentLength(2).connection(true)
+                .writeTo(new Sink(), ByteBuffer.wrap(new byte[] { 'n', 'o' }));
+
+        assertEquals(1, writes.size());
+        assertEquals("HTTP/1.1 404 Not Found\r\nContent-Length: 2\r\nConnection: keep-alive\r\n\r\nno", writes.get(0));
+
+        // 交出所有权的响应体只把引用交给输出，由输出负责归还
+        writes.clear();
+        int[] released = new int[1];
+        ResponseSerializer.begin(200, "OK").contentLength(2).connection(true)
+                .writeTo(new Sink(), ByteBuffer.wrap(new byte[] { 'o', 'k' }), () -> released[0]++);
+        assertEquals(2, writes.size());
+        assertEquals("retained:ok", writes.get(1));
+        assertEquals(1, released[0]);
+
+        // 普通输出流写完即归还
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ResponseSerializer.begin(200, "OK").contentLength(2).connection(true)
+                .writeTo(plain, ByteBuffer.wrap(new byte[] { 'o', 'k' }), () -> released[0]++);
+        assertTrue(plain.toString("ISO-8859-1").endsWith("\r\n\r\nok"));
+        assertEquals(2, released[0]);
+    }
+}
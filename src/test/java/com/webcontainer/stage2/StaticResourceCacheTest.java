@@ -0,0 +1,178 @@
+package com.webcontainer.stage2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * 静态资源缓存测试
+ */
+public class StaticResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StaticResourceHandler.StaticResource resource(int length) {
+        return new StaticResourceHandler.StaticResource(200, "OK", new byte[length], "text/plain", "a.txt");
+    }
+
+    private static String text(StaticResourceHandler.StaticResource resource) {
+        return new String(resource.getContent(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWatchedSkipsRevalidation() throws Exception {
+        Path file = folder.newFile("a.txt").toPath();
+        Files.write(file, "v1".getBytes(StandardCharsets.UTF_8));
+        StaticResourceCache cache = new StaticResourceCache(1024, 1024, 0);
+        StaticResourceHandler handler = new StaticResourceHandler(folder.getRoot().getPath(), cache);
+        cache.setWatched(true);
+
+        assertEquals("v1", text(handler.handleRequest("/a.txt")));
+        Files.write(file, "v2-changed".getBytes(StandardCharsets.UTF_8));
+        // 有监听时命中不检查文件，直到收到变化通知
+        assertEquals("v1", text(handler.handleRequest("/a.txt")));
+        handler.onFileChanged(file);
+        assertEquals("v2-changed", text(handler.handleRequest("/a.txt")));
+
+        // 没有监听时每次命中都按大小和修改时间校验
+        cache.setWatched(false);
+        Files.write(file, "v3".getBytes(StandardCharsets.UTF_8));
+        assertEquals("v3", text(handler.handleRequest("/a.txt")));
+    }
+
+    @Test
+    public void testInvalidationDuringReadDropsPut() {
+        StaticResourceCache cache = new StaticResourceCache(1024, 1024, 60_000);
+        cache.setWatched(true);
+        Path path = folder.getRoot().toPath().resolve("a.txt");
+
+        // 读取文件期间收到失效通知，读到的内容可能已经过期，不能进入缓存
+        long generation = cache.getGeneration();
+        cache.invalidate(path);
+        cache.put(path, resource(10), 1L, 10L, generation);
+        assertNull(cache.get(path));
+        cache.putMissing(path, generation);
+        assertFalse(cache.isKnownMissing(path));
+
+        generation = cache.getGeneration();
+        cache.put(path, resource(10), 1L, 10L, generation);
+        assertNotNull(cache.get(path));
+        cache.invalidateTree(folder.getRoot().toPath());
+        assertNull(cache.get(path));
+        assertEquals(0, cache.getStats().getSizeBytes());
+    }
+
+    @Test
+    public void testBudgetEvictsLeastRecentlyUsed() {
+        StaticResourceCache cache = new StaticResourceCache(100, 60, 60_000);
+        Path root = folder.getRoot().toPath();
+        Path a = root.resolve("a.txt");
+        Path b = root.resolve("b.txt");
+        Path c = root.resolve("c.txt");
+
+        cache.put(a, resource(40), 1L, 40L, cache.getGeneration());
+        cache.put(b, resource(40), 1L, 40L, cache.getGeneration());
+        assertNotNull(cache.get(a)); // b成为最久未访问的条目
+        cache.put(c, resource(40), 1L, 40L, cache.getGeneration());
+
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+        StaticResourceCache.CacheStats stats = cache.getStats();
+        assertEquals(80, stats.getSizeBytes());
+        assertEquals(1, stats.getEvictionCount());
+
+        // 超过单文件上限的资源不进入缓存
+        cache.put(b, resource(61), 1L, 61L, cache.getGeneration());
+        assertNull(cache.get(b));
+        assertEquals(80, cache.getStats().getSizeBytes());
+    }
+
+    @Test
+    public void testNegativeEntries() throws Exception {
+        StaticResourceCache cache = new StaticResourceCache(1024, 1024, 60_000, 2, 60_000);
+        StaticResourceHandler handler = new StaticResourceHandler(folder.getRoot().getPath(), cache);
+        Path root = folder.getRoot().toPath();
+
+        // 第二次请求不存在的路径时直接返回404
+        assertEquals(404, handler.handleRequest("/missing.txt").getStatusCode());
+        assertEquals(404, handler.handleRequest("/missing.txt").getStatusCode());
+        assertEquals(1, cache.getStats().getNegativeHitCount());
+
+        // 文件创建后的变化通知清除记录
+        Path file = root.resolve("missing.txt");
+        Files.write(file, "now".getBytes(StandardCharsets.UTF_8));
+        handler.onFileChanged(file);
+        assertEquals("now", text(handler.handleRequest("/missing.txt")));
+
+        // 记录数量有上限
+        for (int i = 0; i < 10; i++) {
+            cache.putMissing(root.resolve("probe" + i), cache.getGeneration());
+            assertTrue(cache.getStats().getNegativeEntryCount() <= 2);
+        }
+
+        // 过期后重新检查文件系统
+        StaticResourceCache expiring = new StaticResourceCache(1024, 1024, 60_000, 10, 0);
+        expiring.putMissing(root.resolve("gone.txt"), expiring.getGeneration());
+        assertFalse(expiring.isKnownMissing(root.resolve("gone.txt")));
+        assertEquals(0, expiring.getStats().getNegativeEntryCount());
+    }
+
+    @Test
+    public void testGzipSidecarVersion() throws Exception {
+        Path file = folder.newFile("app.js").toPath();
+        Path sidecar = folder.getRoot().toPath().resolve("app.js.gz");
+        Files.write(file, "var a = 1;".getBytes(StandardCharsets.UTF_8));
+        Files.write(sidecar, new byte[] { 1, 2, 3 });
+        Files.setLastModifiedTime(sidecar, FileTime.fromMillis(1_000_000L));
+        StaticResourceCache cache = new StaticResourceCache(1024, 1024, 0);
+        StaticResourceHandler handler = new StaticResourceHandler(folder.getRoot().getPath(), cache);
+
+        StaticResourceHandler.StaticResource first = handler.handleRequest("/app.js", "gzip");
+        assertEquals("gzip", first.getContentEncoding());
+        assertEquals(3, first.getContentLength());
+
+        // 只重新生成预压缩文件：没有监听时按校验发现变化，压缩表示的校验值随之改变
+        Files.write(sidecar, new byte[] { 4, 5, 6, 7 });
+        Files.setLastModifiedTime(sidecar, FileTime.fromMillis(2_000_000L));
+        StaticResourceHandler.StaticResource second = handler.handleRequest("/app.js", "gzip");
+        assertEquals(4, second.getContentLength());
+        assertNotEquals(first.getEtag(), second.getEtag());
+    }
+
+    @Test
+    public void testLargeFileMetadataCached() throws Exception {
+        Path file = folder.newFile("large.bin").toPath();
+        Files.write(file, new byte[300 * 1024]);
+        StaticResourceCache cache = new StaticResourceCache(1024, 1024, 60_000);
+        StaticResourceHandler handler = new StaticResourceHandler(folder.getRoot().getPath(), cache);
+
+        // 超过直接传输阈值的文件从文件发送，元数据仍然缓存，不占用字节预算
+        StaticResourceHandler.StaticResource resource = handler.handleRequest("/large.bin");
+        assertTrue(resource.isFileBacked());
+        assertSame(resource, handler.handleRequest("/large.bin"));
+        assertEquals(1, cache.getStats().getEntryCount());
+        assertEquals(0, cache.getStats().getSizeBytes());
+    }
+
+    @Test
+    public void testWorkingSetLargerThanBudget() {
+        StaticResourceCache cache = new StaticResourceCache(400, 100, 60_000);
+        Path root = folder.getRoot().toPath();
+        Path hot = root.resolve("hot.txt");
+        cache.put(hot, resource(50), 1L, 50L, cache.getGeneration());
+        for (int i = 0; i < 200; i++) {
+            cache.put(root.resolve("file" + i), resource(50), 1L, 50L, cache.getGeneration());
+            // 持续访问的条目保留访问标记，淘汰时得到第二次机会
+            assertNotNull(cache.get(hot));
+            assertTrue(cache.getStats().getSizeBytes() <= 400);
+        }
+    }
+}
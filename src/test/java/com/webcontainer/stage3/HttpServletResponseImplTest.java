@@ -0,0 +1,175 @@
+package com.webcontainer.stage3;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletOutputStream;
+
+/**
+ * 响应缓冲区测试：Writer按字符编码写入字节，OutputStream原样写入
+ */
+public class HttpServletResponseImplTest {
+
+    @Test
+    public void testWriterEncodesWithResponseCharset() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        response.setContentType("text/plain; charset=UTF-8");
+        PrintWriter writer = response.getWriter();
+        writer.print("容器");
+        // getWriter之后不能再改变编码
+        response.setCharacterEncoding("ISO-8859-1");
+
+        byte[] expected = "容器".getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, response.getBodyLength());
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        response.writeBody(sent);
+        assertArrayEquals(expected, sent.toByteArray());
+        assertEquals("UTF-8", response.getCharacterEncoding());
+    }
+
+    @Test
+    public void testWriterKeepsSurrogatePairSplitAcrossWrites() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        String emoji = new String(Character.toChars(0x1F600));
+        PrintWriter writer = response.getWriter();
+        writer.write(emoji.charAt(0));
+        writer.write(emoji.charAt(1));
+
+        assertArrayEquals(emoji.getBytes(StandardCharsets.UTF_8), response.getBodyBytes());
+    }
+
+    @Test
+    public void testWriterFinishesUnpairedSurrogates() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        String emoji = new String(Character.toChars(0x1F600));
+        PrintWriter writer = response.getWriter();
+        // 高位、高位、低位分在三次write中：第一个高位不成对
+        writer.write(emoji.charAt(0));
+        writer.write(emoji.charAt(0));
+        writer.write(emoji.charAt(1));
+        // 末尾不成对的高位在响应结束时输出替换字符，而不是被丢弃
+        writer.write("a" + emoji.charAt(0));
+
+        assertEquals("?" + emoji + "a?", new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOutputStreamGrowsBeyondInitialChunk() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        response.getOutputStream().write(data, 0, 10);
+        response.getOutputStream().write(data, 10, data.length - 10);
+
+        assertArrayEquals(data, response.getBodyBytes());
+        response.release();
+        assertEquals(0, response.getBodyLength());
+    }
+
+    @Test
+    public void testWriterAndOutputStreamAreExclusive() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        response.getOutputStream();
+        try {
+            response.getWriter();
+            fail("getWriter() after getOutputStream() must fail");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void testSendErrorDiscardsBufferedOutput() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        response.getWriter().print("partial");
+        response.sendError(404);
+
+        String body = new String(response.getBodyBytes(), StandardCharsets.UTF_8);
+        assertFalse(body.contains("partial"));
+        assertTrue(body.contains("404"));
+        assertEquals(String.valueOf(response.getBodyLength()), response.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testStreamsChunksWhenBufferFills() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        ByteArrayOutputStream connection = new ByteArrayOutputStream();
+        response.setStreamingOutput(connection, chunked -> connection.write(
+                (chunked ? "HEAD chunked\n" : "HEAD fixed\n").getBytes(StandardCharsets.ISO_8859_1)));
+        response.setBufferSize(4);
+
+        ServletOutputStream out = response.getOutputStream();
+        out.write("abc".getBytes(StandardCharsets.ISO_8859_1));
+        assertFalse(response.isCommitted());
+        out.write("de".getBytes(StandardCharsets.ISO_8859_1));
+        // 缓冲区放不下时先提交响应头，已缓冲的内容作为第一个分块
+        assertTrue(response.isStreaming());
+        assertEquals("HEAD chunked\n3\r\nabc\r\n", connection.toString("ISO-8859-1"));
+
+        assertTrue(response.finishStreaming());
+        assertEquals("HEAD chunked\n3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n", connection.toString("ISO-8859-1"));
+        try {
+            response.setStatus(500);
+            fail("status cannot change after the head has been sent");
+        } catch (IllegalStateException expected) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void testStreamsWithDeclaredContentLength() throws IOException {
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        ByteArrayOutputStream connection = new ByteArrayOutputStream();
+        response.setStreamingOutput(connection, chunked -> assertFalse(chunked));
+        response.setContentLength(6);
+
+        PrintWriter writer = response.getWriter();
+        writer.print("abc");
+        writer.flush();
+        assertEquals("abc", connection.toString("ISO-8859-1"));
+        // 少于声明长度的响应不能复用连接
+        assertFalse(response.finishStreaming());
+    }
+
+    @Test
+    public void testFramingHeaders() throws IOException {
+        // 响应头名称不区分大小写，HEAD响应保留Servlet声明的长度
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        response.setHeader("content-length", "42");
+        assertEquals("42", response.getHeader("Content-Length"));
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        response.send(sent, true, true);
+        String head = sent.toString("ISO-8859-1");
+        assertTrue(head.contains("Content-Length: 42\r\n"));
+        assertFalse(head.contains("content-length"));
+
+        // 204不带Content-Length，也不发送响应体
+        response = new HttpServletResponseImpl();
+        response.setStatus(204);
+        response.getWriter().print("ignored");
+        sent = new ByteArrayOutputStream();
+        response.send(sent, false, true);
+        assertFalse(sent.toString("ISO-8859-1").contains("Content-Length"));
+        assertTrue(sent.toString("ISO-8859-1").endsWith("\r\n\r\n"));
+
+        // 流式提交的304不使用分块编码
+        response = new HttpServletResponseImpl();
+        ByteArrayOutputStream connection = new ByteArrayOutputStream();
+        HttpServletResponseImpl streamed = response;
+        response.setStreamingOutput(connection, chunked -> streamed.writeHead(connection,
+                streamed.getHeader("Content-Length"), chunked, true));
+        response.setStatus(304);
+        response.flushBuffer();
+        assertTrue(response.finishStreaming());
+        String text = connection.toString("ISO-8859-1");
+        assertFalse(text.contains("Transfer-Encoding"));
+        assertTrue(text.endsWith("\r\n\r\n"));
+    }
+}
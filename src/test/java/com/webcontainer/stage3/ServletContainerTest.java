@@ -0,0 +1,104 @@
+package com.webcontainer.stage3;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Filter;
+
+/**
+ * Servlet容器的Filter链测试
+ */
+public class ServletContainerTest {
+
+    private static List<String> names(FilterRegistrationImpl[] filters) {
+        List<String> names = new ArrayList<>();
+        for (FilterRegistrationImpl filter : filters) {
+            names.add(filter.getName());
+        }
+        return names;
+    }
+
+    private static Filter tracing(List<String> trace, String name) {
+        return (request, response, chain) -> {
+            trace.add(name);
+            chain.doFilter(request, response);
+        };
+    }
+
+    @Test
+    public void testFilterChainsCompiledPerMapping() {
+        List<String> trace = new ArrayList<>();
+        ServletContainer container = new ServletContainer();
+        container.registerServlet("apiServlet", "com.webcontainer.stage3.ApiServlet", "/api/*");
+        container.registerServlet("standardServlet", "com.webcontainer.stage3.StandardServlet", "/servlet");
+        container.registerFilter("byName", tracing(trace, "byName"))
+                .addMappingForServletNames(null, true, "apiServlet");
+        container.registerFilter("log", tracing(trace, "log")).addMappingForUrlPatterns(null, true, "/*");
+        container.registerFilter("admin", tracing(trace, "admin"))
+                .addMappingForUrlPatterns(null, true, "/api/admin/*");
+
+        ServletRouter router = container.getRouter();
+        // URL模式映射在前，Servlet名称映射在后
+        assertEquals(List.of("log", "admin", "byName"),
+                names(router.match("/api/admin/users").selectFilters("/api/admin/users")));
+        assertEquals(List.of("log", "byName"), names(router.match("/api/status").selectFilters("/api/status")));
+        assertEquals(List.of("log"), names(router.match("/servlet").selectFilters("/servlet")));
+        assertNull(container.registerFilter("log", tracing(trace, "duplicate")));
+
+        // 没有Servlet匹配的静态资源同样经过映射到该路径的Filter
+        container.registerFilter("static", tracing(trace, "static"))
+                .addMappingForServletNames(null, true, ServletRouter.DEFAULT_SERVLET_NAME);
+        router = container.getRouter();
+        assertNull(router.match("/index.html"));
+        assertEquals(List.of("log", "static"), names(router.getStaticMapping().selectFilters("/index.html")));
+        assertEquals(List.of("log", "admin", "static"),
+                names(router.getStaticMapping().selectFilters("/api/admin/x.css")));
+    }
+
+    @Test
+    public void testFiltersRunBeforeServlet() {
+        List<String> trace = new ArrayList<>();
+        ServletContainer container = new ServletContainer();
+        container.registerServlet("apiServlet", "com.webcontainer.stage3.ApiServlet", "/api/*");
+        container.registerFilter("first", tracing(trace, "first")).addMappingForUrlPatterns(null, true, "/api/*");
+        container.registerFilter("block", (request, response, chain) -> {
+            trace.add("block");
+            ((javax.servlet.http.HttpServletResponse) response).setStatus(403);
+        }).addMappingForUrlPatterns(null, true, "/api/private/*");
+        container.initFilters();
+
+        HttpServletResponseImpl response = new HttpServletResponseImpl();
+        assertTrue(container.handleRequest(new HttpServletRequestImpl("GET", "/api/private/x", "HTTP/1.1"), response));
+        assertEquals(List.of("first", "block"), trace);
+        assertEquals(403, response.getStatus()); // Filter没有调用chain.doFilter，Servlet不执行
+    }
+
+    @Test
+    public void testPathDependentChainsPrecompiled() {
+        List<String> trace = new ArrayList<>();
+        ServletContainer container = new ServletContainer();
+        container.registerServlet("apiServlet", "com.webcontainer.stage3.ApiServlet", "/api/*");
+        container.registerFilter("admin", tracing(trace, "admin"))
+                .addMappingForUrlPatterns(null, true, "/api/admin/*");
+        container.registerFilter("json", tracing(trace, "json")).addMappingForUrlPatterns(null, true, "*.json");
+
+        ServletRouter.Mapping mapping = container.getRouter().match("/api/admin/a.json");
+        assertEquals(List.of("admin", "json"), names(mapping.selectFilters("/api/admin/a.json")));
+        assertEquals(List.of("json"), names(mapping.selectFilters("/api/adminx/a.json")));
+        assertEquals(List.of("admin"), names(mapping.selectFilters("/api/admin")));
+        // 同一种匹配组合返回同一条预先算好的链
+        assertSame(mapping.selectFilters("/api/admin/a"), mapping.selectFilters("/api/admin/b/c"));
+        assertSame(mapping.selectFilters("/api/x"), mapping.selectFilters("/api/y"));
+
+        // 模式太多时按路径逐个挑选，结果相同
+        for (int i = 0; i < 10; i++) {
+            container.registerFilter("f" + i, tracing(trace, "f" + i))
+                    .addMappingForUrlPatterns(null, true, "/api/f" + i + "/*");
+        }
+        mapping = container.getRouter().match("/api/f3/a.json");
+        assertEquals(List.of("json", "f3"), names(mapping.selectFilters("/api/f3/a.json")));
+    }
+}
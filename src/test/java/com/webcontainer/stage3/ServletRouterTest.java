@@ -0,0 +1,60 @@
+package com.webcontainer.stage3;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Servlet路由表匹配优先级测试
+ */
+public class ServletRouterTest {
+
+    private static ServletRouter router(String... patternAndNames) {
+        Map<String, String> mappings = new HashMap<>();
+        for (int i = 0; i < patternAndNames.length; i += 2) {
+            mappings.put(patternAndNames[i], patternAndNames[i + 1]);
+        }
+        return ServletRouter.compile(mappings);
+    }
+
+    private static String match(ServletRouter router, String path) {
+        ServletRouter.Mapping mapping = router.match(path);
+        return mapping != null ? mapping.getServletName() : null;
+    }
+
+    @Test
+    public void testPrecedence() {
+        ServletRouter router = router("/api/sessions", "exact", "/api/*", "api", "/api/v2/*", "v2",
+                "*.jsp", "jsp", "/", "default");
+
+        assertEquals("exact", match(router, "/api/sessions"));
+        assertEquals("v2", match(router, "/api/v2/users")); // 最长前缀
+        assertEquals("api", match(router, "/api/v2x"));
+        assertEquals("api", match(router, "/api/x.jsp"));   // 前缀优先于扩展名
+        assertEquals("jsp", match(router, "/pages/index.jsp"));
+        assertEquals("default", match(router, "/index.html"));
+    }
+
+    @Test
+    public void testPrefixMatchesWholeSegments() {
+        ServletRouter router = router("/api/*", "api");
+
+        assertEquals("api", match(router, "/api"));
+        assertEquals("api", match(router, "/api/"));
+        assertNull(match(router, "/apix"));
+        assertEquals(4, router.match("/api/status").getServletPathLength());
+    }
+
+    @Test
+    public void testExtensionOnlyInLastSegment() {
+        ServletRouter router = router("*.do", "action", "/*", "all");
+
+        assertEquals("all", match(router, "/a.do")); // /* 是前缀匹配，优先于扩展名
+        ServletRouter extensionOnly = router("*.do", "action");
+        assertEquals("action", match(extensionOnly, "/a/b.do"));
+        assertNull(match(extensionOnly, "/a.do/b"));
+        assertNull(match(extensionOnly, "/a.dox"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.webcontainer.stage4;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 排队时延过载控制测试（时间由测试给出）
+ */
+public class QueueDelayControllerTest {
+    private static final long MS = 1_000_000L;
+    private static final long START = 1_000 * MS;
+
+    @Test
+    public void testBurstIsNotOverload() {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        // 窗口内有一个任务几乎没有等待，只是短暂的突发
+        assertFalse(controller.onDequeue(50 * MS, START));
+        assertFalse(controller.onDequeue(1 * MS, START + 10 * MS));
+        assertFalse(controller.onDequeue(50 * MS, START + 100 * MS));
+        assertFalse(controller.isOverloaded());
+    }
+
+    @Test
+    public void testShedAndRecover() {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        long now = START;
+        // 整个窗口的等待时间都超过目标值
+        for (int i = 0; i < 10; i++, now += 10 * MS) {
+            assertFalse(controller.onDequeue(20 * MS, now));
+        }
+        // 窗口结束后进入过载：超过2倍目标值的任务丢弃，其余照常执行
+        assertTrue(controller.onDequeue(20 * MS, now));
+        assertTrue(controller.isOverloaded());
+        assertFalse(controller.onDequeue(8 * MS, now + MS));
+
+        // 下一个窗口内出现了低于目标值的等待时间，窗口结束后恢复
+        controller.onDequeue(2 * MS, now + 50 * MS);
+        assertFalse(controller.onDequeue(20 * MS, now + 100 * MS));
+        assertFalse(controller.isOverloaded());
+    }
+
+    @Test
+    public void testDisabled() {
+        QueueDelayController controller = new QueueDelayController(0, 100);
+        for (long now = START; now < START + 500 * MS; now += 10 * MS) {
+            assertFalse(controller.onDequeue(1000 * MS, now));
+        }
+        assertFalse(controller.isOverloaded());
+    }
+}
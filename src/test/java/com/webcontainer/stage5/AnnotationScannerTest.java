@@ -0,0 +1,143 @@
+package com.webcontainer.stage5;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+
+/**
+ * 类文件注解扫描测试：直接解析编译好的测试类字节码
+ */
+public class AnnotationScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @WebServlet(name = "annotated", urlPatterns = { "/a", "/b/*" }, loadOnStartup = 3,
+            initParams = @WebInitParam(name = "size", value = "42"))
+    public static class AnnotatedServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+    }
+
+    @WebServlet("/plain")
+    public static class PlainServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+    }
+
+    @WebFilter(urlPatterns = "/*", dispatcherTypes = { DispatcherType.REQUEST, DispatcherType.ERROR })
+    public static class AnnotatedFilter implements Filter {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+        }
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        String resource = type.getName().substring(type.getPackageName().length() + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static WebAppConfig scan(Class<?>... classes) throws IOException {
+        WebAppConfig config = new WebAppConfig();
+        for (Class<?> type : classes) {
+            AnnotationScanner.scanClass(classBytes(type), config);
+        }
+        return config;
+    }
+
+    @Test
+    public void testWebServletAttributes() throws IOException {
+        WebAppConfig config = scan(AnnotatedServlet.class, PlainServlet.class, AnnotationScannerTest.class);
+        assertEquals(2, config.getServlets().size());
+
+        WebAppConfig.ServletDef annotated = config.getServlets().get(0);
+        assertEquals("annotated", annotated.getName());
+        assertEquals(AnnotatedServlet.class.getName(), annotated.getClassName());
+        assertEquals(Arrays.asList("/a", "/b/*"), annotated.getUrlPatterns());
+        assertEquals(3, annotated.getLoadOnStartup());
+        assertEquals("42", annotated.getInitParams().get("size"));
+
+        // 未指定name时使用类的全限定名
+        WebAppConfig.ServletDef plain = config.getServlets().get(1);
+        assertEquals(PlainServlet.class.getName(), plain.getName());
+        assertEquals(Arrays.asList("/plain"), plain.getUrlPatterns());
+        assertEquals(-1, plain.getLoadOnStartup());
+    }
+
+    @Test
+    public void testWebFilterAndWebXmlPrecedence() throws IOException {
+        WebAppConfig annotations = scan(AnnotatedFilter.class, PlainServlet.class);
+        WebAppConfig.FilterMappingDef mapping = annotations.getFilterMappings().get(0);
+        assertEquals(AnnotatedFilter.class.getName(), mapping.getFilterName());
+        assertEquals(Arrays.asList("/*"), mapping.getUrlPatterns());
+        assertEquals(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ERROR), mapping.getDispatcherTypes());
+
+        // web.xml中同名的Servlet覆盖注解
+        WebAppConfig webXml = new WebAppConfig();
+        WebAppConfig.ServletDef declared = new WebAppConfig.ServletDef(PlainServlet.class.getName(), "x.Other", -1,
+                java.util.Collections.emptyMap());
+        webXml.getServlets().add(declared);
+        webXml.mergeAnnotations(annotations);
+        assertEquals(Arrays.asList(declared), webXml.getServlets());
+        assertEquals(1, webXml.getFilters().size());
+        // web.xml中没有servlet-mapping时使用注解的urlPatterns
+        assertEquals(Arrays.asList("/plain"), declared.getUrlPatterns());
+
+        // web.xml中已有servlet-mapping时不合并注解的urlPatterns
+        WebAppConfig mapped = new WebAppConfig();
+        WebAppConfig.ServletDef mappedServlet = new WebAppConfig.ServletDef(PlainServlet.class.getName(), "x.Other",
+                -1, java.util.Collections.emptyMap());
+        mappedServlet.getUrlPatterns().add("/other");
+        mapped.getServlets().add(mappedServlet);
+        mapped.mergeAnnotations(annotations);
+        assertEquals(Arrays.asList("/other"), mappedServlet.getUrlPatterns());
+    }
+
+    @Test
+    public void testBrokenClassSkipped() throws IOException {
+        File lib = folder.newFolder("app", "WEB-INF", "lib");
+        byte[] servlet = classBytes(PlainServlet.class);
+        // 截断在常量池中间的class文件，以及常量池索引越界的class文件
+        byte[] truncated = Arrays.copyOf(servlet, servlet.length / 2);
+        byte[] corrupt = servlet.clone();
+        corrupt[8] = (byte) 0xFF;
+        corrupt[9] = (byte) 0xFF;
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(lib, "mixed.jar")))) {
+            writeEntry(jar, "a/Truncated.class", truncated);
+            writeEntry(jar, "b/Corrupt.class", corrupt);
+            writeEntry(jar, "c/Plain.class", servlet);
+        }
+
+        for (int i = 0; i < 2; i++) {
+            WebAppConfig config = AnnotationScanner.scan(lib.getParentFile().getParentFile(), "broken");
+            assertEquals(1, config.getServlets().size());
+            assertEquals(PlainServlet.class.getName(), config.getServlets().get(0).getClassName());
+        }
+    }
+
+    private static void writeEntry(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+}
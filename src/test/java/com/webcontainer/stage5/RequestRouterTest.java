@@ -0,0 +1,87 @@
+package com.webcontainer.stage5;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * 两级路由和路由缓存测试
+ */
+public class RequestRouterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WebAppContext context(String contextPath, String name) {
+        File dir = new File(folder.getRoot(), name);
+        dir.mkdirs();
+        return new WebAppContext(contextPath, name, dir, getClass().getClassLoader());
+    }
+
+    @Test
+    public void testContextByPathSegment() {
+        WebAppContext root = context("", "ROOT");
+        WebAppContext testapp = context("/testapp", "testapp");
+        testapp.getServletContainer().registerServlet("api", "x.Api", "/api/*");
+        RequestRouter router = new RequestRouter(Arrays.asList(root, testapp));
+
+        assertSame(testapp, router.findContext("/testapp"));
+        assertSame(testapp, router.findContext("/testapp/index.html"));
+        // 只按完整的路径段匹配
+        assertSame(root, router.findContext("/testappX/index.html"));
+        assertSame(root, router.findContext("/"));
+
+        RequestRouter.Route route = router.route("/testapp/api/status");
+        assertSame(testapp, route.getContext());
+        assertEquals("/api/status", route.getPath());
+        assertEquals("/api", route.getServletPath());
+        assertEquals("/status", route.getPathInfo());
+
+        assertNull(router.route("/testapp/index.html").getMapping());
+        assertEquals("/", router.route("/testapp").getPath());
+        assertNull(new RequestRouter(Arrays.asList(testapp)).route("/other"));
+    }
+
+    @Test
+    public void testRouteCache() {
+        WebAppContext testapp = context("/testapp", "testapp");
+        testapp.getServletContainer().registerServlet("api", "x.Api", "/api/*");
+        RequestRouter router = new RequestRouter(Arrays.asList(testapp));
+
+        RequestRouter.Route route = router.route("/testapp/api/a");
+        assertSame(route, router.route("/testapp/api/a"));
+        assertEquals(1, router.getCachedRouteCount());
+
+        // 注册新的映射后缓存的结果不再使用
+        testapp.getServletContainer().registerServlet("a", "x.A", "/api/a");
+        RequestRouter.Route updated = router.route("/testapp/api/a");
+        assertNotSame(route, updated);
+        assertEquals("/api/a", updated.getServletPath());
+        assertNull(updated.getPathInfo());
+    }
+
+    @Test
+    public void testCacheBounded() {
+        String previous = System.setProperty(RequestRouter.CACHE_SIZE_PROPERTY, "8");
+        try {
+            RequestRouter router = new RequestRouter(Arrays.asList(context("/testapp", "testapp")));
+            RequestRouter.Route hot = router.route("/testapp/hot");
+            for (int i = 0; i < 100; i++) {
+                router.route("/testapp/file" + i);
+                // 持续访问的条目保留访问标记，淘汰时得到第二次机会
+                assertSame(hot, router.route("/testapp/hot"));
+                assertTrue(router.getCachedRouteCount() <= 8);
+            }
+        } finally {
+            if (previous == null) {
+                System.clearProperty(RequestRouter.CACHE_SIZE_PROPERTY);
+            } else {
+                System.setProperty(RequestRouter.CACHE_SIZE_PROPERTY, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.webcontainer.stage5;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+
+/**
+ * web.xml解析测试
+ */
+public class WebXmlParserTest {
+
+    private static WebAppConfig parse(String xml) throws IOException {
+        return WebXmlParser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testParseServletsAndFilters() throws IOException {
+        WebAppConfig config = parse("<?xml version=\"1.0\"?>\n"
+                + "<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"4.0\">"
+                + "<context-param><param-name>mode</param-name><param-value> dev </param-value></context-param>"
+                + "<servlet><servlet-name>api</servlet-name><servlet-class>a.ApiServlet</servlet-class>"
+                + "<init-param><param-name>limit</param-name><param-value>10</param-value></init-param>"
+                + "<load-on-startup>2</load-on-startup></servlet>"
+                + "<servlet-mapping><servlet-name>api</servlet-name>"
+                + "<url-pattern>/api/*</url-pattern><url-pattern>*.do</url-pattern></servlet-mapping>"
+                + "<filter><filter-name>log</filter-name><filter-class>a.LogFilter</filter-class></filter>"
+                + "<filter-mapping><filter-name>log</filter-name><servlet-name>api</servlet-name>"
+                + "<dispatcher>FORWARD</dispatcher></filter-mapping>"
+                + "</web-app>");
+
+        assertFalse(config.isMetadataComplete());
+        assertEquals("dev", config.getContextParams().get("mode"));
+
+        WebAppConfig.ServletDef servlet = config.getServlets().get(0);
+        assertEquals("a.ApiServlet", servlet.getClassName());
+        assertEquals(2, servlet.getLoadOnStartup());
+        assertEquals("10", servlet.getInitParams().get("limit"));
+        assertEquals(Arrays.asList("/api/*", "*.do"), servlet.getUrlPatterns());
+
+        WebAppConfig.FilterMappingDef mapping = config.getFilterMappings().get(0);
+        assertEquals("log", mapping.getFilterName());
+        assertEquals(Arrays.asList("api"), mapping.getServletNames());
+        assertEquals(EnumSet.of(DispatcherType.FORWARD), mapping.getDispatcherTypes());
+    }
+
+    @Test
+    public void testLegacyDoctypeIsNotFetched() throws IOException {
+        WebAppConfig config = parse("<!DOCTYPE web-app PUBLIC \"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\""
+                + " \"http://java.sun.com/dtd/web-app_2_3.dtd\">"
+                + "<web-app metadata-complete=\"true\"><servlet><servlet-name>s</servlet-name>"
+                + "<servlet-class>a.S</servlet-class></servlet></web-app>");
+
+        assertTrue(config.isMetadataComplete());
+        assertEquals(-1, config.getServlets().get(0).getLoadOnStartup());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMappingForUndeclaredServlet() throws IOException {
+        parse("<web-app><servlet-mapping><servlet-name>missing</servlet-name>"
+                + "<url-pattern>/x</url-pattern></servlet-mapping></web-app>");
+    }
+}